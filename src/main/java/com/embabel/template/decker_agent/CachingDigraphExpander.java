@@ -0,0 +1,172 @@
+package com.embabel.template.decker_agent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * DigraphExpander that caches rendered diagrams on disk, keyed by a hash
+ * of the renderer, normalized DOT source and output format.
+ * Renderers lay out diagrams differently, so they never share entries.
+ * On a hit the cached file is linked or copied into the output directory
+ * and the delegate is not called.
+ * The least recently used entries are evicted when the cache exceeds its maximum size.
+ */
+class CachingDigraphExpander implements DigraphExpander {
+
+    private final Logger logger = LoggerFactory.getLogger(CachingDigraphExpander.class);
+
+    private final DigraphExpander delegate;
+    private final String renderer;
+    private final Path cacheDirectory;
+    private final Path outputDirectory;
+    private final String format;
+    private final long maxCacheBytes;
+
+    /**
+     * @param delegate        expander to call on a cache miss
+     * @param renderer        identifies the renderer the delegate uses, e.g. DOT
+     * @param cacheDirectory  directory holding cached renders
+     * @param outputDirectory directory the delegate writes to
+     * @param format          output format produced by the delegate, e.g. svg
+     * @param maxCacheBytes   maximum total size of cached renders
+     */
+    CachingDigraphExpander(DigraphExpander delegate, String renderer, Path cacheDirectory, Path outputDirectory, String format, long maxCacheBytes) {
+        this.delegate = delegate;
+        this.renderer = renderer;
+        this.cacheDirectory = cacheDirectory;
+        this.outputDirectory = outputDirectory;
+        this.format = format;
+        this.maxCacheBytes = maxCacheBytes;
+    }
+
+    @Override
+    public String expandDiagram(String fileBase, String dot) {
+        String cachedFile = fromCache(fileBase, dot);
+        if (cachedFile != null) {
+            return cachedFile;
+        }
+        String rendered = delegate.expandDiagram(fileBase, dot);
+        store(rendered, dot);
+        return rendered;
+    }
+
+    /**
+     * Serve hits from the cache and pass all misses to the delegate in one call
+     */
+    @Override
+    public Map<String, String> expandDiagrams(Map<String, String> dotByFileBase, int concurrency) {
+        Map<String, String> diagramFiles = new HashMap<>();
+        Map<String, String> misses = new LinkedHashMap<>();
+        dotByFileBase.forEach((fileBase, dot) -> {
+            String cachedFile = fromCache(fileBase, dot);
+            if (cachedFile != null) {
+                diagramFiles.put(fileBase, cachedFile);
+            } else {
+                misses.put(fileBase, dot);
+            }
+        });
+        logger.info("Diagram cache: {} hits, {} misses", diagramFiles.size(), misses.size());
+        if (!misses.isEmpty()) {
+            Map<String, String> rendered = delegate.expandDiagrams(misses, concurrency);
+            rendered.forEach((fileBase, file) -> store(file, misses.get(fileBase)));
+            diagramFiles.putAll(rendered);
+        }
+        return diagramFiles;
+    }
+
+    /**
+     * Link a cached render into the output directory
+     *
+     * @return the output file name, or null on a miss
+     */
+    private String fromCache(String fileBase, String dot) {
+        String outputFile = fileBase + "." + format;
+        Path output = outputDirectory.resolve(outputFile);
+        Path cached = cachedPath(dot);
+        try {
+            if (Files.isRegularFile(cached)) {
+                logger.info("Diagram cache hit for {}: {}", outputFile, cached.getFileName());
+                Files.setLastModifiedTime(cached, FileTime.fromMillis(System.currentTimeMillis()));
+                linkOrCopy(cached, output);
+                return outputFile;
+            }
+            // Never let the delegate write through a hard link into the cache
+            Files.deleteIfExists(output);
+        } catch (IOException e) {
+            logger.warn("Diagram cache lookup failed for {}", outputFile, e);
+        }
+        return null;
+    }
+
+    private Path cachedPath(String dot) {
+        return cacheDirectory.resolve(cacheKey(dot) + "." + format);
+    }
+
+    String cacheKey(String dot) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(renderer.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(normalize(dot).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(format.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Normalize line endings and surrounding whitespace, which do not affect the render
+     */
+    static String normalize(String dot) {
+        return dot.replace("\r\n", "\n")
+                .lines()
+                .map(String::strip)
+                .filter(line -> !line.isEmpty())
+                .collect(Collectors.joining("\n"));
+    }
+
+    private void store(String renderedFile, String dot) {
+        Path rendered = outputDirectory.resolve(renderedFile);
+        Path cached = cachedPath(dot);
+        if (!Files.isRegularFile(rendered)) {
+            logger.warn("Not caching {}: no rendered file was produced", rendered.getFileName());
+            return;
+        }
+        try {
+            Files.createDirectories(cacheDirectory);
+            Path temp = Files.createTempFile(cacheDirectory, "render", ".tmp");
+            Files.copy(rendered, temp, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temp, cached, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Failed to cache rendered diagram {}", rendered.getFileName(), e);
+            return;
+        }
+        DiskCacheEviction.evict(cacheDirectory, "." + format, maxCacheBytes, "diagram");
+    }
+
+    private static void linkOrCopy(Path cached, Path output) throws IOException {
+        Files.createDirectories(output.getParent());
+        Files.deleteIfExists(output);
+        try {
+            Files.createLink(output, cached);
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(cached, output, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.embabel.template.decker_agent;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Stores the output of each presentation pipeline stage on disk, keyed by a hash
+ * of the {@link PresentationRequest}, so a failed or repeated run resumes after the
+ * last completed stage.
+ * Stages form a chain: saving or invalidating a stage invalidates every later stage,
+ * as later checkpoints were built from the previous output.
+ */
+@Service
+class CheckpointStore {
+
+    /**
+     * Pipeline stages, in order
+     */
+    enum Stage {
+        TOPICS, RESEARCH, DECK, DIAGRAMS, ILLUSTRATIONS;
+
+        /**
+         * Parse a comma separated list of stage names, or "all"
+         *
+         * @throws IllegalArgumentException for an unknown stage
+         */
+        static Set<Stage> parse(String stages) {
+            if (stages == null || stages.isBlank()) {
+                return EnumSet.noneOf(Stage.class);
+            }
+            if (stages.strip().equalsIgnoreCase("all")) {
+                return EnumSet.allOf(Stage.class);
+            }
+            Set<Stage> parsed = EnumSet.noneOf(Stage.class);
+            for (String name : stages.split(",")) {
+                try {
+                    parsed.add(valueOf(name.strip().toUpperCase(Locale.ROOT)));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Unknown stage '" + name.strip() + "', expected one of "
+                            + Arrays.stream(values()).map(s -> s.name().toLowerCase(Locale.ROOT)).collect(Collectors.joining(", "))
+                            + " or all");
+                }
+            }
+            return parsed;
+        }
+
+        String fileName() {
+            return name().toLowerCase(Locale.ROOT) + ".json";
+        }
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(CheckpointStore.class);
+
+    private final Path directory;
+    private final ObjectMapper objectMapper;
+
+    @Autowired
+    CheckpointStore(PresentationMakerProperties properties, ObjectMapper objectMapper) {
+        this(Path.of(properties.getCheckpointDirectory()), objectMapper);
+    }
+
+    CheckpointStore(Path directory, ObjectMapper objectMapper) {
+        this.directory = directory;
+        this.objectMapper = objectMapper.copy().enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS);
+    }
+
+    /**
+     * @return the saved output of this stage, or null if there is none
+     */
+    <T> T load(PresentationRequest presentationRequest, Stage stage, Class<T> type) {
+        Path path = path(presentationRequest, stage);
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(path.toFile(), type);
+        } catch (IOException e) {
+            logger.warn("Ignoring unreadable {} checkpoint {}", stage, path, e);
+            return null;
+        }
+    }
+
+    /**
+     * Save the output of a stage, invalidating later stages
+     */
+    void save(PresentationRequest presentationRequest, Stage stage, Object output) {
+        if (output == null) {
+            return;
+        }
+        invalidateAfter(presentationRequest, stage);
+        Path path = path(presentationRequest, stage);
+        try {
+            Files.createDirectories(path.getParent());
+            Path temp = Files.createTempFile(path.getParent(), stage.name().toLowerCase(Locale.ROOT), ".tmp");
+            objectMapper.writeValue(temp.toFile(), output);
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.info("Saved {} checkpoint to {}", stage, path);
+        } catch (IOException e) {
+            logger.warn("Failed to save {} checkpoint", stage, e);
+        }
+    }
+
+    /**
+     * Force the given stages, and the stages after them, to be recomputed
+     */
+    void invalidate(PresentationRequest presentationRequest, Collection<Stage> stages) {
+        stages.stream().min(Enum::compareTo).ifPresent(first -> {
+            for (Stage stage : Stage.values()) {
+                if (stage.compareTo(first) >= 0) {
+                    delete(presentationRequest, stage);
+                }
+            }
+        });
+    }
+
+    private void invalidateAfter(PresentationRequest presentationRequest, Stage stage) {
+        for (Stage later : Stage.values()) {
+            if (later.compareTo(stage) > 0) {
+                delete(presentationRequest, later);
+            }
+        }
+    }
+
+    private void delete(PresentationRequest presentationRequest, Stage stage) {
+        try {
+            if (Files.deleteIfExists(path(presentationRequest, stage))) {
+                logger.info("Invalidated {} checkpoint", stage);
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to delete {} checkpoint", stage, e);
+        }
+    }
+
+    private Path path(PresentationRequest presentationRequest, Stage stage) {
+        return directory.resolve(requestKey(presentationRequest)).resolve(stage.fileName());
+    }
+
+    /**
+     * Hash of the request as JSON, with map entries sorted so equal requests always match
+     */
+    String requestKey(PresentationRequest presentationRequest) {
+        try {
+            byte[] json = objectMapper.writeValueAsString(presentationRequest).getBytes(StandardCharsets.UTF_8);
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(json));
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Cannot serialize presentation request", e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
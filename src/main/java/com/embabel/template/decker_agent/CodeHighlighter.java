@@ -0,0 +1,170 @@
+package com.embabel.template.decker_agent;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Syntax highlighting for fenced code on slides.
+ * Emits highlight.js class names, so Marp themes style the output as they would Marp's own.
+ * Languages are grouped into a few grammars that cover comments, strings, numbers and keywords.
+ */
+final class CodeHighlighter {
+
+    private static final String NUMBER = "(?<number>\\b(?:0[xX][0-9a-fA-F_]+|\\d[\\d_]*(?:\\.\\d+)?(?:[eE][+-]?\\d+)?)[fFdDlLuU]?\\b)";
+    private static final List<String> STYLED_GROUPS = List.of("comment", "string", "meta", "variable", "attr", "tag", "number");
+    private static final String WORD = "(?<word>\\b[A-Za-z_$][\\w$]*\\b)";
+
+    private CodeHighlighter() {
+    }
+
+    /**
+     * Highlight code, escaping it for HTML
+     *
+     * @param language fence info string, may be empty or unknown
+     */
+    static String highlight(String code, String language) {
+        Grammar grammar = Grammar.forLanguage(language);
+        if (grammar == null) {
+            return MarkdownRenderer.escape(code);
+        }
+        StringBuilder html = new StringBuilder(code.length() + code.length() / 2);
+        Matcher m = grammar.pattern.matcher(code);
+        int position = 0;
+        while (m.find()) {
+            html.append(MarkdownRenderer.escape(code.substring(position, m.start())));
+            String text = m.group();
+            String style = grammar.style(m);
+            if (style == null) {
+                html.append(MarkdownRenderer.escape(text));
+            } else {
+                // Multi-line tokens are closed and reopened per line so line-based CSS still works
+                html.append("<span class=\"hljs-").append(style).append("\">")
+                        .append(MarkdownRenderer.escape(text).replace("\n", "</span>\n<span class=\"hljs-" + style + "\">"))
+                        .append("</span>");
+            }
+            position = m.end();
+        }
+        html.append(MarkdownRenderer.escape(code.substring(position)));
+        return html.toString();
+    }
+
+    private enum Grammar {
+
+        C_LIKE("(?<comment>//[^\\n]*|/\\*[\\s\\S]*?\\*/)"
+                + "|(?<string>\"\"\"[\\s\\S]*?\"\"\"|\"(?:\\\\.|[^\"\\\\\\n])*\"|'(?:\\\\.|[^'\\\\\\n])*'|`(?:\\\\.|[^`\\\\])*`)"
+                + "|(?<meta>@[A-Za-z_][\\w.]*|#\\[[^\\]\\n]*\\]|^\\s*#\\s*\\w+)"
+                + "|" + NUMBER + "|" + WORD,
+                Set.of("abstract", "as", "assert", "async", "await", "break", "case", "catch", "class", "companion", "const",
+                        "continue", "data", "def", "default", "defer", "delete", "do", "else", "enum", "export", "extends",
+                        "final", "finally", "fn", "for", "from", "fun", "func", "function", "go", "goto", "if", "impl",
+                        "implements", "import", "in", "instanceof", "interface", "internal", "is", "let", "match", "mod",
+                        "module", "mut", "namespace", "new", "object", "open", "operator", "out", "override", "package",
+                        "permits", "private", "protected", "pub", "public", "record", "return", "sealed", "select",
+                        "static", "struct", "super", "suspend", "switch", "synchronized", "this", "throw", "throws",
+                        "trait", "try", "type", "typeof", "use", "val", "var", "void", "volatile", "when", "where",
+                        "while", "with", "yield", "boolean", "byte", "char", "double", "float", "int", "long", "short",
+                        "string", "i32", "i64", "u8", "u32", "u64", "f32", "f64", "usize", "bool"),
+                true),
+        HASH_COMMENT("(?<comment>#[^\\n]*)"
+                + "|(?<string>\"\"\"[\\s\\S]*?\"\"\"|'''[\\s\\S]*?'''|\"(?:\\\\.|[^\"\\\\\\n])*\"|'(?:\\\\.|[^'\\\\\\n])*')"
+                + "|(?<meta>^\\s*@[\\w.]+)"
+                + "|(?<variable>\\$\\{[^}\\n]*\\}|\\$\\w+)"
+                + "|" + NUMBER + "|" + WORD,
+                Set.of("and", "as", "assert", "async", "await", "begin", "break", "case", "class", "continue", "def",
+                        "del", "do", "done", "elif", "else", "end", "ensure", "esac", "except", "export", "fi",
+                        "finally", "for", "from", "function", "global", "if", "import", "in", "is", "lambda", "local",
+                        "module", "nonlocal", "not", "or", "pass", "raise", "require", "rescue", "return", "then",
+                        "try", "unless", "until", "while", "with", "yield", "echo", "cd", "source"),
+                false),
+        CONFIG("(?<comment>#[^\\n]*|^\\s*;[^\\n]*)"
+                + "|(?<attr>^\\s*(?:-\\s+)?[\\w.\\[\\]-]+(?=\\s*(?::(?:\\s|$)|=)))"
+                + "|(?<string>\"(?:\\\\.|[^\"\\\\\\n])*\"|'[^'\\n]*')"
+                + "|(?<variable>\\$\\{[^}\\n]*\\})"
+                + "|" + NUMBER + "|" + WORD,
+                Set.of(),
+                false),
+        SQL("(?<comment>--[^\\n]*|/\\*[\\s\\S]*?\\*/)"
+                + "|(?<string>'(?:''|[^'])*'|\"(?:\"\"|[^\"])*\")"
+                + "|" + NUMBER + "|" + WORD,
+                Set.of("add", "all", "alter", "and", "as", "asc", "between", "by", "case", "create", "delete", "desc",
+                        "distinct", "drop", "else", "end", "exists", "from", "full", "group", "having", "in", "index",
+                        "inner", "insert", "into", "is", "join", "key", "left", "like", "limit", "not", "on", "or",
+                        "order", "outer", "primary", "references", "right", "select", "set", "table", "then", "union",
+                        "update", "values", "view", "when", "where", "with"),
+                false),
+        JSON("(?<attr>\"(?:\\\\.|[^\"\\\\\\n])*\"(?=\\s*:))"
+                + "|(?<string>\"(?:\\\\.|[^\"\\\\\\n])*\")"
+                + "|(?<number>-?\\b\\d+(?:\\.\\d+)?(?:[eE][+-]?\\d+)?\\b)"
+                + "|" + WORD,
+                Set.of(),
+                false),
+        MARKUP("(?<comment><!--[\\s\\S]*?-->)"
+                + "|(?<tag></?[A-Za-z][\\w:.-]*|/?>)"
+                + "|(?<attr>\\b[\\w:-]+(?==))"
+                + "|(?<string>\"[^\"]*\"|'[^']*')",
+                Set.of(),
+                false);
+
+        private static final Set<String> LITERALS = Set.of(
+                "true", "false", "null", "nil", "none", "undefined", "yes", "no", "on", "off");
+
+        private final Pattern pattern;
+        private final List<String> groups;
+        private final boolean hasWords;
+        private final Set<String> keywords;
+        private final boolean typesCapitalized;
+
+        Grammar(String regex, Set<String> keywords, boolean typesCapitalized) {
+            this.pattern = Pattern.compile(regex, Pattern.MULTILINE);
+            this.groups = STYLED_GROUPS.stream().filter(group -> regex.contains("(?<" + group + ">")).toList();
+            this.hasWords = regex.contains("(?<word>");
+            this.keywords = keywords;
+            this.typesCapitalized = typesCapitalized;
+        }
+
+        static Grammar forLanguage(String language) {
+            return switch (language.toLowerCase(Locale.ROOT)) {
+                case "java", "kotlin", "kt", "kts", "scala", "groovy", "gradle", "js", "javascript", "jsx", "mjs",
+                     "ts", "typescript", "tsx", "go", "golang", "c", "h", "cpp", "c++", "cc", "hpp", "cs", "csharp",
+                     "rust", "rs", "swift", "dart", "php" -> C_LIKE;
+                case "python", "py", "ruby", "rb", "bash", "sh", "shell", "zsh", "console", "dockerfile", "docker",
+                     "r", "perl", "makefile", "make" -> HASH_COMMENT;
+                case "yaml", "yml", "toml", "properties", "ini", "conf" -> CONFIG;
+                case "sql", "mysql", "postgresql", "postgres", "plsql" -> SQL;
+                case "json", "jsonc", "json5" -> JSON;
+                case "xml", "html", "htm", "svg", "xhtml", "vue", "jsp" -> MARKUP;
+                default -> null;
+            };
+        }
+
+        /**
+         * highlight.js class suffix for a match, or null for plain text
+         */
+        String style(Matcher m) {
+            for (String group : groups) {
+                if (m.group(group) != null) {
+                    return group;
+                }
+            }
+            if (!hasWords || m.group("word") == null) {
+                return null;
+            }
+            String word = m.group("word");
+            String lower = word.toLowerCase(Locale.ROOT);
+            if (LITERALS.contains(lower) && (this != C_LIKE || word.equals(lower))) {
+                return "literal";
+            }
+            if (keywords.contains(this == SQL ? lower : word)) {
+                return "keyword";
+            }
+            if (typesCapitalized && Character.isUpperCase(word.charAt(0)) && word.length() > 1
+                    && !word.chars().allMatch(c -> Character.isUpperCase(c) || c == '_' || Character.isDigit(c))) {
+                return "type";
+            }
+            return null;
+        }
+    }
+}
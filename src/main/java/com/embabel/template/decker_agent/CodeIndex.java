@@ -0,0 +1,449 @@
+package com.embabel.template.decker_agent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Trigram index over the text files of a project, used to answer regex searches
+ * without reading every file. The literal text a pattern requires is extracted, and
+ * only files containing all of its trigrams are read and matched line by line.
+ * Trigrams are case folded, so the index never rules out a case insensitive match.
+ * The index is saved between runs and refreshed from file sizes and modification
+ * times the first time it is used, so only new and changed files are read again.
+ */
+class CodeIndex {
+
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * Larger files are not indexed, and are always read when searching
+     */
+    private static final long MAX_INDEXED_BYTES = 2 * 1024 * 1024;
+
+    private static final int BINARY_SNIFF_BYTES = 8000;
+
+    /**
+     * Regex escapes that stand alone, with no operand following them
+     */
+    private static final String OPERANDLESS_ESCAPES = "dDsSwWbBAzZGhHvVRXtnrfae";
+
+    private final Logger logger = LoggerFactory.getLogger(CodeIndex.class);
+
+    private final Path root;
+    private final Path indexFile;
+    private Map<String, IndexedFile> files;
+
+    /**
+     * A line matching a search
+     *
+     * @param relativePath path from the project root
+     * @param lineNumber   starting from 1
+     */
+    record Match(String relativePath, int lineNumber, String line) {
+    }
+
+    /**
+     * @param binary   binary files are never searched
+     * @param trigrams sorted, case folded trigrams in the file, or null if the file is too large to index
+     */
+    private record IndexedFile(String relativePath, long size, long lastModified, boolean binary, long[] trigrams) {
+
+        boolean mayContain(long[] required) {
+            if (binary) {
+                return false;
+            }
+            if (trigrams == null) {
+                return true;
+            }
+            for (long trigram : required) {
+                if (Arrays.binarySearch(trigrams, trigram) < 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * @param indexFile where the index is saved between runs
+     */
+    CodeIndex(Path root, Path indexFile) {
+        this.root = root;
+        this.indexFile = indexFile;
+    }
+
+    /**
+     * Index for the given project root, saved under the given directory
+     */
+    static CodeIndex forRoot(Path root, Path indexDirectory) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256")
+                    .digest(root.toAbsolutePath().normalize().toString().getBytes(StandardCharsets.UTF_8));
+            return new CodeIndex(root, indexDirectory.resolve(HexFormat.of().formatHex(hash) + ".idx"));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Find lines matching the pattern in files whose relative path passes the filter
+     *
+     * @return matches ordered by path and line number
+     */
+    List<Match> search(Pattern pattern, Predicate<String> pathFilter, boolean parallel) {
+        long[] required = trigrams(requiredLiterals(pattern));
+        List<IndexedFile> inScope = files().values().stream()
+                .filter(file -> pathFilter.test(file.relativePath()))
+                .toList();
+        List<IndexedFile> candidates = inScope.stream()
+                .filter(file -> file.mayContain(required))
+                .toList();
+        logger.debug("Reading {} of {} files to search for {}", candidates.size(), inScope.size(), pattern);
+
+        Stream<IndexedFile> stream = parallel ? candidates.parallelStream() : candidates.stream();
+        return stream
+                .flatMap(file -> scan(file.relativePath(), pattern).stream())
+                .sorted(Comparator.comparing(Match::relativePath).thenComparingInt(Match::lineNumber))
+                .toList();
+    }
+
+    private List<Match> scan(String relativePath, Pattern pattern) {
+        List<Match> matches = new ArrayList<>();
+        String content;
+        try {
+            content = new String(Files.readAllBytes(root.resolve(relativePath)), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return matches;
+        }
+        Matcher matcher = pattern.matcher("");
+        int lineNumber = 0;
+        for (String line : (Iterable<String>) content.lines()::iterator) {
+            lineNumber++;
+            if (matcher.reset(line).find()) {
+                matches.add(new Match(relativePath, lineNumber, line));
+            }
+        }
+        return matches;
+    }
+
+    private synchronized Map<String, IndexedFile> files() {
+        if (files == null) {
+            files = refresh(load());
+        }
+        return files;
+    }
+
+    /**
+     * Bring a previously saved index up to date with the files on disk, saving it if anything changed
+     */
+    private Map<String, IndexedFile> refresh(Map<String, IndexedFile> previous) {
+        Map<String, IndexedFile> current = new HashMap<>();
+        int[] reindexed = {0};
+        if (Files.isDirectory(root)) {
+            try {
+                Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+                        return Project.isIgnoredDirectory(root, dir)
+                                ? FileVisitResult.SKIP_SUBTREE
+                                : FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                        if (!attributes.isRegularFile()) {
+                            return FileVisitResult.CONTINUE;
+                        }
+                        String relativePath = root.relativize(file).toString();
+                        long lastModified = attributes.lastModifiedTime().toMillis();
+                        IndexedFile indexed = previous.get(relativePath);
+                        if (indexed == null || indexed.size() != attributes.size() || indexed.lastModified() != lastModified) {
+                            indexed = index(file, relativePath, attributes.size(), lastModified);
+                            reindexed[0]++;
+                        }
+                        if (indexed != null) {
+                            current.put(relativePath, indexed);
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException e) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        int removed = (int) previous.keySet().stream().filter(path -> !current.containsKey(path)).count();
+        logger.info("Code index for {}: {} files, {} indexed, {} removed", root, current.size(), reindexed[0], removed);
+        if (reindexed[0] > 0 || removed > 0) {
+            save(current);
+        }
+        return current;
+    }
+
+    /**
+     * @return the index entry, or null for an unreadable file
+     */
+    private static IndexedFile index(Path file, String relativePath, long size, long lastModified) {
+        if (size > MAX_INDEXED_BYTES) {
+            return new IndexedFile(relativePath, size, lastModified, false, null);
+        }
+        try {
+            byte[] bytes = Files.readAllBytes(file);
+            for (int i = 0; i < Math.min(bytes.length, BINARY_SNIFF_BYTES); i++) {
+                if (bytes[i] == 0) {
+                    return new IndexedFile(relativePath, size, lastModified, true, new long[0]);
+                }
+            }
+            return new IndexedFile(relativePath, size, lastModified, false, trigrams(List.of(new String(bytes, StandardCharsets.UTF_8))));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the distinct case folded trigrams of the given strings, sorted, skipping those spanning lines
+     */
+    static long[] trigrams(List<String> texts) {
+        int total = texts.stream().mapToInt(text -> Math.max(0, text.length() - 2)).sum();
+        long[] trigrams = new long[total];
+        int count = 0;
+        for (String text : texts) {
+            for (int i = 0; i + 3 <= text.length(); i++) {
+                char a = Character.toLowerCase(text.charAt(i));
+                char b = Character.toLowerCase(text.charAt(i + 1));
+                char c = Character.toLowerCase(text.charAt(i + 2));
+                if (a != '\n' && b != '\n' && c != '\n') {
+                    trigrams[count++] = ((long) a << 32) | ((long) b << 16) | c;
+                }
+            }
+        }
+        Arrays.sort(trigrams, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || trigrams[distinct - 1] != trigrams[i]) {
+                trigrams[distinct++] = trigrams[i];
+            }
+        }
+        return Arrays.copyOf(trigrams, distinct);
+    }
+
+    /**
+     * Literal strings every match of the pattern must contain. Conservative: anything
+     * optional, inside a group or a character class contributes nothing, and a top level
+     * alternation means nothing is required.
+     */
+    static List<String> requiredLiterals(Pattern pattern) {
+        if ((pattern.flags() & Pattern.LITERAL) != 0) {
+            return List.of(pattern.pattern());
+        }
+        if ((pattern.flags() & Pattern.COMMENTS) != 0 || pattern.pattern().contains("(?x")) {
+            return List.of();
+        }
+        String regex = pattern.pattern();
+        List<String> literals = new ArrayList<>();
+        StringBuilder run = new StringBuilder();
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            switch (c) {
+                case '\\' -> {
+                    if (i + 1 >= regex.length()) {
+                        break;
+                    }
+                    char next = regex.charAt(++i);
+                    if (next == 'Q') {
+                        int end = regex.indexOf("\\E", i + 1);
+                        run.append(end < 0 ? regex.substring(i + 1) : regex.substring(i + 1, end));
+                        i = end < 0 ? regex.length() : end + 1;
+                    } else if (OPERANDLESS_ESCAPES.indexOf(next) >= 0) {
+                        // Character class, boundary or control character
+                        flush(run, literals);
+                    } else if (next == 'p' || next == 'P') {
+                        flush(run, literals);
+                        if (i + 1 < regex.length() && regex.charAt(i + 1) == '{') {
+                            int end = regex.indexOf('}', i + 1);
+                            i = end < 0 ? regex.length() : end;
+                        } else {
+                            i++;
+                        }
+                    } else if (Character.isLetterOrDigit(next)) {
+                        // An escape with an operand that is not modelled, such as \x41, \u0041, \0101, \cA,
+                        // \k<name>, \N{name} or a back reference, whose operand would be taken for literal text
+                        return List.of();
+                    } else {
+                        run.append(next);
+                    }
+                }
+                case '|' -> {
+                    // Groups are skipped whole, so this alternation is at the top level
+                    return List.of();
+                }
+                case '(' -> {
+                    flush(run, literals);
+                    i = skipGroup(regex, i);
+                }
+                case '[' -> {
+                    flush(run, literals);
+                    i = skipClass(regex, i);
+                }
+                case '?', '*', '{' -> {
+                    // The previous character may be absent
+                    if (!run.isEmpty()) {
+                        run.setLength(run.length() - 1);
+                    }
+                    flush(run, literals);
+                    if (c == '{') {
+                        int end = regex.indexOf('}', i);
+                        i = end < 0 ? regex.length() : end;
+                    }
+                }
+                case '+', '.', '^', '$' -> flush(run, literals);
+                default -> run.append(c);
+            }
+        }
+        flush(run, literals);
+        return literals;
+    }
+
+    private static void flush(StringBuilder run, List<String> literals) {
+        if (run.length() >= 3) {
+            literals.add(run.toString());
+        }
+        run.setLength(0);
+    }
+
+    /**
+     * @return the index of the parenthesis closing the group opened at start
+     */
+    private static int skipGroup(String regex, int start) {
+        int depth = 0;
+        for (int i = start; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '[') {
+                i = skipClass(regex, i);
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')' && --depth == 0) {
+                return i;
+            }
+        }
+        return regex.length();
+    }
+
+    /**
+     * @return the index of the bracket closing the character class opened at start
+     */
+    private static int skipClass(String regex, int start) {
+        int i = start + 1;
+        if (i < regex.length() && regex.charAt(i) == '^') {
+            i++;
+        }
+        // A leading ] is a literal
+        if (i < regex.length() && regex.charAt(i) == ']') {
+            i++;
+        }
+        for (; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '[') {
+                i = skipClass(regex, i);
+            } else if (c == ']') {
+                return i;
+            }
+        }
+        return regex.length();
+    }
+
+    private Map<String, IndexedFile> load() {
+        Map<String, IndexedFile> loaded = new HashMap<>();
+        if (!Files.isRegularFile(indexFile)) {
+            return loaded;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                return loaded;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String relativePath = in.readUTF();
+                long size = in.readLong();
+                long lastModified = in.readLong();
+                boolean binary = in.readBoolean();
+                int trigramCount = in.readInt();
+                long[] trigrams = null;
+                if (trigramCount >= 0) {
+                    trigrams = new long[trigramCount];
+                    for (int t = 0; t < trigramCount; t++) {
+                        trigrams[t] = in.readLong();
+                    }
+                }
+                loaded.put(relativePath, new IndexedFile(relativePath, size, lastModified, binary, trigrams));
+            }
+            return loaded;
+        } catch (IOException e) {
+            logger.warn("Ignoring unreadable code index {}", indexFile, e);
+            return new HashMap<>();
+        }
+    }
+
+    private void save(Map<String, IndexedFile> files) {
+        try {
+            Files.createDirectories(indexFile.getParent());
+            Path temp = Files.createTempFile(indexFile.getParent(), "index", ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(files.size());
+                for (IndexedFile file : files.values()) {
+                    out.writeUTF(file.relativePath());
+                    out.writeLong(file.size());
+                    out.writeLong(file.lastModified());
+                    out.writeBoolean(file.binary());
+                    if (file.trigrams() == null) {
+                        out.writeInt(-1);
+                    } else {
+                        out.writeInt(file.trigrams().length);
+                        for (long trigram : file.trigrams()) {
+                            out.writeLong(trigram);
+                        }
+                    }
+                }
+            }
+            Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Failed to save code index {}", indexFile, e);
+        }
+    }
+}
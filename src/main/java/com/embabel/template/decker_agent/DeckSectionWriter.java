@@ -0,0 +1,176 @@
+package com.embabel.template.decker_agent;
+
+import com.embabel.agent.api.common.PromptRunner;
+import com.embabel.agent.domain.library.CompletedResearch;
+import com.embabel.agent.domain.library.ResearchReport;
+import com.embabel.agent.domain.library.ResearchResult;
+import com.embabel.agent.domain.library.ResearchTopic;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+/**
+ * Writes a deck in two passes: a section of slides per research topic, drafted
+ * as soon as that topic's research completes, then a cheaper pass that stitches
+ * the sections into one deck with an opening, transitions and a close.
+ * Drafting overlaps research, so a slow topic only delays its own section.
+ */
+class DeckSectionWriter implements AutoCloseable {
+
+    /**
+     * Slides outside the topic sections: title, agenda, call to action and references
+     */
+    private static final int FRAMING_SLIDES = 4;
+
+    private final Logger logger = LoggerFactory.getLogger(DeckSectionWriter.class);
+
+    private final PromptRunner sectionWriter;
+    private final PromptRunner stitcher;
+    private final LlmConcurrencyLimiter llmLimiter;
+    private final PresentationMakerProperties properties;
+    private final Map<Integer, CompletableFuture<String>> sections = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * @param sectionWriter runs section drafting prompts
+     * @param stitcher      runs the final pass, usually with a cheaper model
+     */
+    DeckSectionWriter(PromptRunner sectionWriter, PromptRunner stitcher, LlmConcurrencyLimiter llmLimiter,
+                      PresentationMakerProperties properties) {
+        this.sectionWriter = sectionWriter;
+        this.stitcher = stitcher;
+        this.llmLimiter = llmLimiter;
+        this.properties = properties;
+    }
+
+    /**
+     * Start drafting the section for a topic, if it is not already under way
+     *
+     * @param index      position of the topic in the deck
+     * @param topicCount number of topics in the deck
+     */
+    void draft(PresentationRequest presentationRequest, int index, int topicCount, ResearchTopic topic, ResearchReport report) {
+        sections.computeIfAbsent(index, i -> {
+            logger.info("Drafting section {} of {}: {}", index + 1, topicCount, topic.getTopic());
+            return CompletableFuture.supplyAsync(() -> llmLimiter.call("section", () -> writeSection(presentationRequest, index, topicCount, topic, report)), executor);
+        });
+    }
+
+    /**
+     * Wait for all sections, drafting any that were not started, and stitch them into a deck
+     */
+    SlideDeck stitch(PresentationRequest presentationRequest, ResearchResult researchResult) {
+        // Topics merged before research share a report, and get one section between them
+        List<CompletedResearch> researches = List.copyOf(researchResult.getTopicResearches().stream()
+                .collect(Collectors.toMap(CompletedResearch::getResearchReport, research -> research,
+                        (first, merged) -> first, LinkedHashMap::new))
+                .values());
+        for (int i = 0; i < researches.size(); i++) {
+            draft(presentationRequest, i, researches.size(), researches.get(i).getTopic(), researches.get(i).getResearchReport());
+        }
+
+        long start = System.currentTimeMillis();
+        List<String> drafted = new ArrayList<>(researches.size());
+        for (int i = 0; i < researches.size(); i++) {
+            drafted.add(await(i, researches.get(i)));
+        }
+        logger.info("Waited {}ms for {} section drafts after research completed", System.currentTimeMillis() - start, drafted.size());
+
+        return llmLimiter.call("stitch", () -> stitcher.createObject(stitchPrompt(presentationRequest, drafted), SlideDeck.class));
+    }
+
+    /**
+     * @return the drafted section, or the raw research if drafting failed, so the stitch pass can still use it
+     */
+    private String await(int index, CompletedResearch research) {
+        CompletableFuture<String> section = sections.get(index);
+        try {
+            return section.get(properties.getSectionDraftTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            section.cancel(true);
+            logger.warn("Drafting section {} timed out: passing its research to the final pass", index + 1);
+        } catch (ExecutionException e) {
+            logger.warn("Drafting section {} failed: passing its research to the final pass", index + 1, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            section.cancel(true);
+        }
+        return "Research on " + research.getTopic().getTopic() + " to turn into slides:\n" + research.getResearchReport();
+    }
+
+    private String writeSection(PresentationRequest presentationRequest, int index, int topicCount, ResearchTopic topic, ResearchReport report) {
+        return sectionWriter.generateText(
+                "You are writing one section of a slide deck. Other sections are written separately\n" +
+                        "and a final pass will add the title, agenda, transitions, call to action and references.\n\n" +
+                        "# About the presenter\n" +
+                        presentationRequest.getPresenterBio() + "\n\n" +
+                        "# Presentation narrative\n" +
+                        presentationRequest.getBrief() + "\n\n" +
+                        "This is section " + (index + 1) + " of " + topicCount + ", about: " + topic.getTopic() + "\n" +
+                        "It should be about " + slidesPerSection(presentationRequest, topicCount) + " slides long.\n" +
+                        "Base it on the following research:\n" +
+                        report + "\n\n" +
+                        "Use the findPatternInProject tool and other file tools to find relevant content within the given software project\n" +
+                        "if required and format code on slides.\n\n" +
+                        "Use Marp format, separating slides with ---. Do not include a front matter header.\n" +
+                        "If you include GraphViz dot diagrams, do NOT enclose them in ```\n" +
+                        "DO start with dot e.g. \"dot digraph...\"\n" +
+                        "List the reference links you used on the last slide of the section.\n" +
+                        "Return nothing but the section."
+        );
+    }
+
+    private int slidesPerSection(PresentationRequest presentationRequest, int topicCount) {
+        return Math.max(1, (presentationRequest.getSlideCount() - FRAMING_SLIDES) / Math.max(1, topicCount));
+    }
+
+    private String stitchPrompt(PresentationRequest presentationRequest, List<String> drafted) {
+        StringBuilder prompt = new StringBuilder(
+                "Combine the following independently written sections into one impactful slide deck.\n" +
+                        "Presentation narrative:\n" +
+                        presentationRequest.getBrief() + "\n\n" +
+                        "The deck should be " + presentationRequest.getSlideCount() + " slides long.\n" +
+                        "Add a title slide, a short agenda, transitions where sections meet,\n" +
+                        "a compelling close with a call to action, and end with a list of the reference links.\n" +
+                        "Harmonise terminology, tone and formatting across sections and remove repetition,\n" +
+                        "but keep the content, code and diagrams of each section.\n" +
+                        "Keep GraphViz dot diagrams exactly as written, starting with dot and not enclosed in ```.\n\n" +
+                        "Use the following images as suggested:\n" +
+                        presentationRequest.getImages().entrySet().stream()
+                                .map(entry -> entry.getKey() + ": " + entry.getValue().url() + " - use when: " + entry.getValue().useWhen())
+                                .collect(Collectors.joining("\n")) + "\n\n" +
+                        "Use the following header elements to start the deck.\n" +
+                        "Add further header elements if you wish.\n\n" +
+                        "```\n" +
+                        presentationRequest.getHeader() + "\n" +
+                        "```\n\n");
+        for (int i = 0; i < drafted.size(); i++) {
+            prompt.append("<section number=\"").append(i + 1).append("\">\n")
+                    .append(drafted.get(i).strip())
+                    .append("\n</section>\n");
+        }
+        return prompt.toString();
+    }
+
+    boolean isClosed() {
+        return executor.isShutdown();
+    }
+
+    @Override
+    public void close() {
+        sections.values().forEach(section -> section.cancel(true));
+        executor.shutdownNow();
+    }
+}
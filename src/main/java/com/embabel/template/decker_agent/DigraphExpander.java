@@ -1,5 +1,14 @@
 package com.embabel.template.decker_agent;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 public interface DigraphExpander {
 
     /**
@@ -10,5 +19,40 @@ public interface DigraphExpander {
      * @return name of the file, without a path
      */
     String expandDiagram(String fileBase, String dot);
-}
 
+    /**
+     * Expands several DOT diagrams. By default each diagram is expanded
+     * separately, with up to the given number running concurrently.
+     * Implementations may render all diagrams at once.
+     *
+     * @param dotByFileBase DOT diagrams keyed by the base name of their file
+     * @param concurrency   maximum number of diagrams to expand concurrently
+     * @return name of each file, without a path, keyed by base name
+     */
+    default Map<String, String> expandDiagrams(Map<String, String> dotByFileBase, int concurrency) {
+        Map<String, String> diagramFiles = new ConcurrentHashMap<>();
+        if (dotByFileBase.isEmpty()) {
+            return diagramFiles;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(concurrency, dotByFileBase.size())));
+        try {
+            List<Future<?>> expansions = new ArrayList<>();
+            dotByFileBase.forEach((fileBase, dot) -> expansions.add(executor.submit(() ->
+                    diagramFiles.put(fileBase, expandDiagram(fileBase, dot)))));
+            for (Future<?> expansion : expansions) {
+                expansion.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted expanding diagrams", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("Failed to expand diagrams", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return diagramFiles;
+    }
+}
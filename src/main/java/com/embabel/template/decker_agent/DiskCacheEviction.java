@@ -0,0 +1,75 @@
+package com.embabel.template.decker_agent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Size-bounded eviction for the disk caches, which use the last modified time
+ * of an entry as the time it was last used.
+ * Other runs may write and evict the same cache concurrently, so entries that
+ * disappear during eviction are skipped, and failures are logged rather than thrown:
+ * a cache that could not be trimmed must never fail the write that triggered it.
+ */
+final class DiskCacheEviction {
+
+    private static final Logger logger = LoggerFactory.getLogger(DiskCacheEviction.class);
+
+    private DiskCacheEviction() {
+    }
+
+    private record Entry(Path path, FileTime lastModified, long size) {
+    }
+
+    /**
+     * Delete the least recently used entries until the rest fit in maxBytes
+     *
+     * @param suffix    file name suffix of entries; other files in the directory are left alone
+     * @param cacheName name of the cache for log messages
+     */
+    static void evict(Path directory, String suffix, long maxBytes, String cacheName) {
+        List<Entry> entries = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, path -> path.getFileName().toString().endsWith(suffix))) {
+            for (Path file : files) {
+                // Attributes are read once, so the order cannot change or fail while sorting
+                try {
+                    BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                    if (attributes.isRegularFile()) {
+                        entries.add(new Entry(file, attributes.lastModifiedTime(), attributes.size()));
+                    }
+                } catch (NoSuchFileException e) {
+                    // Evicted or replaced by another run since it was listed
+                } catch (IOException e) {
+                    logger.warn("Skipping unreadable {} cache entry {}", cacheName, file.getFileName(), e);
+                }
+            }
+        } catch (IOException | DirectoryIteratorException e) {
+            logger.warn("Failed to list {} cache {} for eviction", cacheName, directory, e);
+            return;
+        }
+        entries.sort(Comparator.comparing(Entry::lastModified).reversed());
+        long total = 0;
+        for (Entry entry : entries) {
+            total += entry.size();
+            if (total > maxBytes) {
+                logger.info("Evicting {} from {} cache", entry.path().getFileName(), cacheName);
+                try {
+                    Files.deleteIfExists(entry.path());
+                } catch (IOException e) {
+                    logger.warn("Failed to evict {} from {} cache", entry.path().getFileName(), cacheName, e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.embabel.template.decker_agent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds dot diagrams in deck text in a single pass: {@code dot digraph name { ... }},
+ * optionally fenced as a {@code ```dot} code block.
+ * Braces are balanced, so subgraphs and attribute blocks are part of the diagram,
+ * and braces inside quoted strings, HTML labels and comments are ignored.
+ * Each character is examined a bounded number of times, so there is no backtracking on large decks.
+ */
+final class DotBlockScanner {
+
+    /**
+     * A diagram in the text
+     *
+     * @param start start of the block, including an opening fence
+     * @param end   end of the block, including whitespace and a closing fence after the graph
+     * @param graph {@code digraph} followed by the braced body, ready to render
+     */
+    record Block(int start, int end, String name, String graph) {
+    }
+
+    private final String text;
+    private int position;
+
+    private DotBlockScanner(String text) {
+        this.text = text;
+    }
+
+    static List<Block> scan(String text) {
+        return new DotBlockScanner(text).blocks();
+    }
+
+    private List<Block> blocks() {
+        List<Block> blocks = new ArrayList<>();
+        while (true) {
+            int candidate = text.indexOf("dot", position);
+            if (candidate < 0) {
+                return blocks;
+            }
+            position = candidate + 3;
+            Block block = block(candidate);
+            if (block != null) {
+                blocks.add(block);
+                position = block.end();
+            }
+        }
+    }
+
+    /**
+     * Parse a block at a candidate {@code dot}, leaving position after it if it is one
+     *
+     * @return null if there is no diagram here
+     */
+    private Block block(int dot) {
+        int start = dot >= 3 && text.startsWith("```", dot - 3) ? dot - 3 : dot;
+        int i = skipWhitespace(dot + 3);
+        if (!text.startsWith("digraph", i)) {
+            return null;
+        }
+        i += "digraph".length();
+        int nameStart = skipWhitespace(i);
+        if (nameStart == i) {
+            return null;
+        }
+        int nameEnd = nameStart;
+        while (nameEnd < text.length() && isWordChar(text.charAt(nameEnd))) {
+            nameEnd++;
+        }
+        if (nameEnd == nameStart) {
+            return null;
+        }
+        int open = skipWhitespace(nameEnd);
+        if (open >= text.length() || text.charAt(open) != '{') {
+            return null;
+        }
+        int close = matchingBrace(open);
+        if (close < 0) {
+            // A graph without its closing brace runs to the end of the text, so there is nothing more to find
+            position = text.length();
+            return null;
+        }
+        int end = skipWhitespace(close + 1);
+        if (text.startsWith("```", end)) {
+            end += 3;
+        }
+        return new Block(start, end, text.substring(nameStart, nameEnd), "digraph " + text.substring(open, close + 1));
+    }
+
+    /**
+     * @return index of the brace closing the one at open, or -1 if it is not closed
+     */
+    private int matchingBrace(int open) {
+        int depth = 0;
+        int i = open;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '{' -> depth++;
+                case '}' -> {
+                    if (--depth == 0) {
+                        return i;
+                    }
+                }
+                case '"' -> i = skipQuoted(i);
+                case '<' -> i = skipHtml(i);
+                case '/' -> i = skipComment(i);
+                case '#' -> {
+                    if (i == 0 || text.charAt(i - 1) == '\n') {
+                        i = endOfLine(i);
+                    }
+                }
+                default -> {
+                }
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    /**
+     * @return index of the closing quote, honouring backslash escapes
+     */
+    private int skipQuoted(int quote) {
+        int i = quote + 1;
+        while (i < text.length() && text.charAt(i) != '"') {
+            i += text.charAt(i) == '\\' ? 2 : 1;
+        }
+        return Math.min(i, text.length());
+    }
+
+    /**
+     * @return index of the {@code >} closing an HTML label, which may contain nested tags
+     */
+    private int skipHtml(int open) {
+        int depth = 0;
+        for (int i = open; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '<') {
+                depth++;
+            } else if (c == '>' && --depth == 0) {
+                return i;
+            }
+        }
+        return text.length();
+    }
+
+    /**
+     * @return index of the last character of a comment starting at a slash, or the slash if it starts none
+     */
+    private int skipComment(int slash) {
+        if (text.startsWith("//", slash)) {
+            return endOfLine(slash);
+        }
+        if (text.startsWith("/*", slash)) {
+            int close = text.indexOf("*/", slash + 2);
+            return close < 0 ? text.length() : close + 1;
+        }
+        return slash;
+    }
+
+    private int endOfLine(int i) {
+        int newline = text.indexOf('\n', i);
+        return newline < 0 ? text.length() : newline - 1;
+    }
+
+    private int skipWhitespace(int i) {
+        while (i < text.length() && Character.isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isWordChar(char c) {
+        return c == '_' || (c < 128 && Character.isLetterOrDigit(c));
+    }
+}
@@ -3,58 +3,176 @@ package com.embabel.template.decker_agent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
+/**
+ * Renders diagrams with the Graphviz dot CLI.
+ * In batch mode, all diagrams in a call to {@link #expandDiagrams(Map, int)}
+ * are rendered by a single dot process.
+ */
 class DotCliDigraphExpander implements DigraphExpander {
 
+    private static final String BATCH_INPUT = "diagrams.gv";
+
+    /**
+     * Runs dot in a working directory, writing input to its stdin if not null
+     */
+    interface DotRunner {
+        void run(Path workDirectory, String input, String... arguments);
+    }
+
     private final String directory;
+    private final boolean batch;
+    private final PresentationMetrics metrics;
+    private final DotRunner runner;
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
     public DotCliDigraphExpander(String directory) {
+        this(directory, true);
+    }
+
+    public DotCliDigraphExpander(String directory, boolean batch) {
+        this(directory, batch, PresentationMetrics.global());
+    }
+
+    DotCliDigraphExpander(String directory, boolean batch, PresentationMetrics metrics) {
+        this(directory, batch, metrics, null);
+    }
+
+    /**
+     * @param runner runs dot, or null to run the dot CLI
+     */
+    DotCliDigraphExpander(String directory, boolean batch, PresentationMetrics metrics, DotRunner runner) {
         this.directory = directory;
+        this.batch = batch;
+        this.metrics = metrics;
+        this.runner = runner != null ? runner : this::runDotProcess;
     }
 
     @Override
     public String expandDiagram(String fileBase, String dot) {
         String outputFile = fileBase + ".svg";
         logger.info("Expanding diagram to {}:\n{}", outputFile, dot);
+        runDot(Path.of(directory), dot, "-Tsvg", "-o", outputFile);
+        return outputFile;
+    }
 
-        String command = "echo '" + dot + "' | dot -Tsvg -o " + outputFile;
-        ProcessBuilder processBuilder = new ProcessBuilder();
-
-        processBuilder.directory(new File(directory));
+    /**
+     * Pass all diagrams to one dot process, which writes one output file per graph with -O.
+     * Graphs whose output is missing, for example because dot stopped at a syntax error,
+     * are rendered separately.
+     */
+    @Override
+    public Map<String, String> expandDiagrams(Map<String, String> dotByFileBase, int concurrency) {
+        if (!batch || dotByFileBase.size() < 2) {
+            return DigraphExpander.super.expandDiagrams(dotByFileBase, concurrency);
+        }
+        List<String> fileBases = new ArrayList<>(dotByFileBase.keySet());
+        Map<String, String> diagramFiles = new HashMap<>();
+        Path workDirectory = null;
+        try {
+            workDirectory = Files.createTempDirectory(Path.of(directory), ".dot-batch");
+            Files.writeString(workDirectory.resolve(BATCH_INPUT), String.join("\n", dotByFileBase.values()));
+            logger.info("Rendering {} diagrams with one dot process", fileBases.size());
+            runDot(workDirectory, null, "-Tsvg", "-O", BATCH_INPUT);
+            for (int i = 0; i < fileBases.size(); i++) {
+                Path rendered = workDirectory.resolve(batchOutputFile(i));
+                if (Files.isRegularFile(rendered) && Files.size(rendered) > 0) {
+                    String outputFile = fileBases.get(i) + ".svg";
+                    Files.move(rendered, Path.of(directory, outputFile), StandardCopyOption.REPLACE_EXISTING);
+                    diagramFiles.put(fileBases.get(i), outputFile);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // Every diagram without output is rendered separately below
+            logger.warn("Batch diagram rendering failed", e);
+        } finally {
+            deleteRecursively(workDirectory);
+        }
 
-        String os = System.getProperty("os.name").toLowerCase();
-        if (os.contains("windows")) {
-            processBuilder.command("cmd.exe", "/c", command);
-        } else {
-            processBuilder.command("sh", "-c", command);
+        Map<String, String> failed = new LinkedHashMap<>(dotByFileBase);
+        failed.keySet().removeAll(diagramFiles.keySet());
+        if (!failed.isEmpty()) {
+            logger.warn("Rendering {} diagrams separately after batch: {}", failed.size(), failed.keySet());
+            diagramFiles.putAll(DigraphExpander.super.expandDiagrams(failed, concurrency));
         }
+        return diagramFiles;
+    }
+
+    /**
+     * Name dot -O gives the output for the graph at the given index of the input file:
+     * diagrams.gv.svg for the first graph, then diagrams.gv.2.svg, diagrams.gv.3.svg and so on
+     */
+    static String batchOutputFile(int index) {
+        return index == 0 ? BATCH_INPUT + ".svg" : BATCH_INPUT + "." + (index + 1) + ".svg";
+    }
+
+    /**
+     * Run dot in the given directory, writing input to its stdin if not null
+     */
+    private void runDot(Path workDirectory, String input, String... arguments) {
+        metrics.process("dot", () -> runner.run(workDirectory, input, arguments));
+    }
 
+    private void runDotProcess(Path workDirectory, String input, String... arguments) {
+        List<String> command = new ArrayList<>();
+        command.add("dot");
+        command.addAll(List.of(arguments));
+        ProcessBuilder processBuilder = new ProcessBuilder(command)
+                .directory(workDirectory.toFile())
+                .redirectErrorStream(true);
         logger.info("Running command {}", processBuilder.command());
-        processBuilder.redirectErrorStream(true);
 
         try {
             Process process = processBuilder.start();
-            java.io.BufferedReader reader = new java.io.BufferedReader(new java.io.InputStreamReader(process.getInputStream()));
-            String line;
-            while ((line = reader.readLine()) != null) {
-                System.out.println(line);
+            try (OutputStream stdin = process.getOutputStream()) {
+                if (input != null) {
+                    stdin.write(input.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            try (InputStream output = process.getInputStream()) {
+                String text = new String(output.readAllBytes(), StandardCharsets.UTF_8);
+                if (!text.isBlank()) {
+                    logger.info("dot output:\n{}", text);
+                }
             }
 
-            boolean exitCode = process.waitFor(60, TimeUnit.SECONDS);
-
-            if (exitCode) {
-                System.out.println("dot CLI completed with exit code: " + process.exitValue());
+            if (process.waitFor(60, TimeUnit.SECONDS)) {
+                logger.info("dot CLI completed with exit code: {}", process.exitValue());
             } else {
-                System.out.println("dot CLI process timed out");
+                logger.warn("dot CLI process timed out");
                 process.destroyForcibly();
             }
-        } catch (IOException | InterruptedException e) {
-            e.printStackTrace();
+        } catch (IOException e) {
+            logger.error("Error running dot CLI", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Interrupted running dot CLI", e);
+        }
+    }
+
+    private void deleteRecursively(Path path) {
+        if (path == null) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(path)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        } catch (IOException e) {
+            logger.warn("Failed to delete {}", path, e);
         }
-        return fileBase + ".svg";
     }
 }
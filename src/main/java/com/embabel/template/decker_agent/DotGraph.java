@@ -0,0 +1,135 @@
+package com.embabel.template.decker_agent;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Graph parsed from the subset of DOT used in decks.
+ * Attributes are kept as strings, as in DOT.
+ */
+final class DotGraph {
+
+    private final String name;
+    private final boolean directed;
+    private final Map<String, String> attributes = new LinkedHashMap<>();
+    private final Map<String, Node> nodes = new LinkedHashMap<>();
+    private final List<Edge> edges = new ArrayList<>();
+    private final List<Cluster> clusters = new ArrayList<>();
+
+    DotGraph(String name, boolean directed) {
+        this.name = name;
+        this.directed = directed;
+    }
+
+    String name() {
+        return name;
+    }
+
+    boolean directed() {
+        return directed;
+    }
+
+    Map<String, String> attributes() {
+        return attributes;
+    }
+
+    String attribute(String key, String defaultValue) {
+        return attributes.getOrDefault(key, defaultValue);
+    }
+
+    List<Node> nodes() {
+        return List.copyOf(nodes.values());
+    }
+
+    Node node(String id) {
+        return nodes.get(id);
+    }
+
+    List<Edge> edges() {
+        return edges;
+    }
+
+    List<Cluster> clusters() {
+        return clusters;
+    }
+
+    /**
+     * Add a node, or merge attributes into an existing node.
+     * A node belongs to the first cluster it is declared in.
+     */
+    Node addNode(String id, Map<String, String> nodeAttributes, Cluster cluster) {
+        Node node = nodes.get(id);
+        if (node == null || (node.cluster() == null && cluster != null)) {
+            node = new Node(id, node == null ? new LinkedHashMap<>() : node.attributes(), cluster);
+            nodes.put(id, node);
+            if (cluster != null) {
+                cluster.nodeIds().add(id);
+            }
+        }
+        node.attributes().putAll(nodeAttributes);
+        return node;
+    }
+
+    void addEdge(String from, String to, Map<String, String> edgeAttributes) {
+        edges.add(new Edge(from, to, new LinkedHashMap<>(edgeAttributes)));
+    }
+
+    Cluster addCluster(String id, Cluster parent) {
+        Cluster cluster = new Cluster(id, new LinkedHashMap<>(), new ArrayList<>(), parent);
+        clusters.add(cluster);
+        return cluster;
+    }
+
+    record Node(String id, Map<String, String> attributes, Cluster cluster) {
+
+        String attribute(String key, String defaultValue) {
+            return attributes.getOrDefault(key, defaultValue);
+        }
+
+        String label() {
+            String label = attributes.get("label");
+            return label == null || label.equals("\\N") ? id : label;
+        }
+    }
+
+    record Edge(String from, String to, Map<String, String> attributes) {
+
+        String attribute(String key, String defaultValue) {
+            return attributes.getOrDefault(key, defaultValue);
+        }
+    }
+
+    /**
+     * Subgraph whose name starts with "cluster", drawn as a box around its nodes
+     */
+    record Cluster(String id, Map<String, String> attributes, List<String> nodeIds, Cluster parent) {
+
+        String attribute(String key, String defaultValue) {
+            return attributes.getOrDefault(key, defaultValue);
+        }
+
+        /**
+         * Is this cluster the given cluster or nested inside it?
+         */
+        boolean within(Cluster other) {
+            for (Cluster c = this; c != null; c = c.parent()) {
+                if (c == other) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(this);
+        }
+    }
+}
@@ -0,0 +1,675 @@
+package com.embabel.template.decker_agent;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Layered (Sugiyama style) layout of a {@link DotGraph}:
+ * cycles are broken by reversing back edges, nodes are ranked by longest path,
+ * long edges get virtual nodes, rank order is improved with barycenter sweeps
+ * keeping clusters together, and positions within ranks are set by isotonic regression
+ * towards the neighbours' positions.
+ * Sizes are in points, with the origin at the top left.
+ */
+final class DotLayout {
+
+    static final double MARGIN = 8;
+    private static final double CLUSTER_PADDING = 8;
+    private static final int ORDERING_SWEEPS = 8;
+    private static final int POSITIONING_SWEEPS = 8;
+
+    private final DotGraph graph;
+    private final List<NodeBox> nodes = new ArrayList<>();
+    private final List<EdgeRoute> edges = new ArrayList<>();
+    private final List<ClusterBox> clusters = new ArrayList<>();
+    private double width;
+    private double height;
+
+    private DotLayout(DotGraph graph) {
+        this.graph = graph;
+    }
+
+    static DotLayout layout(DotGraph graph) {
+        DotLayout layout = new DotLayout(graph);
+        layout.run();
+        return layout;
+    }
+
+    List<NodeBox> nodes() {
+        return nodes;
+    }
+
+    List<EdgeRoute> edges() {
+        return edges;
+    }
+
+    List<ClusterBox> clusters() {
+        return clusters;
+    }
+
+    double width() {
+        return width;
+    }
+
+    double height() {
+        return height;
+    }
+
+    record Point(double x, double y) {
+    }
+
+    /**
+     * Node with its center and size
+     */
+    record NodeBox(DotGraph.Node node, double x, double y, double width, double height, List<String> lines, double fontSize) {
+    }
+
+    /**
+     * Polyline from the boundary of the tail node to the boundary of the head node
+     */
+    record EdgeRoute(DotGraph.Edge edge, List<Point> points) {
+
+        Point labelPosition() {
+            if (points.size() % 2 == 1) {
+                return points.get(points.size() / 2);
+            }
+            Point a = points.get(points.size() / 2 - 1);
+            Point b = points.get(points.size() / 2);
+            return new Point((a.x() + b.x()) / 2, (a.y() + b.y()) / 2);
+        }
+    }
+
+    record ClusterBox(DotGraph.Cluster cluster, double x, double y, double width, double height, double fontSize) {
+    }
+
+    /**
+     * Vertex in the layered graph: a node, or a virtual node on a long edge
+     */
+    private static final class Vertex {
+        final DotGraph.Node node;
+        final double across;
+        final double along;
+        final List<DotGraph.Cluster> clusterPath;
+        final List<Vertex> up = new ArrayList<>();
+        final List<Vertex> down = new ArrayList<>();
+        int rank;
+        int order;
+        double position;
+
+        Vertex(DotGraph.Node node, double across, double along, List<DotGraph.Cluster> clusterPath) {
+            this.node = node;
+            this.across = across;
+            this.along = along;
+            this.clusterPath = clusterPath;
+        }
+    }
+
+    private void run() {
+        String rankdir = graph.attribute("rankdir", "TB").toUpperCase();
+        boolean sideways = rankdir.equals("LR") || rankdir.equals("RL");
+        double nodesep = inches(graph.attribute("nodesep", "0.25"), 0.25);
+        double ranksep = inches(graph.attribute("ranksep", "0.5"), 0.5);
+
+        Map<String, Vertex> vertexById = new LinkedHashMap<>();
+        Map<String, NodeSize> sizes = new HashMap<>();
+        for (DotGraph.Node node : graph.nodes()) {
+            NodeSize size = NodeSize.of(node);
+            sizes.put(node.id(), size);
+            vertexById.put(node.id(), new Vertex(node,
+                    sideways ? size.height() : size.width(),
+                    sideways ? size.width() : size.height(),
+                    clusterPath(node.cluster())));
+        }
+        List<Vertex> vertices = new ArrayList<>(vertexById.values());
+
+        // Edges used for ranking, oriented so that the graph is acyclic
+        List<DotGraph.Edge> layoutEdges = graph.edges().stream()
+                .filter(e -> !e.from().equals(e.to()))
+                .toList();
+        rank(layoutEdges, breakCycles(layoutEdges, vertexById), vertexById);
+
+        // Chains of vertices for each edge from its upper to its lower end, adding virtual vertices on long edges
+        Map<DotGraph.Edge, List<Vertex>> chains = new IdentityHashMap<>();
+        for (DotGraph.Edge edge : layoutEdges) {
+            Vertex from = vertexById.get(edge.from());
+            Vertex to = vertexById.get(edge.to());
+            boolean upwards = from.rank > to.rank;
+            Vertex upper = upwards ? to : from;
+            Vertex lower = upwards ? from : to;
+            List<Vertex> chain = new ArrayList<>();
+            chain.add(upper);
+            List<DotGraph.Cluster> common = commonPrefix(upper.clusterPath, lower.clusterPath);
+            for (int r = upper.rank + 1; r < lower.rank; r++) {
+                Vertex virtual = new Vertex(null, 2, 2, common);
+                virtual.rank = r;
+                vertices.add(virtual);
+                chain.add(virtual);
+            }
+            chain.add(lower);
+            // Edges within a rank are drawn straight and take no part in ordering
+            if (upper.rank != lower.rank) {
+                for (int c = 0; c + 1 < chain.size(); c++) {
+                    chain.get(c).down.add(chain.get(c + 1));
+                    chain.get(c + 1).up.add(chain.get(c));
+                }
+            }
+            chains.put(edge, upwards ? chain.reversed() : chain);
+        }
+
+        List<List<Vertex>> ranks = order(vertices);
+        position(ranks, nodesep);
+
+        // Ranks are placed along the layout axis
+        double[] rankOffset = new double[ranks.size()];
+        double offset = MARGIN;
+        for (int r = 0; r < ranks.size(); r++) {
+            double thickness = ranks.get(r).stream().mapToDouble(v -> v.along).max().orElse(0);
+            rankOffset[r] = offset + thickness / 2;
+            offset += thickness + ranksep;
+        }
+        double minPosition = vertices.stream().mapToDouble(v -> v.position - v.across / 2).min().orElse(0);
+        double shift = MARGIN + clusterDepth() * CLUSTER_PADDING - minPosition;
+        double rankLength = Math.max(offset - ranksep + MARGIN, 2 * MARGIN);
+        double crossLength = vertices.stream().mapToDouble(v -> v.position + v.across / 2).max().orElse(0) + shift
+                + MARGIN + clusterDepth() * CLUSTER_PADDING;
+
+        Map<Vertex, Point> centers = new HashMap<>();
+        for (Vertex v : vertices) {
+            double across = v.position + shift;
+            double along = rankOffset[v.rank] + clusterDepth() * CLUSTER_PADDING;
+            centers.put(v, orient(rankdir, across, along, rankLength + 2 * clusterDepth() * CLUSTER_PADDING));
+        }
+        width = sideways ? rankLength + 2 * clusterDepth() * CLUSTER_PADDING : crossLength;
+        height = sideways ? crossLength : rankLength + 2 * clusterDepth() * CLUSTER_PADDING;
+
+        Map<String, NodeBox> boxes = new LinkedHashMap<>();
+        for (Vertex v : vertexById.values()) {
+            Point center = centers.get(v);
+            NodeSize size = sizes.get(v.node.id());
+            NodeBox box = new NodeBox(v.node, center.x(), center.y(), size.width(), size.height(), size.lines(), size.fontSize());
+            boxes.put(v.node.id(), box);
+            nodes.add(box);
+        }
+
+        for (DotGraph.Edge edge : graph.edges()) {
+            List<Vertex> chain = chains.get(edge);
+            if (chain == null) {
+                edges.add(new EdgeRoute(edge, selfLoop(boxes.get(edge.from()))));
+                continue;
+            }
+            List<Point> points = new ArrayList<>();
+            chain.forEach(v -> points.add(centers.get(v)));
+            points.set(0, clip(boxes.get(edge.from()), points.get(1)));
+            points.set(points.size() - 1, clip(boxes.get(edge.to()), points.get(points.size() - 2)));
+            edges.add(new EdgeRoute(edge, points));
+        }
+
+        layoutClusters(boxes);
+        if (!graph.attribute("label", "").isEmpty()) {
+            height += fontSize(graph.attributes()) * 1.5;
+        }
+    }
+
+    /**
+     * Depth first search from each node in declaration order; edges to a node on the stack are reversed
+     */
+    private static boolean[] breakCycles(List<DotGraph.Edge> edges, Map<String, Vertex> vertexById) {
+        Map<String, List<Integer>> outgoing = new HashMap<>();
+        for (int i = 0; i < edges.size(); i++) {
+            outgoing.computeIfAbsent(edges.get(i).from(), k -> new ArrayList<>()).add(i);
+        }
+        boolean[] reversed = new boolean[edges.size()];
+        Map<String, Integer> state = new HashMap<>();
+        for (String start : vertexById.keySet()) {
+            if (state.containsKey(start)) {
+                continue;
+            }
+            // Iterative DFS: each frame is a node and the index of its next outgoing edge
+            Deque<Object[]> stack = new ArrayDeque<>();
+            stack.push(new Object[]{start, 0});
+            state.put(start, 1);
+            while (!stack.isEmpty()) {
+                Object[] frame = stack.peek();
+                String node = (String) frame[0];
+                List<Integer> out = outgoing.getOrDefault(node, List.of());
+                int next = (Integer) frame[1];
+                if (next >= out.size()) {
+                    state.put(node, 2);
+                    stack.pop();
+                    continue;
+                }
+                frame[1] = next + 1;
+                int edge = out.get(next);
+                String target = edges.get(edge).to();
+                Integer targetState = state.get(target);
+                if (targetState == null) {
+                    state.put(target, 1);
+                    stack.push(new Object[]{target, 0});
+                } else if (targetState == 1) {
+                    reversed[edge] = true;
+                }
+            }
+        }
+        return reversed;
+    }
+
+    /**
+     * Longest path ranking in topological order, honouring minlen.
+     * Edges with constraint=false do not affect ranks.
+     */
+    private static void rank(List<DotGraph.Edge> edges, boolean[] reversed, Map<String, Vertex> vertexById) {
+        Map<Vertex, List<RankConstraint>> outgoing = new HashMap<>();
+        Map<Vertex, Integer> inDegree = new HashMap<>();
+        vertexById.values().forEach(v -> inDegree.put(v, 0));
+        for (int i = 0; i < edges.size(); i++) {
+            DotGraph.Edge edge = edges.get(i);
+            if (edge.attribute("constraint", "true").equals("false")) {
+                continue;
+            }
+            Vertex tail = vertexById.get(reversed[i] ? edge.to() : edge.from());
+            Vertex head = vertexById.get(reversed[i] ? edge.from() : edge.to());
+            int minlen = (int) Math.max(0, number(edge.attribute("minlen", "1"), 1));
+            outgoing.computeIfAbsent(tail, k -> new ArrayList<>()).add(new RankConstraint(head, minlen));
+            inDegree.merge(head, 1, Integer::sum);
+        }
+        Deque<Vertex> ready = new ArrayDeque<>();
+        vertexById.values().stream().filter(v -> inDegree.get(v) == 0).forEach(ready::add);
+        while (!ready.isEmpty()) {
+            Vertex v = ready.poll();
+            for (RankConstraint out : outgoing.getOrDefault(v, List.of())) {
+                out.head().rank = Math.max(out.head().rank, v.rank + out.minlen());
+                if (inDegree.merge(out.head(), -1, Integer::sum) == 0) {
+                    ready.add(out.head());
+                }
+            }
+        }
+    }
+
+    private record RankConstraint(Vertex head, int minlen) {
+    }
+
+    /**
+     * Order vertices within ranks with alternating barycenter sweeps, keeping the ordering with fewest crossings
+     */
+    private static List<List<Vertex>> order(List<Vertex> vertices) {
+        int maxRank = vertices.stream().mapToInt(v -> v.rank).max().orElse(0);
+        List<List<Vertex>> ranks = new ArrayList<>();
+        for (int r = 0; r <= maxRank; r++) {
+            ranks.add(new ArrayList<>());
+        }
+        vertices.forEach(v -> ranks.get(v.rank).add(v));
+        ranks.forEach(DotLayout::groupClusters);
+        ranks.forEach(DotLayout::renumber);
+
+        List<List<Vertex>> best = copy(ranks);
+        long bestCrossings = crossings(ranks);
+        for (int sweep = 0; sweep < ORDERING_SWEEPS && bestCrossings > 0; sweep++) {
+            boolean downwards = sweep % 2 == 0;
+            for (int i = 1; i < ranks.size(); i++) {
+                int r = downwards ? i : ranks.size() - 1 - i;
+                List<Vertex> rank = ranks.get(r);
+                Map<Vertex, Double> barycenters = new HashMap<>();
+                for (Vertex v : rank) {
+                    List<Vertex> neighbours = downwards ? v.up : v.down;
+                    barycenters.put(v, neighbours.isEmpty()
+                            ? v.order
+                            : neighbours.stream().mapToDouble(n -> n.order).average().orElse(v.order));
+                }
+                sortByCluster(rank, barycenters, 0);
+                renumber(rank);
+            }
+            long crossings = crossings(ranks);
+            if (crossings < bestCrossings) {
+                bestCrossings = crossings;
+                best = copy(ranks);
+            }
+        }
+        best.forEach(DotLayout::renumber);
+        return best;
+    }
+
+    private static void groupClusters(List<Vertex> rank) {
+        Map<Vertex, Double> initial = new HashMap<>();
+        for (int i = 0; i < rank.size(); i++) {
+            initial.put(rank.get(i), (double) i);
+        }
+        sortByCluster(rank, initial, 0);
+    }
+
+    /**
+     * Sort vertices by barycenter, keeping members of each cluster adjacent.
+     * A cluster is placed by the mean barycenter of its members.
+     */
+    private static void sortByCluster(List<Vertex> vertices, Map<Vertex, Double> barycenters, int depth) {
+        Map<Object, List<Vertex>> groups = new LinkedHashMap<>();
+        for (Vertex v : vertices) {
+            Object key = v.clusterPath.size() > depth ? v.clusterPath.get(depth) : v;
+            groups.computeIfAbsent(key, k -> new ArrayList<>()).add(v);
+        }
+        List<List<Vertex>> sorted = new ArrayList<>(groups.values());
+        sorted.sort(Comparator.comparingDouble(group ->
+                group.stream().mapToDouble(barycenters::get).average().orElse(0)));
+        vertices.clear();
+        for (List<Vertex> group : sorted) {
+            if (group.size() > 1) {
+                sortByCluster(group, barycenters, depth + 1);
+            }
+            vertices.addAll(group);
+        }
+    }
+
+    private static void renumber(List<Vertex> rank) {
+        for (int i = 0; i < rank.size(); i++) {
+            rank.get(i).order = i;
+        }
+    }
+
+    private static List<List<Vertex>> copy(List<List<Vertex>> ranks) {
+        return ranks.stream().map(rank -> (List<Vertex>) new ArrayList<>(rank)).toList();
+    }
+
+    private static long crossings(List<List<Vertex>> ranks) {
+        long crossings = 0;
+        for (List<Vertex> rank : ranks) {
+            List<int[]> segments = new ArrayList<>();
+            for (Vertex v : rank) {
+                for (Vertex below : v.down) {
+                    segments.add(new int[]{v.order, below.order});
+                }
+            }
+            for (int i = 0; i < segments.size(); i++) {
+                for (int j = i + 1; j < segments.size(); j++) {
+                    int[] a = segments.get(i);
+                    int[] b = segments.get(j);
+                    if ((long) (a[0] - b[0]) * (a[1] - b[1]) < 0) {
+                        crossings++;
+                    }
+                }
+            }
+        }
+        return crossings;
+    }
+
+    /**
+     * Assign positions across ranks. Each sweep moves vertices towards the mean position
+     * of their neighbours in the previous rank, as close as separation allows.
+     */
+    private void position(List<List<Vertex>> ranks, double nodesep) {
+        for (List<Vertex> rank : ranks) {
+            double x = 0;
+            for (int i = 0; i < rank.size(); i++) {
+                Vertex v = rank.get(i);
+                x += i == 0 ? v.across / 2 : separation(rank.get(i - 1), v, nodesep);
+                v.position = x;
+            }
+        }
+        for (int sweep = 0; sweep < POSITIONING_SWEEPS; sweep++) {
+            boolean downwards = sweep % 2 == 0;
+            for (int i = 0; i < ranks.size(); i++) {
+                List<Vertex> rank = ranks.get(downwards ? i : ranks.size() - 1 - i);
+                double[] desired = new double[rank.size()];
+                for (int j = 0; j < rank.size(); j++) {
+                    Vertex v = rank.get(j);
+                    List<Vertex> neighbours = new ArrayList<>(downwards ? v.up : v.down);
+                    if (neighbours.isEmpty()) {
+                        neighbours = downwards ? v.down : v.up;
+                    }
+                    desired[j] = neighbours.isEmpty()
+                            ? v.position
+                            : neighbours.stream().mapToDouble(n -> n.position).average().orElse(v.position);
+                }
+                place(rank, desired, nodesep);
+            }
+        }
+    }
+
+    /**
+     * Closest positions to the desired ones, in least squares, that keep order and separation.
+     * Subtracting cumulative separation turns this into isotonic regression, solved by pool adjacent violators.
+     */
+    private static void place(List<Vertex> rank, double[] desired, double nodesep) {
+        int n = rank.size();
+        double[] cumulative = new double[n];
+        for (int i = 1; i < n; i++) {
+            cumulative[i] = cumulative[i - 1] + separation(rank.get(i - 1), rank.get(i), nodesep);
+        }
+        double[] means = new double[n];
+        int[] counts = new int[n];
+        int blocks = 0;
+        for (int i = 0; i < n; i++) {
+            means[blocks] = desired[i] - cumulative[i];
+            counts[blocks] = 1;
+            blocks++;
+            while (blocks > 1 && means[blocks - 2] > means[blocks - 1]) {
+                int merged = counts[blocks - 2] + counts[blocks - 1];
+                means[blocks - 2] = (means[blocks - 2] * counts[blocks - 2] + means[blocks - 1] * counts[blocks - 1]) / merged;
+                counts[blocks - 2] = merged;
+                blocks--;
+            }
+        }
+        int i = 0;
+        for (int b = 0; b < blocks; b++) {
+            for (int c = 0; c < counts[b]; c++, i++) {
+                rank.get(i).position = means[b] + cumulative[i];
+            }
+        }
+    }
+
+    private static double separation(Vertex left, Vertex right, double nodesep) {
+        int shared = commonPrefix(left.clusterPath, right.clusterPath).size();
+        int boundaries = (left.clusterPath.size() - shared) + (right.clusterPath.size() - shared);
+        double gap = left.node == null || right.node == null ? nodesep / 2 : nodesep;
+        return left.across / 2 + right.across / 2 + gap + boundaries * CLUSTER_PADDING;
+    }
+
+    private static Point orient(String rankdir, double across, double along, double rankLength) {
+        return switch (rankdir) {
+            case "BT" -> new Point(across, rankLength - along);
+            case "LR" -> new Point(along, across);
+            case "RL" -> new Point(rankLength - along, across);
+            default -> new Point(across, along);
+        };
+    }
+
+    /**
+     * Point where the line from the node center towards the given point leaves the node
+     */
+    private static Point clip(NodeBox box, Point towards) {
+        double dx = towards.x() - box.x();
+        double dy = towards.y() - box.y();
+        if (dx == 0 && dy == 0) {
+            return new Point(box.x(), box.y());
+        }
+        double a = box.width() / 2;
+        double b = box.height() / 2;
+        double t;
+        String shape = box.node().attribute("shape", "ellipse").toLowerCase();
+        if (shape.equals("ellipse") || shape.equals("oval") || shape.equals("circle")
+                || shape.equals("doublecircle") || shape.equals("point")) {
+            t = 1 / Math.sqrt((dx * dx) / (a * a) + (dy * dy) / (b * b));
+        } else {
+            t = Math.min(dx == 0 ? Double.MAX_VALUE : a / Math.abs(dx), dy == 0 ? Double.MAX_VALUE : b / Math.abs(dy));
+        }
+        t = Math.min(t, 1);
+        return new Point(box.x() + dx * t, box.y() + dy * t);
+    }
+
+    private static List<Point> selfLoop(NodeBox box) {
+        double right = box.x() + box.width() / 2;
+        double loop = Math.max(18, box.height() / 2);
+        return List.of(
+                new Point(right - 2, box.y() - box.height() / 4),
+                new Point(right + loop, box.y() - box.height() / 2),
+                new Point(right + loop, box.y() + box.height() / 2),
+                new Point(right - 2, box.y() + box.height() / 4));
+    }
+
+    /**
+     * Boxes around cluster members, innermost first so that outer clusters enclose inner ones
+     */
+    private void layoutClusters(Map<String, NodeBox> boxes) {
+        List<DotGraph.Cluster> byDepth = new ArrayList<>(graph.clusters());
+        byDepth.sort(Comparator.comparingInt((DotGraph.Cluster c) -> clusterPath(c).size()).reversed());
+        Map<DotGraph.Cluster, ClusterBox> laidOut = new HashMap<>();
+        for (DotGraph.Cluster cluster : byDepth) {
+            double[] bounds = {Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE};
+            for (NodeBox box : boxes.values()) {
+                if (box.node().cluster() != null && box.node().cluster().within(cluster)) {
+                    include(bounds, box.x() - box.width() / 2, box.y() - box.height() / 2,
+                            box.x() + box.width() / 2, box.y() + box.height() / 2);
+                }
+            }
+            laidOut.forEach((inner, innerBox) -> {
+                if (inner.parent() == cluster) {
+                    include(bounds, innerBox.x(), innerBox.y(), innerBox.x() + innerBox.width(), innerBox.y() + innerBox.height());
+                }
+            });
+            if (bounds[0] > bounds[2]) {
+                continue;
+            }
+            double fontSize = fontSize(cluster.attributes());
+            double labelSpace = cluster.attribute("label", "").isEmpty() ? 0 : fontSize * 1.2;
+            ClusterBox clusterBox = new ClusterBox(cluster,
+                    bounds[0] - CLUSTER_PADDING,
+                    bounds[1] - CLUSTER_PADDING - labelSpace,
+                    bounds[2] - bounds[0] + 2 * CLUSTER_PADDING,
+                    bounds[3] - bounds[1] + 2 * CLUSTER_PADDING + labelSpace,
+                    fontSize);
+            laidOut.put(cluster, clusterBox);
+        }
+        // Draw outermost clusters first
+        for (int i = byDepth.size() - 1; i >= 0; i--) {
+            ClusterBox box = laidOut.get(byDepth.get(i));
+            if (box != null) {
+                clusters.add(box);
+                width = Math.max(width, box.x() + box.width() + MARGIN);
+                height = Math.max(height, box.y() + box.height() + MARGIN);
+            }
+        }
+        double top = clusters.stream().mapToDouble(ClusterBox::y).min().orElse(MARGIN);
+        double left = clusters.stream().mapToDouble(ClusterBox::x).min().orElse(MARGIN);
+        if (top < MARGIN || left < MARGIN) {
+            translate(Math.max(0, MARGIN - left), Math.max(0, MARGIN - top));
+        }
+    }
+
+    private void translate(double dx, double dy) {
+        nodes.replaceAll(n -> new NodeBox(n.node(), n.x() + dx, n.y() + dy, n.width(), n.height(), n.lines(), n.fontSize()));
+        edges.replaceAll(e -> new EdgeRoute(e.edge(), e.points().stream().map(p -> new Point(p.x() + dx, p.y() + dy)).toList()));
+        clusters.replaceAll(c -> new ClusterBox(c.cluster(), c.x() + dx, c.y() + dy, c.width(), c.height(), c.fontSize()));
+        width += dx;
+        height += dy;
+    }
+
+    private static void include(double[] bounds, double left, double top, double right, double bottom) {
+        bounds[0] = Math.min(bounds[0], left);
+        bounds[1] = Math.min(bounds[1], top);
+        bounds[2] = Math.max(bounds[2], right);
+        bounds[3] = Math.max(bounds[3], bottom);
+    }
+
+    private int clusterDepth() {
+        return graph.clusters().stream().mapToInt(c -> clusterPath(c).size()).max().orElse(0);
+    }
+
+    private static List<DotGraph.Cluster> clusterPath(DotGraph.Cluster cluster) {
+        List<DotGraph.Cluster> path = new ArrayList<>();
+        for (DotGraph.Cluster c = cluster; c != null; c = c.parent()) {
+            path.addFirst(c);
+        }
+        return path;
+    }
+
+    private static List<DotGraph.Cluster> commonPrefix(List<DotGraph.Cluster> a, List<DotGraph.Cluster> b) {
+        int i = 0;
+        while (i < a.size() && i < b.size() && a.get(i) == b.get(i)) {
+            i++;
+        }
+        return a.subList(0, i);
+    }
+
+    static double fontSize(Map<String, String> attributes) {
+        return number(attributes.getOrDefault("fontsize", "14"), 14);
+    }
+
+    static double number(String value, double defaultValue) {
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static double inches(String value, double defaultValue) {
+        return number(value.split("\\s+")[0], defaultValue) * 72;
+    }
+
+    /**
+     * Split a DOT label into lines on \n, \l and \r escapes and real line breaks
+     */
+    static List<String> labelLines(String label) {
+        List<String> lines = new ArrayList<>(Arrays.asList(label.split("\\\\[nlr]|\\r?\\n", -1)));
+        if (lines.size() > 1 && lines.getLast().isEmpty()) {
+            lines.removeLast();
+        }
+        return lines.stream().map(line -> line.replace("\\\\", "\\")).toList();
+    }
+
+    /**
+     * Node size estimated from its label, as dot does without font metrics
+     */
+    private record NodeSize(double width, double height, List<String> lines, double fontSize) {
+
+        static NodeSize of(DotGraph.Node node) {
+            String shape = node.attribute("shape", "ellipse").toLowerCase();
+            double fontSize = DotLayout.fontSize(node.attributes());
+            String label = node.label();
+            if (shape.equals("record") || shape.equals("mrecord")) {
+                label = label.replaceAll("[{}]", "").replace("|", "\\n");
+            }
+            List<String> lines = shape.equals("point") ? List.of() : labelLines(label);
+            int longest = lines.stream().mapToInt(String::length).max().orElse(0);
+            double textWidth = longest * fontSize * 0.6;
+            double textHeight = lines.size() * fontSize * 1.2;
+            double minWidth = inches(node.attribute("width", "0.75"), 0.75);
+            double minHeight = inches(node.attribute("height", "0.5"), 0.5);
+            double width;
+            double height;
+            switch (shape) {
+                case "point" -> {
+                    width = 6;
+                    height = 6;
+                }
+                case "plaintext", "plain", "none", "underline" -> {
+                    width = textWidth + 8;
+                    height = textHeight + 4;
+                }
+                case "ellipse", "oval" -> {
+                    width = Math.max(minWidth, textWidth * 1.42 + 8);
+                    height = Math.max(minHeight, textHeight * 1.42 + 4);
+                }
+                case "circle", "doublecircle" -> {
+                    width = Math.max(minHeight, Math.max(textWidth, textHeight) * 1.2 + 8);
+                    height = width;
+                }
+                case "diamond" -> {
+                    width = Math.max(minWidth, textWidth * 2 + 8);
+                    height = Math.max(minHeight, textHeight * 2);
+                }
+                default -> {
+                    width = Math.max(minWidth, textWidth + 16);
+                    height = Math.max(minHeight, textHeight + 8);
+                }
+            }
+            return new NodeSize(width, height, lines, fontSize);
+        }
+    }
+}
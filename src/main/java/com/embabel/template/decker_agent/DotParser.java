@@ -0,0 +1,416 @@
+package com.embabel.template.decker_agent;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Recursive descent parser for the DOT language:
+ * graphs and digraphs, subgraphs and clusters, node, edge and graph attributes
+ * and attribute defaults. Ports are accepted but ignored.
+ */
+final class DotParser {
+
+    private final String source;
+    private int position;
+    private Token lookahead;
+    private DotGraph graph;
+    private int anonymousSubgraphs;
+
+    private DotParser(String source) {
+        this.source = source;
+    }
+
+    /**
+     * Parse the first graph in the given source
+     *
+     * @throws IllegalArgumentException if the source is not valid DOT
+     */
+    static DotGraph parse(String source) {
+        return new DotParser(source).graph();
+    }
+
+    private DotGraph graph() {
+        Token token = next();
+        if (token.isKeyword("strict")) {
+            token = next();
+        }
+        boolean directed;
+        if (token.isKeyword("digraph")) {
+            directed = true;
+        } else if (token.isKeyword("graph")) {
+            directed = false;
+        } else {
+            throw error("Expected graph or digraph", token);
+        }
+        String name = peek().type() == TokenType.ID ? next().text() : "";
+        graph = new DotGraph(name, directed);
+        expect("{");
+        statements(new Scope(Map.of(), Map.of(), null));
+        expect("}");
+        return graph;
+    }
+
+    /**
+     * Parse statements up to a closing brace
+     *
+     * @return ids of the nodes mentioned, for edges to or from a subgraph
+     */
+    private Set<String> statements(Scope scope) {
+        Set<String> mentioned = new LinkedHashSet<>();
+        while (!peek().is("}")) {
+            if (peek().type() == TokenType.EOF) {
+                throw error("Unexpected end of graph", peek());
+            }
+            statement(scope, mentioned);
+            if (peek().is(";") || peek().is(",")) {
+                next();
+            }
+        }
+        return mentioned;
+    }
+
+    private void statement(Scope scope, Set<String> mentioned) {
+        Token token = peek();
+        if (token.isKeyword("graph") || token.isKeyword("node") || token.isKeyword("edge")) {
+            next();
+            Map<String, String> attributes = attributeLists();
+            if (token.isKeyword("graph")) {
+                graphAttributes(scope, attributes);
+            } else if (token.isKeyword("node")) {
+                scope.nodeDefaults().putAll(attributes);
+            } else {
+                scope.edgeDefaults().putAll(attributes);
+            }
+            return;
+        }
+        if (token.type() == TokenType.ID && peekSecond().is("=")) {
+            String key = next().text();
+            next();
+            graphAttributes(scope, Map.of(key, expectId()));
+            return;
+        }
+
+        Set<String> endpoint = endpoint(scope);
+        mentioned.addAll(endpoint);
+        if (!peek().isEdgeOp()) {
+            if (!peek().is("[")) {
+                return;
+            }
+            // Node statement with attributes
+            Map<String, String> attributes = attributeLists();
+            for (String id : endpoint) {
+                graph.addNode(id, attributes, scope.cluster());
+            }
+            return;
+        }
+        List<Set<String>> chain = new ArrayList<>();
+        chain.add(endpoint);
+        while (peek().isEdgeOp()) {
+            next();
+            Set<String> to = endpoint(scope);
+            mentioned.addAll(to);
+            chain.add(to);
+        }
+        Map<String, String> attributes = new LinkedHashMap<>(scope.edgeDefaults());
+        attributes.putAll(attributeLists());
+        for (int i = 0; i + 1 < chain.size(); i++) {
+            for (String from : chain.get(i)) {
+                for (String to : chain.get(i + 1)) {
+                    graph.addEdge(from, to, attributes);
+                }
+            }
+        }
+    }
+
+    private void graphAttributes(Scope scope, Map<String, String> attributes) {
+        if (scope.cluster() != null) {
+            scope.cluster().attributes().putAll(attributes);
+        } else if (scope.root()) {
+            graph.attributes().putAll(attributes);
+        }
+    }
+
+    /**
+     * Parse a node id or subgraph, returning the ids of the nodes it stands for
+     */
+    private Set<String> endpoint(Scope scope) {
+        Token token = peek();
+        if (token.isKeyword("subgraph") || token.is("{")) {
+            return subgraph(scope);
+        }
+        String id = expectId();
+        // Ports are not used in layout
+        while (peek().is(":")) {
+            next();
+            expectId();
+        }
+        boolean isNew = graph.node(id) == null;
+        graph.addNode(id, isNew ? scope.nodeDefaults() : Map.of(), scope.cluster());
+        return Set.of(id);
+    }
+
+    private Set<String> subgraph(Scope scope) {
+        String name;
+        if (peek().isKeyword("subgraph")) {
+            next();
+            name = peek().type() == TokenType.ID ? next().text() : "anonymous" + anonymousSubgraphs++;
+        } else {
+            name = "anonymous" + anonymousSubgraphs++;
+        }
+        DotGraph.Cluster cluster = name.startsWith("cluster")
+                ? graph.addCluster(name, scope.cluster())
+                : scope.cluster();
+        expect("{");
+        Set<String> mentioned = statements(new Scope(scope.nodeDefaults(), scope.edgeDefaults(), cluster, false));
+        expect("}");
+        return mentioned;
+    }
+
+    private Map<String, String> attributeLists() {
+        Map<String, String> attributes = new LinkedHashMap<>();
+        while (peek().is("[")) {
+            next();
+            while (!peek().is("]")) {
+                String key = expectId();
+                String value = "true";
+                if (peek().is("=")) {
+                    next();
+                    value = expectId();
+                }
+                attributes.put(key, value);
+                if (peek().is(",") || peek().is(";")) {
+                    next();
+                }
+            }
+            next();
+        }
+        return attributes;
+    }
+
+    private String expectId() {
+        Token token = next();
+        if (token.type() != TokenType.ID) {
+            throw error("Expected identifier", token);
+        }
+        return token.text();
+    }
+
+    private void expect(String punctuation) {
+        Token token = next();
+        if (!token.is(punctuation)) {
+            throw error("Expected '" + punctuation + "'", token);
+        }
+    }
+
+    private IllegalArgumentException error(String message, Token token) {
+        return new IllegalArgumentException(message + " at offset " + token.offset() +
+                (token.type() == TokenType.EOF ? " (end of input)" : ", found '" + token.text() + "'"));
+    }
+
+    private Token peek() {
+        if (lookahead == null) {
+            lookahead = scan();
+        }
+        return lookahead;
+    }
+
+    private Token peekSecond() {
+        peek();
+        int saved = position;
+        Token second = scan();
+        position = saved;
+        return second;
+    }
+
+    private Token next() {
+        Token token = peek();
+        lookahead = null;
+        return token;
+    }
+
+    private Token scan() {
+        skipWhitespaceAndComments();
+        int start = position;
+        if (position >= source.length()) {
+            return new Token(TokenType.EOF, "", start);
+        }
+        char c = source.charAt(position);
+        if (c == '-' && position + 1 < source.length() && (source.charAt(position + 1) == '>' || source.charAt(position + 1) == '-')) {
+            position += 2;
+            return new Token(TokenType.EDGE_OP, source.substring(start, position), start);
+        }
+        if ("{}[];,=:".indexOf(c) >= 0) {
+            position++;
+            return new Token(TokenType.PUNCTUATION, String.valueOf(c), start);
+        }
+        if (c == '"') {
+            return new Token(TokenType.ID, quotedString(), start, true);
+        }
+        if (c == '<') {
+            return new Token(TokenType.ID, htmlString(), start, true);
+        }
+        if (c == '-' || c == '.' || Character.isDigit(c)) {
+            position++;
+            while (position < source.length() && (Character.isDigit(source.charAt(position)) || source.charAt(position) == '.')) {
+                position++;
+            }
+            return new Token(TokenType.ID, source.substring(start, position), start);
+        }
+        if (isIdStart(c)) {
+            while (position < source.length() && isIdPart(source.charAt(position))) {
+                position++;
+            }
+            return new Token(TokenType.ID, source.substring(start, position), start);
+        }
+        throw new IllegalArgumentException("Unexpected character '" + c + "' at offset " + start);
+    }
+
+    /**
+     * Quoted string, with concatenation using +. Escapes other than \" are kept for the label renderer.
+     */
+    private String quotedString() {
+        StringBuilder text = new StringBuilder();
+        while (true) {
+            position++;
+            while (position < source.length() && source.charAt(position) != '"') {
+                char c = source.charAt(position);
+                if (c == '\\' && position + 1 < source.length()) {
+                    char escaped = source.charAt(position + 1);
+                    if (escaped == '"') {
+                        text.append('"');
+                        position += 2;
+                        continue;
+                    }
+                    if (escaped == '\n') {
+                        position += 2;
+                        continue;
+                    }
+                }
+                text.append(c);
+                position++;
+            }
+            if (position >= source.length()) {
+                throw new IllegalArgumentException("Unterminated string");
+            }
+            position++;
+            int afterString = position;
+            skipWhitespaceAndComments();
+            if (position < source.length() && source.charAt(position) == '+') {
+                position++;
+                skipWhitespaceAndComments();
+                if (position < source.length() && source.charAt(position) == '"') {
+                    continue;
+                }
+            }
+            position = afterString;
+            return text.toString();
+        }
+    }
+
+    /**
+     * HTML-like label. Markup is not rendered, so tags are stripped.
+     */
+    private String htmlString() {
+        int depth = 0;
+        int start = position;
+        do {
+            if (position >= source.length()) {
+                throw new IllegalArgumentException("Unterminated HTML string at offset " + start);
+            }
+            char c = source.charAt(position++);
+            if (c == '<') {
+                depth++;
+            } else if (c == '>') {
+                depth--;
+            }
+        } while (depth > 0);
+        String html = source.substring(start + 1, position - 1);
+        return html.replaceAll("(?i)<br\\s*/?>", "\\\\n").replaceAll("<[^>]*>", "");
+    }
+
+    private void skipWhitespaceAndComments() {
+        while (position < source.length()) {
+            char c = source.charAt(position);
+            if (Character.isWhitespace(c)) {
+                position++;
+            } else if (source.startsWith("//", position) || (c == '#' && atLineStart())) {
+                while (position < source.length() && source.charAt(position) != '\n') {
+                    position++;
+                }
+            } else if (source.startsWith("/*", position)) {
+                int end = source.indexOf("*/", position + 2);
+                position = end < 0 ? source.length() : end + 2;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private boolean atLineStart() {
+        for (int i = position - 1; i >= 0; i--) {
+            char c = source.charAt(i);
+            if (c == '\n') {
+                return true;
+            }
+            if (!Character.isWhitespace(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isIdStart(char c) {
+        return Character.isLetter(c) || c == '_' || c >= 0x80;
+    }
+
+    private static boolean isIdPart(char c) {
+        return isIdStart(c) || Character.isDigit(c);
+    }
+
+    private enum TokenType {
+        ID, PUNCTUATION, EDGE_OP, EOF
+    }
+
+    /**
+     * @param quoted quoted and HTML strings are never keywords
+     */
+    private record Token(TokenType type, String text, int offset, boolean quoted) {
+
+        Token(TokenType type, String text, int offset) {
+            this(type, text, offset, false);
+        }
+
+        boolean is(String punctuation) {
+            return type == TokenType.PUNCTUATION && text.equals(punctuation);
+        }
+
+        boolean isEdgeOp() {
+            return type == TokenType.EDGE_OP;
+        }
+
+        boolean isKeyword(String keyword) {
+            return type == TokenType.ID && !quoted && text.equalsIgnoreCase(keyword);
+        }
+    }
+
+    /**
+     * Attribute defaults and cluster in effect for a graph or subgraph body.
+     * Defaults set in a subgraph do not leak into the enclosing graph.
+     */
+    private record Scope(Map<String, String> nodeDefaults, Map<String, String> edgeDefaults,
+                         DotGraph.Cluster cluster, boolean root) {
+
+        Scope(Map<String, String> nodeDefaults, Map<String, String> edgeDefaults, DotGraph.Cluster cluster) {
+            this(nodeDefaults, edgeDefaults, cluster, true);
+        }
+
+        Scope {
+            nodeDefaults = new LinkedHashMap<>(nodeDefaults);
+            edgeDefaults = new LinkedHashMap<>(edgeDefaults);
+        }
+    }
+}
@@ -8,5 +8,18 @@ public interface FilePersister {
      * Return file content
      */
     String loadFile(String directory, String fileName);
+
+    /**
+     * Wait until all saved files are on disk, before something else reads them
+     */
+    default void flush() {
+    }
+
+    /**
+     * Wait until the given files are on disk, without waiting for files saved for anything else
+     */
+    default void flush(String directory, String... fileNames) {
+        flush();
+    }
 }
 
@@ -0,0 +1,331 @@
+package com.embabel.template.decker_agent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Renders diagrams to SVG inside the JVM, without Graphviz.
+ * Handles the DOT subset found in decks; see {@link DotParser} and {@link DotLayout}.
+ */
+class JavaDigraphExpander implements DigraphExpander {
+
+    private static final Set<String> ROUND_SHAPES = Set.of("ellipse", "oval", "circle", "doublecircle", "point");
+    private static final Set<String> TEXT_ONLY_SHAPES = Set.of("plaintext", "plain", "none", "underline");
+    private static final double ARROW_LENGTH = 10;
+
+    private final String directory;
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    public JavaDigraphExpander(String directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public String expandDiagram(String fileBase, String dot) {
+        String outputFile = fileBase + ".svg";
+        logger.info("Rendering diagram to {}", outputFile);
+        try {
+            Files.writeString(Path.of(directory, outputFile), render(dot));
+        } catch (IllegalArgumentException e) {
+            logger.error("Cannot render diagram {}: {}", fileBase, e.getMessage());
+        } catch (IOException e) {
+            logger.error("Cannot write diagram {}", outputFile, e);
+        }
+        return outputFile;
+    }
+
+    /**
+     * Render DOT source to an SVG document
+     *
+     * @throws IllegalArgumentException if the source is not valid DOT
+     */
+    static String render(String dot) {
+        DotGraph graph = DotParser.parse(dot);
+        DotLayout layout = DotLayout.layout(graph);
+        return new SvgWriter(graph, layout).write();
+    }
+
+    private static final class SvgWriter {
+
+        private final DotGraph graph;
+        private final DotLayout layout;
+        private final StringBuilder svg = new StringBuilder();
+
+        SvgWriter(DotGraph graph, DotLayout layout) {
+            this.graph = graph;
+            this.layout = layout;
+        }
+
+        String write() {
+            double width = layout.width();
+            double height = layout.height();
+            svg.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n")
+                    .append("<svg width=\"").append(number(width)).append("pt\" height=\"").append(number(height))
+                    .append("pt\" viewBox=\"0.00 0.00 ").append(number(width)).append(' ').append(number(height))
+                    .append("\" xmlns=\"http://www.w3.org/2000/svg\" xmlns:xlink=\"http://www.w3.org/1999/xlink\">\n")
+                    .append("<g id=\"graph0\" class=\"graph\">\n")
+                    .append("<title>").append(escape(graph.name())).append("</title>\n");
+            String background = graph.attribute("bgcolor", "white");
+            svg.append("<rect x=\"0\" y=\"0\" width=\"").append(number(width)).append("\" height=\"").append(number(height))
+                    .append("\" fill=\"").append(color(background)).append("\" stroke=\"none\"/>\n");
+
+            layout.clusters().forEach(this::cluster);
+            layout.edges().forEach(this::edge);
+            layout.nodes().forEach(this::node);
+
+            String label = graph.attribute("label", "");
+            if (!label.isEmpty()) {
+                double fontSize = DotLayout.fontSize(graph.attributes());
+                text(DotLayout.labelLines(label), width / 2, height - fontSize, fontSize,
+                        graph.attribute("fontname", "Times,serif"), graph.attribute("fontcolor", "black"));
+            }
+            svg.append("</g>\n</svg>\n");
+            return svg.toString();
+        }
+
+        private void cluster(DotLayout.ClusterBox box) {
+            DotGraph.Cluster cluster = box.cluster();
+            String style = cluster.attribute("style", "");
+            String color = cluster.attribute("pencolor", cluster.attribute("color", "black"));
+            String fill = style.contains("filled")
+                    ? cluster.attribute("fillcolor", cluster.attribute("color", "lightgrey"))
+                    : cluster.attribute("bgcolor", "none");
+            svg.append("<g class=\"cluster\">\n<title>").append(escape(cluster.id())).append("</title>\n")
+                    .append("<rect x=\"").append(number(box.x())).append("\" y=\"").append(number(box.y()))
+                    .append("\" width=\"").append(number(box.width())).append("\" height=\"").append(number(box.height()))
+                    .append(style.contains("rounded") ? "\" rx=\"8" : "")
+                    .append("\" fill=\"").append(color(fill)).append("\" stroke=\"").append(color(color)).append('"')
+                    .append(dash(style)).append("/>\n");
+            String label = cluster.attribute("label", "");
+            if (!label.isEmpty()) {
+                text(DotLayout.labelLines(label), box.x() + box.width() / 2, box.y() + 4 + box.fontSize() / 2, box.fontSize(),
+                        cluster.attribute("fontname", "Times,serif"), cluster.attribute("fontcolor", "black"));
+            }
+            svg.append("</g>\n");
+        }
+
+        private void edge(DotLayout.EdgeRoute route) {
+            DotGraph.Edge edge = route.edge();
+            List<DotLayout.Point> points = route.points();
+            String color = color(edge.attribute("color", "black").split(":")[0]);
+            String style = edge.attribute("style", "");
+            if (style.contains("invis")) {
+                return;
+            }
+            double penWidth = DotLayout.number(edge.attribute("penwidth", "1"), 1);
+            String dir = edge.attribute("dir", graph.directed() ? "forward" : "none");
+            boolean headArrow = (dir.equals("forward") || dir.equals("both")) && !edge.attribute("arrowhead", "normal").equals("none");
+            boolean tailArrow = (dir.equals("back") || dir.equals("both")) && !edge.attribute("arrowtail", "normal").equals("none");
+
+            svg.append("<g class=\"edge\">\n<title>").append(escape(edge.from()))
+                    .append(graph.directed() ? "&#45;&gt;" : "&#45;&#45;").append(escape(edge.to())).append("</title>\n");
+            List<DotLayout.Point> line = shorten(points, tailArrow, headArrow);
+            svg.append("<path fill=\"none\" stroke=\"").append(color).append("\" stroke-width=\"").append(number(penWidth))
+                    .append('"').append(dash(style)).append(" d=\"").append(path(line)).append("\"/>\n");
+            if (headArrow) {
+                arrowhead(points.get(points.size() - 2), points.getLast(), color);
+            }
+            if (tailArrow) {
+                arrowhead(points.get(1), points.getFirst(), color);
+            }
+            String label = edge.attribute("label", "");
+            if (!label.isEmpty()) {
+                DotLayout.Point at = route.labelPosition();
+                double fontSize = DotLayout.fontSize(edge.attributes());
+                text(DotLayout.labelLines(label), at.x() + 4, at.y(), fontSize,
+                        edge.attribute("fontname", "Times,serif"), edge.attribute("fontcolor", "black"), "start");
+            }
+            svg.append("</g>\n");
+        }
+
+        private void node(DotLayout.NodeBox box) {
+            DotGraph.Node node = box.node();
+            String shape = node.attribute("shape", "ellipse").toLowerCase();
+            String style = node.attribute("style", "");
+            if (style.contains("invis")) {
+                return;
+            }
+            String stroke = color(node.attribute("color", "black"));
+            String fill = style.contains("filled") || shape.equals("point")
+                    ? color(node.attribute("fillcolor", node.attribute("color", shape.equals("point") ? "black" : "lightgrey")))
+                    : "none";
+            String paint = " fill=\"" + fill + "\" stroke=\"" + (TEXT_ONLY_SHAPES.contains(shape) ? "none" : stroke) + "\""
+                    + " stroke-width=\"" + number(DotLayout.number(node.attribute("penwidth", "1"), 1)) + "\"" + dash(style);
+            double x = box.x();
+            double y = box.y();
+            double w = box.width() / 2;
+            double h = box.height() / 2;
+
+            svg.append("<g class=\"node\">\n<title>").append(escape(node.id())).append("</title>\n");
+            if (ROUND_SHAPES.contains(shape)) {
+                svg.append("<ellipse cx=\"").append(number(x)).append("\" cy=\"").append(number(y))
+                        .append("\" rx=\"").append(number(w)).append("\" ry=\"").append(number(h)).append('"').append(paint).append("/>\n");
+                if (shape.equals("doublecircle")) {
+                    svg.append("<ellipse cx=\"").append(number(x)).append("\" cy=\"").append(number(y))
+                            .append("\" rx=\"").append(number(w - 4)).append("\" ry=\"").append(number(h - 4))
+                            .append("\" fill=\"none\" stroke=\"").append(stroke).append("\"/>\n");
+                }
+            } else if (shape.equals("diamond")) {
+                polygon(paint, x, y - h, x + w, y, x, y + h, x - w, y);
+            } else if (shape.equals("hexagon")) {
+                polygon(paint, x - w, y, x - w / 2, y - h, x + w / 2, y - h, x + w, y, x + w / 2, y + h, x - w / 2, y + h);
+            } else if (shape.equals("parallelogram")) {
+                polygon(paint, x - w + h, y - h, x + w, y - h, x + w - h, y + h, x - w, y + h);
+            } else if (shape.equals("triangle")) {
+                polygon(paint, x, y - h, x + w, y + h, x - w, y + h);
+            } else if (!TEXT_ONLY_SHAPES.contains(shape) || shape.equals("underline")) {
+                boolean rounded = style.contains("rounded") || shape.equals("mrecord") || shape.equals("cylinder");
+                svg.append("<rect x=\"").append(number(x - w)).append("\" y=\"").append(number(y - h))
+                        .append("\" width=\"").append(number(2 * w)).append("\" height=\"").append(number(2 * h))
+                        .append(rounded ? "\" rx=\"6" : "").append('"').append(paint).append("/>\n");
+            }
+            text(box.lines(), x, y, box.fontSize(), node.attribute("fontname", "Times,serif"), node.attribute("fontcolor", "black"));
+            svg.append("</g>\n");
+        }
+
+        private void polygon(String paint, double... coordinates) {
+            svg.append("<polygon").append(paint).append(" points=\"");
+            for (int i = 0; i < coordinates.length; i += 2) {
+                svg.append(number(coordinates[i])).append(',').append(number(coordinates[i + 1])).append(' ');
+            }
+            svg.append(number(coordinates[0])).append(',').append(number(coordinates[1])).append("\"/>\n");
+        }
+
+        private void arrowhead(DotLayout.Point from, DotLayout.Point tip, String color) {
+            double dx = tip.x() - from.x();
+            double dy = tip.y() - from.y();
+            double length = Math.hypot(dx, dy);
+            if (length == 0) {
+                return;
+            }
+            double ux = dx / length;
+            double uy = dy / length;
+            double baseX = tip.x() - ux * ARROW_LENGTH;
+            double baseY = tip.y() - uy * ARROW_LENGTH;
+            double half = ARROW_LENGTH / 3;
+            polygon(" fill=\"" + color + "\" stroke=\"" + color + "\"",
+                    tip.x(), tip.y(),
+                    baseX - uy * half, baseY + ux * half,
+                    baseX + uy * half, baseY - ux * half);
+        }
+
+        private void text(List<String> lines, double x, double y, double fontSize, String fontName, String fontColor) {
+            text(lines, x, y, fontSize, fontName, fontColor, "middle");
+        }
+
+        /**
+         * Lines of text centered vertically on y
+         */
+        private void text(List<String> lines, double x, double y, double fontSize, String fontName, String fontColor, String anchor) {
+            double lineHeight = fontSize * 1.2;
+            double first = y - (lines.size() - 1) * lineHeight / 2 + fontSize * 0.35;
+            for (int i = 0; i < lines.size(); i++) {
+                svg.append("<text text-anchor=\"").append(anchor).append("\" x=\"").append(number(x))
+                        .append("\" y=\"").append(number(first + i * lineHeight))
+                        .append("\" font-family=\"").append(escape(fontName)).append("\" font-size=\"").append(number(fontSize))
+                        .append("\" fill=\"").append(color(fontColor)).append("\">")
+                        .append(escape(lines.get(i))).append("</text>\n");
+            }
+        }
+    }
+
+    /**
+     * Stop the line short of the ends that get arrowheads, so the line does not poke through the tip
+     */
+    private static List<DotLayout.Point> shorten(List<DotLayout.Point> points, boolean tail, boolean head) {
+        List<DotLayout.Point> line = new ArrayList<>(points);
+        if (head) {
+            line.set(line.size() - 1, towards(line.getLast(), line.get(line.size() - 2), ARROW_LENGTH));
+        }
+        if (tail) {
+            line.set(0, towards(line.getFirst(), line.get(1), ARROW_LENGTH));
+        }
+        return line;
+    }
+
+    private static DotLayout.Point towards(DotLayout.Point from, DotLayout.Point to, double distance) {
+        double length = Math.hypot(to.x() - from.x(), to.y() - from.y());
+        if (length <= distance) {
+            return from;
+        }
+        double t = distance / length;
+        return new DotLayout.Point(from.x() + (to.x() - from.x()) * t, from.y() + (to.y() - from.y()) * t);
+    }
+
+    /**
+     * Path through the points, with corners at virtual nodes smoothed by quadratic curves
+     */
+    private static String path(List<DotLayout.Point> points) {
+        StringBuilder d = new StringBuilder("M").append(number(points.getFirst().x())).append(',').append(number(points.getFirst().y()));
+        for (int i = 1; i < points.size() - 1; i++) {
+            DotLayout.Point corner = points.get(i);
+            DotLayout.Point next = points.get(i + 1);
+            DotLayout.Point mid = new DotLayout.Point((corner.x() + next.x()) / 2, (corner.y() + next.y()) / 2);
+            d.append(" Q").append(number(corner.x())).append(',').append(number(corner.y()))
+                    .append(' ').append(number(mid.x())).append(',').append(number(mid.y()));
+        }
+        DotLayout.Point last = points.getLast();
+        d.append(" L").append(number(last.x())).append(',').append(number(last.y()));
+        return d.toString();
+    }
+
+    private static String dash(String style) {
+        if (style.contains("dashed")) {
+            return " stroke-dasharray=\"5,2\"";
+        }
+        if (style.contains("dotted")) {
+            return " stroke-dasharray=\"1,5\"";
+        }
+        return "";
+    }
+
+    /**
+     * DOT colors are X11 names, #rgb(a) or HSV triples. Names and hex pass through to SVG.
+     */
+    private static String color(String color) {
+        String trimmed = color.trim();
+        String[] hsv = trimmed.split("[,\\s]+");
+        if (hsv.length == 3) {
+            try {
+                return hsvToHex(Double.parseDouble(hsv[0]), Double.parseDouble(hsv[1]), Double.parseDouble(hsv[2]));
+            } catch (NumberFormatException e) {
+                // Not HSV
+            }
+        }
+        return escape(trimmed.toLowerCase(Locale.ROOT).startsWith("#") ? trimmed : trimmed.toLowerCase(Locale.ROOT));
+    }
+
+    private static String hsvToHex(double h, double s, double v) {
+        double sector = (h - Math.floor(h)) * 6;
+        int i = (int) sector;
+        double f = sector - i;
+        double p = v * (1 - s);
+        double q = v * (1 - s * f);
+        double t = v * (1 - s * (1 - f));
+        double[] rgb = switch (i) {
+            case 0 -> new double[]{v, t, p};
+            case 1 -> new double[]{q, v, p};
+            case 2 -> new double[]{p, v, t};
+            case 3 -> new double[]{p, q, v};
+            case 4 -> new double[]{t, p, v};
+            default -> new double[]{v, p, q};
+        };
+        return String.format("#%02x%02x%02x", Math.round(rgb[0] * 255), Math.round(rgb[1] * 255), Math.round(rgb[2] * 255));
+    }
+
+    private static String number(double value) {
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+
+    private static String escape(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+}
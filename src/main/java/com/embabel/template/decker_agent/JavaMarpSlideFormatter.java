@@ -0,0 +1,442 @@
+package com.embabel.template.decker_agent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Renders Marp Markdown to a self-contained HTML deck inside the JVM, without Marp CLI.
+ * Supports front matter and comment directives, including spot directives such as {@code _class},
+ * the default, gaia and uncover themes, image sizing, filters and backgrounds, and highlighted code.
+ */
+@Service
+@ConditionalOnProperty(prefix = "embabel.presentation-maker", name = "slide-renderer", havingValue = "java")
+class JavaMarpSlideFormatter implements SlideFormatter {
+
+    private static final Pattern SLIDE_SEPARATOR = Pattern.compile("^\\s*---+\\s*$");
+    private static final Pattern FENCE = Pattern.compile("^ {0,3}(`{3,}|~{3,})");
+    private static final Pattern DIRECTIVE = Pattern.compile("^\\s*(_?[A-Za-z][\\w-]*)\\s*:(?:\\s+(.*?))?\\s*$");
+    private static final Pattern COMMENT = Pattern.compile("<!--([\\s\\S]*?)-->");
+    private static final Pattern FENCED_CODE = Pattern.compile("(?m)^ {0,3}(`{3,}|~{3,})[\\s\\S]*?(?:^ {0,3}\\1[ \\t]*$|\\z)");
+    private static final Set<String> LOCAL_DIRECTIVES = Set.of(
+            "paginate", "header", "footer", "class", "backgroundColor", "backgroundImage",
+            "backgroundPosition", "backgroundRepeat", "backgroundSize", "color");
+    private static final Map<String, String> SLIDE_STYLES = Map.of(
+            "backgroundColor", "background-color",
+            "backgroundImage", "background-image",
+            "backgroundPosition", "background-position",
+            "backgroundRepeat", "background-repeat",
+            "backgroundSize", "background-size",
+            "color", "color");
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    @Override
+    public String createHtmlSlides(String directory, String markdownFileName) {
+        String htmlFileName = markdownFileName.replace(".md", ".html");
+        long start = System.nanoTime();
+        try {
+            String markdown = Files.readString(Path.of(directory, markdownFileName));
+            Files.writeString(Path.of(directory, htmlFileName), render(markdown));
+            logger.info("Rendered {} to {} in {} ms", markdownFileName, htmlFileName, (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException e) {
+            logger.error("Cannot render {}/{} to HTML", directory, markdownFileName, e);
+        }
+        return htmlFileName;
+    }
+
+    /**
+     * Render a Marp deck to an HTML document
+     */
+    static String render(String markdown) {
+        List<String> lines = markdown.replace("\r\n", "\n").lines().toList();
+        Map<String, String> globals = new HashMap<>();
+        Map<String, String> locals = new HashMap<>();
+        int bodyStart = frontMatter(lines, globals, locals);
+
+        Size size = Size.of(globals.get("size"));
+        Theme theme = Theme.of(globals.get("theme"));
+        StringBuilder slides = new StringBuilder();
+        List<List<String>> pages = split(lines.subList(bodyStart, lines.size()));
+        for (int i = 0; i < pages.size(); i++) {
+            slide(String.join("\n", pages.get(i)), i + 1, locals, slides);
+        }
+
+        String title = globals.getOrDefault("title", "");
+        return """
+                <!DOCTYPE html>
+                <html lang="%s">
+                <head>
+                <meta charset="UTF-8">
+                <meta name="viewport" content="width=device-width, initial-scale=1">
+                <title>%s</title>
+                <style>
+                %s
+                %s
+                %s
+                </style>
+                </head>
+                <body>
+                <div class="marp-deck" style="--slide-width:%dpx;--slide-height:%dpx">
+                %s</div>
+                <script>
+                %s
+                </script>
+                </body>
+                </html>
+                """.formatted(
+                MarkdownRenderer.escape(globals.getOrDefault("lang", "en")),
+                MarkdownRenderer.escape(title),
+                BASE_CSS,
+                theme.css,
+                globals.getOrDefault("style", ""),
+                size.width(),
+                size.height(),
+                slides,
+                NAVIGATION_SCRIPT);
+    }
+
+    /**
+     * Read YAML front matter. Marp only uses flat keys, with | for multi-line values such as style.
+     *
+     * @return index of the first line after the front matter
+     */
+    private static int frontMatter(List<String> lines, Map<String, String> globals, Map<String, String> locals) {
+        int first = 0;
+        while (first < lines.size() && lines.get(first).isBlank()) {
+            first++;
+        }
+        if (first >= lines.size() || !SLIDE_SEPARATOR.matcher(lines.get(first)).matches()) {
+            return 0;
+        }
+        int end = first + 1;
+        while (end < lines.size() && !SLIDE_SEPARATOR.matcher(lines.get(end)).matches()) {
+            end++;
+        }
+        Map<String, String> directives = yaml(lines.subList(first + 1, end));
+        directives.forEach((key, value) -> (LOCAL_DIRECTIVES.contains(key) ? locals : globals).put(key, value));
+        return Math.min(end + 1, lines.size());
+    }
+
+    private static Map<String, String> yaml(List<String> lines) {
+        Map<String, String> values = new LinkedHashMap<>();
+        for (int i = 0; i < lines.size(); i++) {
+            Matcher m = DIRECTIVE.matcher(lines.get(i));
+            if (!m.matches()) {
+                continue;
+            }
+            String value = m.group(2) == null ? "" : m.group(2);
+            if (value.equals("|") || value.equals(">") || value.equals("|-") || value.equals(">-")) {
+                StringBuilder block = new StringBuilder();
+                while (i + 1 < lines.size() && (lines.get(i + 1).isBlank() || Character.isWhitespace(lines.get(i + 1).charAt(0)))) {
+                    block.append(lines.get(++i).strip()).append(value.startsWith("|") ? "\n" : " ");
+                }
+                value = block.toString().strip();
+            } else {
+                value = unquote(value);
+            }
+            values.put(m.group(1), value);
+        }
+        return values;
+    }
+
+    private static String unquote(String value) {
+        int comment = value.startsWith("\"") || value.startsWith("'") ? -1 : value.indexOf(" #");
+        String v = comment >= 0 ? value.substring(0, comment).strip() : value;
+        if (v.length() >= 2 && (v.startsWith("\"") && v.endsWith("\"") || v.startsWith("'") && v.endsWith("'"))) {
+            return v.substring(1, v.length() - 1);
+        }
+        return v;
+    }
+
+    /**
+     * Split the body into pages on separator lines outside fenced code
+     */
+    private static List<List<String>> split(List<String> lines) {
+        List<List<String>> pages = new ArrayList<>();
+        List<String> page = new ArrayList<>();
+        String fence = null;
+        for (String line : lines) {
+            Matcher m = FENCE.matcher(line);
+            if (fence == null && m.find()) {
+                fence = m.group(1);
+            } else if (fence != null && isClosingFence(line.strip(), fence)) {
+                fence = null;
+            } else if (fence == null && SLIDE_SEPARATOR.matcher(line).matches()) {
+                pages.add(page);
+                page = new ArrayList<>();
+                continue;
+            }
+            page.add(line);
+        }
+        pages.add(page);
+        pages.removeIf(p -> p.stream().allMatch(String::isBlank));
+        return pages;
+    }
+
+    private static boolean isClosingFence(String line, String fence) {
+        return line.length() >= fence.length() && line.chars().allMatch(c -> c == fence.charAt(0));
+    }
+
+    /**
+     * Render one page. Directives in comments change the locals for this and later pages,
+     * except spot directives starting with _, which apply to this page only.
+     */
+    private static void slide(String markdown, int number, Map<String, String> locals, StringBuilder html) {
+        Map<String, String> spot = new HashMap<>();
+        List<String> notes = new ArrayList<>();
+        String content = directives(markdown, locals, spot, notes);
+        Map<String, String> effective = new HashMap<>(locals);
+        effective.putAll(spot);
+
+        MarkdownRenderer renderer = new MarkdownRenderer();
+        String body = renderer.render(content);
+        List<MarkdownRenderer.BackgroundImage> backgrounds = renderer.backgrounds();
+
+        Map<String, String> style = new LinkedHashMap<>();
+        SLIDE_STYLES.forEach((directive, property) -> {
+            if (effective.containsKey(directive)) {
+                style.put(property, effective.get(directive));
+            }
+        });
+        String split = backgrounds.stream().map(MarkdownRenderer.BackgroundImage::split)
+                .filter(s -> s != null).findFirst().orElse(null);
+        String splitSize = backgrounds.stream().filter(b -> b.split() != null)
+                .map(MarkdownRenderer.BackgroundImage::splitSize).findFirst().orElse("50%");
+        if (split != null) {
+            // Content takes the other side of the slide
+            style.put("padding-" + split, "calc(" + splitSize + " + var(--slide-padding))");
+        }
+
+        html.append("<section id=\"").append(number).append('"');
+        String classes = effective.getOrDefault("class", "").strip();
+        if (!classes.isEmpty()) {
+            html.append(" class=\"").append(MarkdownRenderer.escape(classes)).append('"');
+        }
+        if ("true".equalsIgnoreCase(effective.get("paginate"))) {
+            html.append(" data-paginate=\"").append(number).append('"');
+        }
+        if (!style.isEmpty()) {
+            html.append(" style=\"");
+            style.forEach((property, value) -> html.append(property).append(':').append(MarkdownRenderer.escape(value)).append(';'));
+            html.append('"');
+        }
+        html.append(">\n");
+        if (!backgrounds.isEmpty()) {
+            backgrounds(backgrounds, split, splitSize, html);
+        }
+        if (effective.containsKey("header")) {
+            html.append("<header>").append(MarkdownRenderer.renderInline(effective.get("header"))).append("</header>\n");
+        }
+        html.append(body);
+        if (effective.containsKey("footer")) {
+            html.append("<footer>").append(MarkdownRenderer.renderInline(effective.get("footer"))).append("</footer>\n");
+        }
+        if (!notes.isEmpty()) {
+            html.append("<aside class=\"marp-notes\">").append(MarkdownRenderer.escape(String.join("\n\n", notes))).append("</aside>\n");
+        }
+        html.append("</section>\n");
+    }
+
+    /**
+     * Take directive comments out of a page. Other comments are presenter notes.
+     *
+     * @return the page without comments, other than those in code
+     */
+    private static String directives(String markdown, Map<String, String> locals, Map<String, String> spot, List<String> notes) {
+        StringBuilder content = new StringBuilder();
+        Matcher code = FENCED_CODE.matcher(markdown);
+        int position = 0;
+        while (position < markdown.length()) {
+            int codeStart = code.find(position) ? code.start() : markdown.length();
+            String text = markdown.substring(position, codeStart);
+            Matcher comment = COMMENT.matcher(text);
+            int last = 0;
+            while (comment.find()) {
+                content.append(text, last, comment.start());
+                List<String> commentLines = comment.group(1).strip().lines().toList();
+                if (!commentLines.isEmpty() && commentLines.stream().allMatch(line -> DIRECTIVE.matcher(line).matches())) {
+                    yaml(commentLines).forEach((key, value) -> {
+                        if (key.startsWith("_")) {
+                            spot.put(key.substring(1), value);
+                        } else if (LOCAL_DIRECTIVES.contains(key)) {
+                            locals.put(key, value);
+                        }
+                    });
+                } else if (!comment.group(1).isBlank()) {
+                    notes.add(comment.group(1).strip());
+                }
+                last = comment.end();
+            }
+            content.append(text, last, text.length());
+            if (codeStart < markdown.length()) {
+                content.append(code.group());
+                position = code.end();
+            } else {
+                position = markdown.length();
+            }
+        }
+        return content.toString();
+    }
+
+    private static void backgrounds(List<MarkdownRenderer.BackgroundImage> images, String split, String splitSize, StringBuilder html) {
+        html.append("<div class=\"marp-background");
+        if (images.stream().anyMatch(MarkdownRenderer.BackgroundImage::vertical)) {
+            html.append(" vertical");
+        }
+        html.append('"');
+        if (split != null) {
+            html.append(" style=\"").append(split.equals("left") ? "right" : "left").append(":auto;width:").append(MarkdownRenderer.escape(splitSize)).append(";\"");
+        }
+        html.append(">\n");
+        for (MarkdownRenderer.BackgroundImage image : images) {
+            html.append("<figure style=\"background-image:url(&quot;")
+                    .append(MarkdownRenderer.escape(image.url()))
+                    .append("&quot;);background-size:").append(MarkdownRenderer.escape(image.size())).append(';');
+            if (image.filter() != null) {
+                html.append("filter:").append(MarkdownRenderer.escape(image.filter())).append(';');
+            }
+            html.append("\"></figure>\n");
+        }
+        html.append("</div>\n");
+    }
+
+    private record Size(int width, int height) {
+
+        static Size of(String size) {
+            return "4:3".equals(size == null ? null : size.strip()) ? new Size(960, 720) : new Size(1280, 720);
+        }
+    }
+
+    private enum Theme {
+        DEFAULT("""
+                section { background: #fff; color: #24292f; }
+                section h1, section h2 { color: #246; }
+                section a { color: #0969da; }
+                section.invert { background: #24292f; color: #fff; }
+                section.invert h1, section.invert h2 { color: #fff; }
+                section.lead { justify-content: center; text-align: center; }
+                """),
+        GAIA("""
+                section { background: #fff8e1; color: #455a64; font-family: 'Lato', 'Avenir Next', 'Avenir', 'Trebuchet MS', 'Segoe UI', sans-serif; }
+                section a { color: #0288d1; }
+                section.invert { background: #455a64; color: #fff8e1; }
+                section.gaia { background: #0288d1; color: #fff8e1; }
+                section.lead { justify-content: center; text-align: center; }
+                section.lead h1, section.lead h2 { text-align: center; }
+                """),
+        UNCOVER("""
+                section { background: #fdfcff; color: #202228; justify-content: center; text-align: center; font-family: 'Helvetica Neue', Helvetica, Arial, sans-serif; }
+                section h1, section h2 { letter-spacing: -0.02em; }
+                section ul, section ol { text-align: left; display: inline-block; }
+                section.invert { background: #202228; color: #fdfcff; }
+                """);
+
+        private final String css;
+
+        Theme(String css) {
+            this.css = css;
+        }
+
+        static Theme of(String name) {
+            if (name == null) {
+                return DEFAULT;
+            }
+            return switch (name.strip().toLowerCase(Locale.ROOT)) {
+                case "gaia" -> GAIA;
+                case "uncover" -> UNCOVER;
+                default -> DEFAULT;
+            };
+        }
+    }
+
+    private static final String BASE_CSS = """
+            * { box-sizing: border-box; }
+            html, body { margin: 0; height: 100%; background: #000; overflow: hidden; }
+            .marp-deck { --slide-padding: 70px; position: relative; width: 100vw; height: 100vh; }
+            .marp-deck > section {
+              position: absolute; left: 50%; top: 50%; display: none; flex-direction: column; justify-content: flex-start;
+              width: var(--slide-width); height: var(--slide-height); padding: var(--slide-padding);
+              transform: translate(-50%, -50%) scale(var(--scale, 1)); overflow: hidden;
+              font-family: -apple-system, 'Segoe UI', Helvetica, Arial, sans-serif; font-size: 29px; line-height: 1.35;
+            }
+            .marp-deck > section.active { display: flex; }
+            section > * { position: relative; z-index: 1; }
+            section h1 { font-size: 1.8em; margin: 0 0 .5em; }
+            section h2 { font-size: 1.5em; margin: 0 0 .5em; }
+            section h3 { font-size: 1.2em; }
+            section p, section ul, section ol, section blockquote, section table, section pre { margin: .4em 0; }
+            section img { max-width: 100%; max-height: 100%; }
+            section blockquote { border-left: .2em solid rgba(128,128,128,.5); padding-left: .8em; color: inherit; opacity: .85; }
+            section table { border-collapse: collapse; }
+            section th, section td { border: 1px solid rgba(128,128,128,.5); padding: .2em .6em; }
+            section code { font-family: 'SFMono-Regular', Consolas, Menlo, monospace; font-size: .85em; background: rgba(128,128,128,.15); padding: .1em .3em; border-radius: 4px; }
+            section pre { background: #f6f8fa; color: #24292f; padding: .8em; border-radius: 6px; overflow: auto; font-size: .7em; }
+            section pre code { background: none; padding: 0; font-size: 1em; }
+            section > header, section > footer { position: absolute; left: var(--slide-padding); right: var(--slide-padding); font-size: .6em; opacity: .7; }
+            section > header { top: 21px; }
+            section > footer { bottom: 21px; }
+            section[data-paginate]::after { content: attr(data-paginate); position: absolute; right: 30px; bottom: 21px; font-size: .6em; opacity: .7; }
+            .marp-background { position: absolute; top: 0; bottom: 0; left: 0; right: 0; display: flex; z-index: 0; }
+            .marp-background.vertical { flex-direction: column; }
+            .marp-background figure { flex: 1; margin: 0; background-repeat: no-repeat; background-position: center; }
+            .marp-notes { display: none; }
+            .hljs-comment { color: #6e7781; font-style: italic; }
+            .hljs-keyword, .hljs-tag { color: #cf222e; }
+            .hljs-string { color: #0a3069; }
+            .hljs-number, .hljs-literal { color: #0550ae; }
+            .hljs-meta { color: #8250df; }
+            .hljs-type { color: #953800; }
+            .hljs-attr, .hljs-variable { color: #116329; }
+            @media print {
+              html, body { background: none; overflow: visible; height: auto; }
+              .marp-deck { width: auto; height: auto; }
+              .marp-deck > section { display: flex; position: relative; left: 0; top: 0; transform: none; page-break-after: always; }
+            }
+            """;
+
+    private static final String NAVIGATION_SCRIPT = """
+            (function () {
+              const deck = document.querySelector('.marp-deck');
+              const slides = Array.from(deck.querySelectorAll(':scope > section'));
+              let current = Math.max(0, Math.min(slides.length - 1, parseInt(location.hash.slice(1) || '1', 10) - 1 || 0));
+              function scale() {
+                const style = getComputedStyle(deck);
+                const width = parseFloat(style.getPropertyValue('--slide-width'));
+                const height = parseFloat(style.getPropertyValue('--slide-height'));
+                deck.style.setProperty('--scale', Math.min(innerWidth / width, innerHeight / height));
+              }
+              function show(index) {
+                current = Math.max(0, Math.min(slides.length - 1, index));
+                slides.forEach((slide, i) => slide.classList.toggle('active', i === current));
+                history.replaceState(null, '', '#' + (current + 1));
+              }
+              document.addEventListener('keydown', event => {
+                if (['ArrowRight', 'ArrowDown', 'PageDown', ' '].includes(event.key)) show(current + 1);
+                if (['ArrowLeft', 'ArrowUp', 'PageUp'].includes(event.key)) show(current - 1);
+                if (event.key === 'Home') show(0);
+                if (event.key === 'End') show(slides.length - 1);
+              });
+              deck.addEventListener('click', event => {
+                if (!event.target.closest('a')) show(current + (event.clientX < innerWidth / 3 ? -1 : 1));
+              });
+              addEventListener('resize', scale);
+              scale();
+              show(current);
+            })();
+            """;
+}
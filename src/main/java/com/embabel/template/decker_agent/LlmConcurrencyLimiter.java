@@ -0,0 +1,86 @@
+package com.embabel.template.decker_agent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * Bounds the number of LLM calls in flight across all presentations being made,
+ * so a batch of decks shares one budget rather than each run assuming it has the
+ * provider's rate limit to itself.
+ */
+@Service
+class LlmConcurrencyLimiter {
+
+    private final Logger logger = LoggerFactory.getLogger(LlmConcurrencyLimiter.class);
+
+    /**
+     * Outcome of {@link #tryCall(String, Supplier)}
+     *
+     * @param made   false if no permit was free, so the call was not made
+     * @param result what the call returned, which may be null
+     */
+    record Attempt<T>(boolean made, T result) {
+
+        static <T> Attempt<T> noPermit() {
+            return new Attempt<>(false, null);
+        }
+    }
+
+    private final Semaphore permits;
+    private final PresentationMetrics metrics;
+
+    @Autowired
+    LlmConcurrencyLimiter(PresentationMakerProperties properties, PresentationMetrics metrics) {
+        this(properties.getLlmConcurrency(), metrics);
+    }
+
+    LlmConcurrencyLimiter(int maxConcurrentCalls, PresentationMetrics metrics) {
+        this.permits = new Semaphore(Math.max(1, maxConcurrentCalls), true);
+        this.metrics = metrics;
+    }
+
+    /**
+     * Run an LLM call once a permit is available
+     *
+     * @param purpose what the call is for, to tag its metrics
+     */
+    <T> T call(String purpose, Supplier<T> llmCall) {
+        if (!permits.tryAcquire()) {
+            logger.debug("Waiting for an LLM permit: {} calls queued", permits.getQueueLength() + 1);
+            long start = System.nanoTime();
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted waiting for an LLM permit", e);
+            }
+            metrics.llmWait(purpose, System.nanoTime() - start);
+        }
+        try {
+            return metrics.llmCall(purpose, llmCall);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Run an LLM call only if a permit is free now, for optional extra calls such as hedges
+     *
+     * @return whether the call was made, and what it returned if it was
+     */
+    <T> Attempt<T> tryCall(String purpose, Supplier<T> llmCall) {
+        if (!permits.tryAcquire()) {
+            return Attempt.noPermit();
+        }
+        try {
+            return new Attempt<>(true, metrics.llmCall(purpose, llmCall));
+        } finally {
+            permits.release();
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.embabel.template.decker_agent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Cuts the latency tail of LLM calls in fan-out stages by hedging: when a call runs longer than a
+ * percentile of recent calls to the same model, a duplicate is made, the first response is used and
+ * the other call is cancelled.
+ * Duplicates are only made while a permit is free, so they never queue behind other calls, and are
+ * capped across all presentations at a fraction of the calls that could be hedged.
+ */
+@Service
+class LlmHedger {
+
+    private static final int WINDOW = 200;
+
+    /**
+     * Virtual threads, so cancelling the losing call interrupts its network I/O
+     */
+    private static final ExecutorService CALLS = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("llm-hedge-", 0).factory());
+
+    private final Logger logger = LoggerFactory.getLogger(LlmHedger.class);
+
+    private final LlmConcurrencyLimiter llmLimiter;
+    private final PresentationMetrics metrics;
+    private final boolean enabled;
+    private final double percentile;
+    private final int minSamples;
+    private final double maxHedgeFraction;
+    private final Map<String, Latencies> latencies = new ConcurrentHashMap<>();
+    private long calls;
+    private long hedges;
+
+    @Autowired
+    LlmHedger(PresentationMakerProperties properties, LlmConcurrencyLimiter llmLimiter, PresentationMetrics metrics) {
+        this(llmLimiter, metrics, properties.isHedging(), properties.getHedgePercentile(),
+                properties.getHedgeMinSamples(), properties.getMaxHedgeFraction());
+    }
+
+    LlmHedger(LlmConcurrencyLimiter llmLimiter, PresentationMetrics metrics, boolean enabled,
+              double percentile, int minSamples, double maxHedgeFraction) {
+        this.llmLimiter = llmLimiter;
+        this.metrics = metrics;
+        this.enabled = enabled;
+        this.percentile = percentile;
+        this.minSamples = Math.max(1, minSamples);
+        this.maxHedgeFraction = maxHedgeFraction;
+    }
+
+    /**
+     * Make an LLM call through the concurrency limiter, hedging it if it is slow
+     *
+     * @param purpose what the call is for, to tag its metrics
+     * @param model   the model called, whose recent latencies decide when to hedge
+     */
+    <T> T call(String purpose, String model, Supplier<T> llmCall) {
+        Latencies modelLatencies = latencies.computeIfAbsent(model, m -> new Latencies());
+        // A call cancelled because its hedge won is recorded as taking as long as it ran,
+        // so slow calls are not left out of the latencies that decide when to hedge
+        Supplier<T> timed = () -> {
+            long start = System.nanoTime();
+            try {
+                return llmCall.get();
+            } finally {
+                modelLatencies.add(System.nanoTime() - start);
+            }
+        };
+        Supplier<T> timedHedge = () -> {
+            long start = System.nanoTime();
+            T result = llmCall.get();
+            modelLatencies.add(System.nanoTime() - start);
+            return result;
+        };
+        long hedgeAfter = enabled ? modelLatencies.percentile(percentile, minSamples) : -1;
+        countCall();
+        if (hedgeAfter < 0) {
+            return llmLimiter.call(purpose, timed);
+        }
+
+        CompletionService<T> completion = new ExecutorCompletionService<>(CALLS);
+        Future<T> primary = completion.submit(() -> llmLimiter.call(purpose, timed));
+        Future<T> hedge = null;
+        try {
+            Future<T> done = completion.poll(hedgeAfter, TimeUnit.NANOSECONDS);
+            if (done != null) {
+                return result(done);
+            }
+            if (!reserveHedge()) {
+                logger.debug("Not hedging slow {} call: hedge budget used", purpose);
+                return result(completion.take());
+            }
+            logger.debug("Hedging {} call to {} after {}ms", purpose, model, TimeUnit.NANOSECONDS.toMillis(hedgeAfter));
+            hedge = completion.submit(() -> {
+                LlmConcurrencyLimiter.Attempt<T> attempt = llmLimiter.tryCall(purpose + "-hedge", timedHedge);
+                if (!attempt.made()) {
+                    throw new NoPermitException();
+                }
+                return attempt.result();
+            });
+            return firstSuccess(completion, purpose, hedge);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for " + purpose + " LLM call", e);
+        } finally {
+            primary.cancel(true);
+            if (hedge != null) {
+                hedge.cancel(true);
+            }
+        }
+    }
+
+    private <T> T firstSuccess(CompletionService<T> completion, String purpose, Future<T> hedge)
+            throws InterruptedException {
+        Future<T> first = completion.take();
+        try {
+            T result = first.get();
+            metrics.hedge(purpose, first == hedge ? "won" : "lost");
+            return result;
+        } catch (ExecutionException e) {
+            boolean skipped = e.getCause() instanceof NoPermitException;
+            if (skipped) {
+                // Nothing was spent, so the hedge is not counted against the budget
+                releaseHedge();
+                metrics.hedge(purpose, "skipped");
+            } else {
+                logger.warn("{} call failed, waiting for its {}: {}", purpose,
+                        first == hedge ? "original" : "hedge", e.getCause().toString());
+            }
+            Future<T> second = completion.take();
+            T result = result(second);
+            if (!skipped) {
+                metrics.hedge(purpose, second == hedge ? "won" : "lost");
+            }
+            return result;
+        }
+    }
+
+    private static <T> T result(Future<T> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private synchronized void countCall() {
+        calls++;
+    }
+
+    private synchronized boolean reserveHedge() {
+        if (hedges + 1 > maxHedgeFraction * calls) {
+            return false;
+        }
+        hedges++;
+        return true;
+    }
+
+    private synchronized void releaseHedge() {
+        hedges--;
+    }
+
+    /**
+     * Latencies of the most recent calls to a model
+     */
+    private static class Latencies {
+
+        private final long[] recent = new long[WINDOW];
+        private int count;
+
+        synchronized void add(long nanos) {
+            recent[count++ % WINDOW] = nanos;
+        }
+
+        /**
+         * @return -1 if there are fewer than minSamples latencies
+         */
+        synchronized long percentile(double percent, int minSamples) {
+            if (count < minSamples) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(recent, Math.min(count, WINDOW));
+            Arrays.sort(sorted);
+            return ResearchDeadlines.percentile(sorted, percent);
+        }
+    }
+
+    /**
+     * No permit was free for a hedge, so it was not made
+     */
+    private static class NoPermitException extends RuntimeException {
+    }
+}
@@ -0,0 +1,771 @@
+package com.embabel.template.decker_agent;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Renders the Markdown found on Marp slides to HTML: headings, paragraphs, lists,
+ * block quotes, tables, fenced code, images and inline formatting.
+ * As in Marp, line breaks inside paragraphs are kept, bare URLs become links,
+ * HTML is passed through and image alt text may carry sizing and filter keywords.
+ * Background images ({@code ![bg](...)}) are not rendered inline but collected,
+ * see {@link #backgrounds()}.
+ */
+final class MarkdownRenderer {
+
+    private static final Pattern ATX_HEADING = Pattern.compile("^ {0,3}(#{1,6})(?:[ \\t]+(.*?))?(?:[ \\t]+#+)?[ \\t]*$");
+    private static final Pattern FENCE = Pattern.compile("^( {0,3})(`{3,}|~{3,})[ \\t]*([^`\\s]*)[^`]*$");
+    private static final Pattern LIST_ITEM = Pattern.compile("^( *)([-*+]|(\\d{1,9})[.)])(?:([ \\t]+)(.*))?$");
+    private static final Pattern THEMATIC_BREAK = Pattern.compile("^ {0,3}(?:(?:\\*[ \\t]*){3,}|(?:_[ \\t]*){3,}|(?:-[ \\t]*){3,})$");
+    private static final Pattern TABLE_DELIMITER = Pattern.compile("^ *\\|? *:?-+:? *(?:\\| *:?-+:? *)*\\|? *$");
+    private static final Pattern HTML_BLOCK = Pattern.compile("^ {0,3}<(?:/?[A-Za-z][A-Za-z0-9-]*(?:[\\s/>]|$)|!--)");
+    private static final Pattern INLINE_HTML = Pattern.compile("</?[A-Za-z][A-Za-z0-9-]*(?:\\s+[^<>]*)?/?>");
+    private static final Pattern ENTITY = Pattern.compile("&(?:#\\d{1,7}|#[xX][0-9a-fA-F]{1,6}|[A-Za-z][A-Za-z0-9]{1,31});");
+    private static final Pattern URL = Pattern.compile("https?://[^\\s<>\"]+");
+    private static final Pattern SIZE_KEYWORD = Pattern.compile("(w|width|h|height):(\\d+(?:\\.\\d+)?)(px|em|rem|%|cm|mm|in|pt|vw|vh)?");
+    private static final Pattern SPLIT_KEYWORD = Pattern.compile("(left|right)(?::(\\d+(?:\\.\\d+)?%))?");
+    private static final Pattern PERCENTAGE = Pattern.compile("\\d+(?:\\.\\d+)?%");
+    private static final Set<String> FILTERS = Set.of(
+            "blur", "brightness", "contrast", "drop-shadow", "grayscale", "hue-rotate", "invert", "opacity", "saturate", "sepia");
+    private static final Map<String, String> DEFAULT_FILTER_ARGUMENTS = Map.of(
+            "blur", "10px", "brightness", "1.5", "contrast", "2", "drop-shadow", "0 5px 10px rgba(0,0,0,.4)",
+            "grayscale", "1", "hue-rotate", "180deg", "invert", "1", "opacity", ".5", "saturate", "2", "sepia", "1");
+    private static final Set<String> BACKGROUND_SIZES = Set.of("cover", "contain", "fit", "auto");
+    private static final String PUNCTUATION = "!\"#$%&'()*+,-./:;<=>?@[\\]^_`{|}~";
+
+    private final StringBuilder html = new StringBuilder();
+    private final List<BackgroundImage> backgrounds;
+    private final boolean tight;
+
+    MarkdownRenderer() {
+        this(new ArrayList<>(), false);
+    }
+
+    private MarkdownRenderer(List<BackgroundImage> backgrounds, boolean tight) {
+        this.backgrounds = backgrounds;
+        this.tight = tight;
+    }
+
+    /**
+     * Image to draw behind a slide
+     *
+     * @param size      CSS background-size
+     * @param split     left or right if the image takes part of the slide, else null
+     * @param splitSize share of the slide for a split background
+     * @param filter    CSS filter, or null
+     */
+    record BackgroundImage(String url, String size, String split, String splitSize, String filter, boolean vertical) {
+    }
+
+    /**
+     * Background images found in the Markdown rendered so far
+     */
+    List<BackgroundImage> backgrounds() {
+        return backgrounds;
+    }
+
+    /**
+     * Render Markdown blocks to HTML
+     */
+    String render(String markdown) {
+        List<String> lines = markdown.replace("\r\n", "\n").replace('\r', '\n').lines()
+                .map(MarkdownRenderer::expandTabs)
+                .toList();
+        blocks(lines);
+        return html.toString();
+    }
+
+    /**
+     * Render a single line of inline Markdown, such as a header or footer
+     */
+    static String renderInline(String markdown) {
+        return new MarkdownRenderer().inline(markdown, true);
+    }
+
+    private void blocks(List<String> lines) {
+        int i = 0;
+        while (i < lines.size()) {
+            String line = lines.get(i);
+            Matcher m;
+            if (line.isBlank()) {
+                i++;
+            } else if ((m = FENCE.matcher(line)).matches()) {
+                i = fencedCode(lines, i, m);
+            } else if ((m = ATX_HEADING.matcher(line)).matches()) {
+                int level = m.group(1).length();
+                html.append("<h").append(level).append('>')
+                        .append(inline(m.group(2) == null ? "" : m.group(2).strip(), true))
+                        .append("</h").append(level).append(">\n");
+                i++;
+            } else if (THEMATIC_BREAK.matcher(line).matches()) {
+                html.append("<hr />\n");
+                i++;
+            } else if (isBlockQuote(line)) {
+                i = blockQuote(lines, i);
+            } else if (LIST_ITEM.matcher(line).matches()) {
+                i = list(lines, i);
+            } else if (isTableStart(lines, i)) {
+                i = table(lines, i);
+            } else if (HTML_BLOCK.matcher(line).find()) {
+                i = htmlBlock(lines, i);
+            } else {
+                i = paragraph(lines, i);
+            }
+        }
+    }
+
+    private int fencedCode(List<String> lines, int start, Matcher fence) {
+        int indent = fence.group(1).length();
+        String marker = fence.group(2);
+        String language = fence.group(3);
+        Pattern closing = Pattern.compile("^ {0,3}" + Pattern.quote(marker.substring(0, 1)) + "{" + marker.length() + ",}[ \\t]*$");
+        StringBuilder code = new StringBuilder();
+        int i = start + 1;
+        while (i < lines.size() && !closing.matcher(lines.get(i)).matches()) {
+            code.append(stripIndent(lines.get(i), indent)).append('\n');
+            i++;
+        }
+        html.append("<pre><code");
+        if (!language.isEmpty()) {
+            html.append(" class=\"language-").append(escape(language)).append('"');
+        }
+        html.append('>').append(CodeHighlighter.highlight(code.toString(), language)).append("</code></pre>\n");
+        return Math.min(i + 1, lines.size());
+    }
+
+    private static boolean isBlockQuote(String line) {
+        return line.stripLeading().startsWith(">") && line.indexOf('>') <= 3;
+    }
+
+    private int blockQuote(List<String> lines, int start) {
+        List<String> quoted = new ArrayList<>();
+        int i = start;
+        while (i < lines.size() && isBlockQuote(lines.get(i))) {
+            String content = lines.get(i).stripLeading().substring(1);
+            quoted.add(content.startsWith(" ") ? content.substring(1) : content);
+            i++;
+        }
+        html.append("<blockquote>\n").append(nested(quoted, false)).append("</blockquote>\n");
+        return i;
+    }
+
+    /**
+     * Items are siblings when their markers line up, give or take a space, and
+     * anything indented further belongs to the current item. This is more forgiving
+     * than CommonMark about how far nested lists are indented.
+     */
+    private int list(List<String> lines, int start) {
+        Matcher first = LIST_ITEM.matcher(lines.get(start));
+        first.matches();
+        int indent = first.group(1).length();
+        boolean ordered = first.group(3) != null;
+        char delimiter = first.group(2).charAt(first.group(2).length() - 1);
+
+        List<List<String>> items = new ArrayList<>();
+        List<String> item = null;
+        int contentIndent = 0;
+        boolean loose = false;
+        boolean blankPending = false;
+        int i = start;
+        while (i < lines.size()) {
+            String line = lines.get(i);
+            if (line.isBlank()) {
+                blankPending = true;
+                i++;
+                continue;
+            }
+            int lineIndent = leadingSpaces(line);
+            Matcher m = LIST_ITEM.matcher(line);
+            if (m.matches() && lineIndent < indent + 2 && !THEMATIC_BREAK.matcher(line).matches()) {
+                boolean sameList = (m.group(3) != null) == ordered
+                        && m.group(2).charAt(m.group(2).length() - 1) == delimiter;
+                if (!sameList || lineIndent < indent && item != null) {
+                    break;
+                }
+                loose |= blankPending && item != null;
+                blankPending = false;
+                item = new ArrayList<>();
+                items.add(item);
+                int markerEnd = m.end(2);
+                int spaces = m.group(4) == null ? 1 : m.group(4).length();
+                contentIndent = markerEnd + (spaces > 4 ? 1 : spaces);
+                item.add(m.group(5) == null ? "" : spaces > 4 ? m.group(4).substring(1) + m.group(5) : m.group(5));
+            } else if (lineIndent >= Math.min(contentIndent, indent + 2)) {
+                if (blankPending) {
+                    item.add("");
+                    loose = true;
+                    blankPending = false;
+                }
+                item.add(stripIndent(line, contentIndent));
+            } else if (!blankPending && !startsBlock(line)) {
+                // Lazy paragraph continuation
+                item.add(line.strip());
+            } else {
+                break;
+            }
+            i++;
+        }
+
+        if (ordered) {
+            int number = Integer.parseInt(first.group(3));
+            html.append(number == 1 ? "<ol>\n" : "<ol start=\"" + number + "\">\n");
+        } else {
+            html.append("<ul>\n");
+        }
+        for (List<String> content : items) {
+            String rendered = nested(content, !loose);
+            html.append(loose ? "<li>\n" + rendered : "<li>" + rendered.strip()).append("</li>\n");
+        }
+        html.append(ordered ? "</ol>\n" : "</ul>\n");
+        return i;
+    }
+
+    private boolean isTableStart(List<String> lines, int i) {
+        if (i + 1 >= lines.size()) {
+            return false;
+        }
+        String header = lines.get(i);
+        String delimiter = lines.get(i + 1);
+        return header.contains("|") && delimiter.contains("|") && TABLE_DELIMITER.matcher(delimiter).matches()
+                && cells(header).size() == cells(delimiter).size();
+    }
+
+    private int table(List<String> lines, int start) {
+        List<String> alignments = cells(lines.get(start + 1)).stream()
+                .map(cell -> cell.startsWith(":") && cell.endsWith(":") ? "center"
+                        : cell.endsWith(":") ? "right"
+                        : cell.startsWith(":") ? "left" : null)
+                .toList();
+        html.append("<table>\n<thead>\n");
+        row(cells(lines.get(start)), alignments, "th");
+        html.append("</thead>\n");
+        int i = start + 2;
+        if (i < lines.size() && !lines.get(i).isBlank() && lines.get(i).contains("|")) {
+            html.append("<tbody>\n");
+            while (i < lines.size() && !lines.get(i).isBlank() && lines.get(i).contains("|")) {
+                row(cells(lines.get(i)), alignments, "td");
+                i++;
+            }
+            html.append("</tbody>\n");
+        }
+        html.append("</table>\n");
+        return i;
+    }
+
+    private void row(List<String> cells, List<String> alignments, String tag) {
+        html.append("<tr>\n");
+        for (int c = 0; c < alignments.size(); c++) {
+            html.append('<').append(tag);
+            if (alignments.get(c) != null) {
+                html.append(" style=\"text-align:").append(alignments.get(c)).append('"');
+            }
+            html.append('>').append(c < cells.size() ? inline(cells.get(c), true) : "")
+                    .append("</").append(tag).append(">\n");
+        }
+        html.append("</tr>\n");
+    }
+
+    /**
+     * Split a table row on unescaped pipes outside code spans
+     */
+    private static List<String> cells(String row) {
+        String trimmed = row.strip();
+        if (trimmed.startsWith("|")) {
+            trimmed = trimmed.substring(1);
+        }
+        if (trimmed.endsWith("|") && !trimmed.endsWith("\\|")) {
+            trimmed = trimmed.substring(0, trimmed.length() - 1);
+        }
+        List<String> cells = new ArrayList<>();
+        StringBuilder cell = new StringBuilder();
+        boolean inCode = false;
+        for (int i = 0; i < trimmed.length(); i++) {
+            char c = trimmed.charAt(i);
+            if (c == '\\' && i + 1 < trimmed.length() && trimmed.charAt(i + 1) == '|') {
+                cell.append('|');
+                i++;
+            } else if (c == '`') {
+                inCode = !inCode;
+                cell.append(c);
+            } else if (c == '|' && !inCode) {
+                cells.add(cell.toString().strip());
+                cell.setLength(0);
+            } else {
+                cell.append(c);
+            }
+        }
+        cells.add(cell.toString().strip());
+        return cells;
+    }
+
+    /**
+     * Raw HTML up to the next blank line. Comments are dropped.
+     */
+    private int htmlBlock(List<String> lines, int start) {
+        int i = start;
+        if (lines.get(i).stripLeading().startsWith("<!--")) {
+            while (i < lines.size() && !lines.get(i).contains("-->")) {
+                i++;
+            }
+            String rest = i < lines.size() ? lines.get(i).substring(lines.get(i).indexOf("-->") + 3) : "";
+            if (!rest.isBlank()) {
+                html.append(rest.strip()).append('\n');
+            }
+            return i + 1;
+        }
+        while (i < lines.size() && !lines.get(i).isBlank()) {
+            html.append(lines.get(i)).append('\n');
+            i++;
+        }
+        return i;
+    }
+
+    private int paragraph(List<String> lines, int start) {
+        List<String> text = new ArrayList<>();
+        int i = start;
+        while (i < lines.size()) {
+            String line = lines.get(i);
+            if (line.isBlank() || (i > start && (startsBlock(line) || isTableStart(lines, i)))) {
+                break;
+            }
+            text.add(line.strip());
+            i++;
+        }
+        String content = inline(String.join("\n", text), true);
+        if (content.replace("<br />", "").isBlank()) {
+            // Only background images
+            return i;
+        }
+        if (tight) {
+            html.append(content).append('\n');
+        } else {
+            html.append("<p>").append(content).append("</p>\n");
+        }
+        return i;
+    }
+
+    private static boolean startsBlock(String line) {
+        return FENCE.matcher(line).matches()
+                || ATX_HEADING.matcher(line).matches()
+                || THEMATIC_BREAK.matcher(line).matches()
+                || isBlockQuote(line)
+                || hasItemContent(line);
+    }
+
+    /**
+     * An empty list item cannot interrupt a paragraph
+     */
+    private static boolean hasItemContent(String line) {
+        Matcher m = LIST_ITEM.matcher(line);
+        return m.matches() && m.group(5) != null && !m.group(5).isBlank();
+    }
+
+    private String nested(List<String> lines, boolean tight) {
+        MarkdownRenderer renderer = new MarkdownRenderer(backgrounds, tight);
+        renderer.blocks(lines);
+        return renderer.html.toString();
+    }
+
+    /**
+     * Render inline Markdown
+     *
+     * @param linkify whether bare URLs become links, which they must not inside link text
+     */
+    private String inline(String text, boolean linkify) {
+        StringBuilder out = new StringBuilder();
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '\\' -> {
+                    if (i + 1 < text.length() && PUNCTUATION.indexOf(text.charAt(i + 1)) >= 0) {
+                        out.append(escape(String.valueOf(text.charAt(i + 1))));
+                        i += 2;
+                    } else if (i + 1 < text.length() && text.charAt(i + 1) == '\n') {
+                        out.append("<br />\n");
+                        i += 2;
+                    } else {
+                        out.append(c);
+                        i++;
+                    }
+                }
+                case '`' -> i = codeSpan(text, i, out);
+                case '!' -> {
+                    Link image = i + 1 < text.length() && text.charAt(i + 1) == '[' ? link(text, i + 1) : null;
+                    if (image == null) {
+                        out.append(c);
+                        i++;
+                    } else {
+                        image(image, out);
+                        i = image.end();
+                    }
+                }
+                case '[' -> {
+                    Link link = link(text, i);
+                    if (link == null) {
+                        out.append(c);
+                        i++;
+                    } else {
+                        out.append("<a href=\"").append(escape(link.destination())).append('"');
+                        if (link.title() != null) {
+                            out.append(" title=\"").append(escape(link.title())).append('"');
+                        }
+                        out.append('>').append(inline(link.label(), false)).append("</a>");
+                        i = link.end();
+                    }
+                }
+                case '<' -> i = angleBracket(text, i, out);
+                case '*', '_', '~' -> i = emphasis(text, i, out, linkify);
+                case '&' -> {
+                    Matcher entity = ENTITY.matcher(text).region(i, text.length());
+                    if (entity.lookingAt()) {
+                        out.append(entity.group());
+                        i = entity.end();
+                    } else {
+                        out.append("&amp;");
+                        i++;
+                    }
+                }
+                case '>' -> {
+                    out.append("&gt;");
+                    i++;
+                }
+                case '"' -> {
+                    out.append("&quot;");
+                    i++;
+                }
+                case '\n' -> {
+                    // Marp keeps line breaks, so trailing spaces are not needed for a hard break
+                    while (!out.isEmpty() && out.charAt(out.length() - 1) == ' ') {
+                        out.setLength(out.length() - 1);
+                    }
+                    out.append("<br />\n");
+                    i++;
+                }
+                case 'h' -> {
+                    Matcher url = URL.matcher(text).region(i, text.length());
+                    if (linkify && (i == 0 || !Character.isLetterOrDigit(text.charAt(i - 1))) && url.lookingAt()) {
+                        String href = trimUrl(url.group());
+                        out.append("<a href=\"").append(escape(href)).append("\">").append(escape(href)).append("</a>");
+                        i += href.length();
+                    } else {
+                        out.append(c);
+                        i++;
+                    }
+                }
+                default -> {
+                    out.append(c);
+                    i++;
+                }
+            }
+        }
+        return out.toString();
+    }
+
+    private static int codeSpan(String text, int start, StringBuilder out) {
+        int run = runLength(text, start, '`');
+        int search = start + run;
+        while (search < text.length()) {
+            int close = text.indexOf('`', search);
+            if (close < 0) {
+                break;
+            }
+            int closeRun = runLength(text, close, '`');
+            if (closeRun == run) {
+                String code = text.substring(start + run, close).replace('\n', ' ');
+                if (code.length() > 1 && code.startsWith(" ") && code.endsWith(" ") && !code.isBlank()) {
+                    code = code.substring(1, code.length() - 1);
+                }
+                out.append("<code>").append(escape(code)).append("</code>");
+                return close + run;
+            }
+            search = close + closeRun;
+        }
+        out.append("`".repeat(run));
+        return start + run;
+    }
+
+    private int angleBracket(String text, int start, StringBuilder out) {
+        int close = text.indexOf('>', start);
+        if (close > 0) {
+            String inside = text.substring(start + 1, close);
+            if (URL.matcher(inside).matches()) {
+                out.append("<a href=\"").append(escape(inside)).append("\">").append(escape(inside)).append("</a>");
+                return close + 1;
+            }
+        }
+        if (text.startsWith("<!--", start)) {
+            int end = text.indexOf("-->", start + 4);
+            if (end >= 0) {
+                return end + 3;
+            }
+        }
+        Matcher tag = INLINE_HTML.matcher(text).region(start, text.length());
+        if (tag.lookingAt()) {
+            out.append(tag.group());
+            return tag.end();
+        }
+        out.append("&lt;");
+        return start + 1;
+    }
+
+    /**
+     * Strong, emphasis and strikethrough. The closing run must have the same length as the opening one.
+     */
+    private int emphasis(String text, int start, StringBuilder out, boolean linkify) {
+        char c = text.charAt(start);
+        int run = runLength(text, start, c);
+        boolean canOpen = start + run < text.length() && !Character.isWhitespace(text.charAt(start + run))
+                && (c != '_' || start == 0 || !Character.isLetterOrDigit(text.charAt(start - 1)))
+                && (c != '~' || run == 2)
+                && run <= 3;
+        int close = canOpen ? closingRun(text, start + run, c, run) : -1;
+        if (close < 0) {
+            out.append(String.valueOf(c).repeat(run));
+            return start + run;
+        }
+        String content = inline(text.substring(start + run, close), linkify);
+        if (c == '~') {
+            out.append("<del>").append(content).append("</del>");
+        } else if (run == 1) {
+            out.append("<em>").append(content).append("</em>");
+        } else if (run == 2) {
+            out.append("<strong>").append(content).append("</strong>");
+        } else {
+            out.append("<em><strong>").append(content).append("</strong></em>");
+        }
+        return close + run;
+    }
+
+    private static int closingRun(String text, int from, char c, int length) {
+        int i = from;
+        while (i < text.length()) {
+            char ch = text.charAt(i);
+            if (ch == '\\') {
+                i += 2;
+            } else if (ch == '`') {
+                int run = runLength(text, i, '`');
+                int close = text.indexOf("`".repeat(run), i + run);
+                i = close < 0 ? i + run : close + run;
+            } else if (ch == c) {
+                int run = runLength(text, i, c);
+                boolean afterText = !Character.isWhitespace(text.charAt(i - 1));
+                boolean intraword = c == '_' && i + run < text.length() && Character.isLetterOrDigit(text.charAt(i + run));
+                if (run == length && afterText && !intraword && i > from) {
+                    return i;
+                }
+                i += run;
+            } else {
+                i++;
+            }
+        }
+        return -1;
+    }
+
+    private static int runLength(String text, int start, char c) {
+        int end = start;
+        while (end < text.length() && text.charAt(end) == c) {
+            end++;
+        }
+        return end - start;
+    }
+
+    private record Link(String label, String destination, String title, int end) {
+    }
+
+    /**
+     * Parse an inline link or image body starting at the opening bracket
+     *
+     * @return null if this is not a link
+     */
+    private static Link link(String text, int open) {
+        int depth = 0;
+        int close = -1;
+        for (int i = open; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '`') {
+                int run = runLength(text, i, '`');
+                int end = text.indexOf("`".repeat(run), i + run);
+                i = end < 0 ? i + run - 1 : end + run - 1;
+            } else if (c == '[') {
+                depth++;
+            } else if (c == ']' && --depth == 0) {
+                close = i;
+                break;
+            }
+        }
+        if (close < 0 || close + 1 >= text.length() || text.charAt(close + 1) != '(') {
+            return null;
+        }
+        int i = close + 2;
+        while (i < text.length() && Character.isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        String destination;
+        if (i < text.length() && text.charAt(i) == '<') {
+            int end = text.indexOf('>', i);
+            if (end < 0) {
+                return null;
+            }
+            destination = text.substring(i + 1, end);
+            i = end + 1;
+        } else {
+            int start = i;
+            int parens = 0;
+            while (i < text.length() && !Character.isWhitespace(text.charAt(i))) {
+                char c = text.charAt(i);
+                if (c == '(') {
+                    parens++;
+                } else if (c == ')' && parens-- == 0) {
+                    break;
+                }
+                i++;
+            }
+            destination = text.substring(start, i);
+        }
+        while (i < text.length() && Character.isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        String title = null;
+        if (i < text.length() && (text.charAt(i) == '"' || text.charAt(i) == '\'')) {
+            int end = text.indexOf(text.charAt(i), i + 1);
+            if (end < 0) {
+                return null;
+            }
+            title = text.substring(i + 1, end);
+            i = end + 1;
+            while (i < text.length() && Character.isWhitespace(text.charAt(i))) {
+                i++;
+            }
+        }
+        if (i >= text.length() || text.charAt(i) != ')') {
+            return null;
+        }
+        return new Link(text.substring(open + 1, close), destination, title, i + 1);
+    }
+
+    /**
+     * Render an image, applying Marp keywords in the alt text:
+     * w:/h: sizes, CSS filters, and bg for a slide background
+     */
+    private void image(Link image, StringBuilder out) {
+        List<String> alt = new ArrayList<>();
+        Map<String, String> style = new LinkedHashMap<>();
+        List<String> filters = new ArrayList<>();
+        boolean background = false;
+        boolean vertical = false;
+        String backgroundSize = "cover";
+        String split = null;
+        String splitSize = "50%";
+        for (String word : image.label().split("\\s+")) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            Matcher size = SIZE_KEYWORD.matcher(word);
+            Matcher splitKeyword = SPLIT_KEYWORD.matcher(word);
+            String filter = word.contains(":") ? word.substring(0, word.indexOf(':')) : word;
+            if (size.matches()) {
+                String unit = size.group(3) == null ? "px" : size.group(3);
+                style.put(size.group(1).startsWith("w") ? "width" : "height", size.group(2) + unit);
+            } else if (word.equals("bg")) {
+                background = true;
+            } else if (word.equals("vertical")) {
+                vertical = true;
+            } else if (BACKGROUND_SIZES.contains(word) || PERCENTAGE.matcher(word).matches()) {
+                backgroundSize = word.equals("fit") ? "contain" : word;
+            } else if (splitKeyword.matches()) {
+                split = splitKeyword.group(1);
+                if (splitKeyword.group(2) != null) {
+                    splitSize = splitKeyword.group(2);
+                }
+            } else if (FILTERS.contains(filter)) {
+                String argument = word.contains(":") ? word.substring(word.indexOf(':') + 1) : DEFAULT_FILTER_ARGUMENTS.get(filter);
+                filters.add(filter + "(" + argument.replace(',', ' ') + ")");
+            } else {
+                alt.add(word);
+            }
+        }
+        String filter = filters.isEmpty() ? null : String.join(" ", filters);
+        if (background) {
+            if (style.containsKey("width") || style.containsKey("height")) {
+                backgroundSize = style.getOrDefault("width", "auto") + " " + style.getOrDefault("height", "auto");
+            }
+            backgrounds.add(new BackgroundImage(image.destination(), backgroundSize, split, splitSize, filter, vertical));
+            return;
+        }
+        if (filter != null) {
+            style.put("filter", filter);
+        }
+        out.append("<img src=\"").append(escape(image.destination())).append("\" alt=\"").append(escape(String.join(" ", alt))).append('"');
+        if (image.title() != null) {
+            out.append(" title=\"").append(escape(image.title())).append('"');
+        }
+        if (!style.isEmpty()) {
+            out.append(" style=\"");
+            style.forEach((key, value) -> out.append(key).append(':').append(escape(value)).append(';'));
+            out.append('"');
+        }
+        out.append(" />");
+    }
+
+    private static String trimUrl(String url) {
+        String trimmed = url;
+        while (!trimmed.isEmpty() && ".,;:!?'*_~".indexOf(trimmed.charAt(trimmed.length() - 1)) >= 0) {
+            trimmed = trimmed.substring(0, trimmed.length() - 1);
+        }
+        if (trimmed.endsWith(")") && trimmed.chars().filter(ch -> ch == '(').count() < trimmed.chars().filter(ch -> ch == ')').count()) {
+            trimmed = trimmed.substring(0, trimmed.length() - 1);
+        }
+        return trimmed;
+    }
+
+    private static int leadingSpaces(String line) {
+        int i = 0;
+        while (i < line.length() && line.charAt(i) == ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    private static String stripIndent(String line, int indent) {
+        return line.substring(Math.min(indent, leadingSpaces(line)));
+    }
+
+    private static String expandTabs(String line) {
+        if (line.indexOf('\t') < 0) {
+            return line;
+        }
+        StringBuilder expanded = new StringBuilder();
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\t') {
+                expanded.append(" ".repeat(4 - expanded.length() % 4));
+            } else {
+                expanded.append(c);
+            }
+        }
+        return expanded.toString();
+    }
+
+    static String escape(String text) {
+        StringBuilder escaped = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '&' -> escaped.append("&amp;");
+                case '<' -> escaped.append("&lt;");
+                case '>' -> escaped.append("&gt;");
+                case '"' -> escaped.append("&quot;");
+                default -> escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+}
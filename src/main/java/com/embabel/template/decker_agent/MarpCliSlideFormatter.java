@@ -1,21 +1,137 @@
 package com.embabel.template.decker_agent;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * Renders decks with Marp CLI. When a deck was rendered before, only slides that changed
+ * are rendered again and spliced into the existing HTML, see {@link MarpSlideSplicer}.
+ */
 @Service
+@ConditionalOnProperty(prefix = "embabel.presentation-maker", name = "slide-renderer", havingValue = "marp", matchIfMissing = true)
 class MarpCliSlideFormatter implements SlideFormatter {
 
+    private final Logger logger = LoggerFactory.getLogger(MarpCliSlideFormatter.class);
+
+    private final PresentationMetrics metrics;
+
+    MarpCliSlideFormatter(PresentationMetrics metrics) {
+        this.metrics = metrics;
+    }
+
     @Override
     public String createHtmlSlides(String directory, String markdownFileName) {
-        runMarpCli(directory, markdownFileName);
-        return markdownFileName.replace(".md", ".html");
+        String htmlFileName = markdownFileName.replace(".md", ".html");
+        metrics.process("marp", () -> render(directory, markdownFileName, htmlFileName));
+        return htmlFileName;
+    }
+
+    private void render(String directory, String markdownFileName, String htmlFileName) {
+        Path html = Path.of(directory, htmlFileName);
+        Path stateFile = html.resolveSibling("." + htmlFileName + ".slides");
+        SlideDeck deck;
+        try {
+            deck = new SlideDeck(Files.readString(Path.of(directory, markdownFileName)));
+        } catch (IOException e) {
+            logger.warn("Cannot read {}/{}, rendering without tracking slides", directory, markdownFileName, e);
+            runMarpCli(directory, markdownFileName);
+            return;
+        }
+        MarpSlideSplicer.State current = MarpSlideSplicer.State.of(deck);
+        MarpSlideSplicer.State previous = Files.isRegularFile(html) ? MarpSlideSplicer.State.read(stateFile) : null;
+        MarpSlideSplicer.Plan plan = previous == null ? null : MarpSlideSplicer.plan(previous, current);
+
+        boolean rendered;
+        if (plan != null && plan.isUnchanged(previous.slideHashes().size())) {
+            logger.info("{} is unchanged since it was last rendered", markdownFileName);
+            rendered = true;
+        } else if (plan != null && renderChangedSlides(deck, plan, previous, directory, markdownFileName, html)) {
+            rendered = true;
+        } else {
+            rendered = runMarpCli(directory, markdownFileName);
+        }
+        try {
+            if (rendered) {
+                current.write(stateFile);
+            } else {
+                Files.deleteIfExists(stateFile);
+            }
+        } catch (IOException e) {
+            logger.warn("Cannot record slides rendered to {}", html, e);
+        }
+    }
+
+    /**
+     * Render the changed slides as a deck of their own and splice them into the existing HTML
+     *
+     * @return false if the whole deck must be rendered instead
+     */
+    private boolean renderChangedSlides(SlideDeck deck, MarpSlideSplicer.Plan plan, MarpSlideSplicer.State previous,
+                                        String directory, String markdownFileName, Path html) {
+        int changed = plan.toRender().size();
+        // In the same directory, so relative image paths resolve as they do for the full deck
+        String partialFileName = "." + markdownFileName.replace(".md", ".partial.md");
+        Path partialMarkdown = Path.of(directory, partialFileName);
+        Path partialHtml = Path.of(directory, partialFileName.replace(".md", ".html"));
+        try {
+            if (changed > 0) {
+                Files.writeString(partialMarkdown, MarpSlideSplicer.partialDeck(deck, plan));
+                if (!runMarpCli(directory, partialFileName)) {
+                    return false;
+                }
+            }
+            String spliced = MarpSlideSplicer.splice(
+                    Files.readString(html),
+                    previous.slideHashes().size(),
+                    changed > 0 ? Files.readString(partialHtml) : "",
+                    plan);
+            if (spliced == null) {
+                logger.info("Cannot find the slides of {} in its HTML, rendering the whole deck", markdownFileName);
+                return false;
+            }
+            Path temp = Files.createTempFile(html.getParent(), "." + html.getFileName(), ".tmp");
+            try {
+                Files.writeString(temp, spliced);
+                try {
+                    Files.move(temp, html, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temp, html, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            logger.info("Rendered {} changed slides of {} in {}", changed, deck.slideCount(), markdownFileName);
+            return true;
+        } catch (IOException e) {
+            logger.warn("Cannot render changed slides of {}, rendering the whole deck", markdownFileName, e);
+            return false;
+        } finally {
+            try {
+                Files.deleteIfExists(partialMarkdown);
+                Files.deleteIfExists(partialHtml);
+            } catch (IOException e) {
+                logger.debug("Cannot delete {}", partialMarkdown, e);
+            }
+        }
     }
 
-    public void runMarpCli(String directory, String markdownFileName) {
+    /**
+     * @return whether Marp CLI completed successfully
+     */
+    public boolean runMarpCli(String directory, String markdownFileName) {
         String command = "npx @marp-team/marp-cli@latest " + markdownFileName + " --no-stdin";
         ProcessBuilder processBuilder = new ProcessBuilder();
 
@@ -29,26 +145,33 @@ class MarpCliSlideFormatter implements SlideFormatter {
         }
 
         processBuilder.redirectErrorStream(true);
+        logger.info("Running command {}", processBuilder.command());
 
         try {
             Process process = processBuilder.start();
-            java.io.BufferedReader reader = new java.io.BufferedReader(new java.io.InputStreamReader(process.getInputStream()));
-            String line;
-            while ((line = reader.readLine()) != null) {
-                System.out.println(line);
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    logger.debug("marp: {}", line);
+                }
             }
 
-            boolean exitCode = process.waitFor(60, TimeUnit.SECONDS);
-
-            if (exitCode) {
-                System.out.println("Marp CLI completed with exit code: " + process.exitValue());
+            if (process.waitFor(60, TimeUnit.SECONDS)) {
+                if (process.exitValue() == 0) {
+                    logger.info("Marp CLI completed with exit code: {}", process.exitValue());
+                    return true;
+                }
+                logger.warn("Marp CLI failed with exit code: {}", process.exitValue());
             } else {
-                System.out.println("Marp CLI process timed out");
+                logger.warn("Marp CLI process timed out");
                 process.destroyForcibly();
             }
-        } catch (IOException | InterruptedException e) {
-            System.err.println("Error executing Marp CLI: " + e.getMessage());
-            e.printStackTrace();
+        } catch (IOException e) {
+            logger.warn("Error running Marp CLI", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Interrupted running Marp CLI", e);
         }
+        return false;
     }
 }
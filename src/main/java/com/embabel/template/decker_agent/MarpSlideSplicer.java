@@ -0,0 +1,280 @@
+package com.embabel.template.decker_agent;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Supports re-rendering only the slides of a Marp deck that changed since its HTML was last rendered.
+ * Each render records a hash of the deck header and of every slide. Slides whose hash is unchanged
+ * keep their existing HTML, renumbered if they moved, and the others are rendered as a deck of their
+ * own and spliced in.
+ * The whole deck must be rendered again when the header changes, when a slide has a directive or
+ * style that can affect other slides, or when a slide with comments, which may be speaker notes
+ * kept apart from the slides, would be rendered or moved.
+ */
+class MarpSlideSplicer {
+
+    private static final Pattern COMMENT = Pattern.compile("<!--([\\s\\S]*?)-->");
+    /**
+     * Directives without a leading underscore apply to the following slides too
+     */
+    private static final Pattern INHERITED_DIRECTIVE = Pattern.compile("(?m)^\\s*[A-Za-z][\\w-]*\\s*:");
+    private static final Pattern SLIDE_START = Pattern.compile("<svg data-marpit-svg");
+    private static final Pattern SVG_TAG = Pattern.compile("<svg\\b|</svg>");
+    private static final Pattern SECTION_TAG = Pattern.compile("<section\\b[^>]*>");
+    private static final Pattern SLIDE_NUMBER = Pattern.compile("\\b(id|data-marpit-pagination|data-marpit-pagination-total)=\"\\d+\"");
+
+    /**
+     * Hashes of a deck as rendered
+     *
+     * @param selfContained for each slide, whether its HTML can be rendered apart from the deck
+     * @param inherits      whether any slide affects how other slides render
+     */
+    record State(String headerHash, List<String> slideHashes, List<Boolean> selfContained, boolean inherits) {
+
+        static State of(SlideDeck deck) {
+            List<String> hashes = new ArrayList<>();
+            List<Boolean> selfContained = new ArrayList<>();
+            boolean inherits = false;
+            for (Slide slide : deck.slides()) {
+                String content = slide.content();
+                hashes.add(sha256(content));
+                selfContained.add(!content.contains("<!--") && !content.contains("<style"));
+                inherits |= content.contains("<style") || hasInheritedDirective(content);
+            }
+            return new State(sha256(deck.header()), List.copyOf(hashes), List.copyOf(selfContained), inherits);
+        }
+
+        /**
+         * @return null if there is no state or it cannot be read
+         */
+        static State read(Path file) {
+            try {
+                List<String> lines = Files.readAllLines(file);
+                String[] first = lines.get(0).split(" ");
+                List<String> hashes = new ArrayList<>();
+                List<Boolean> selfContained = new ArrayList<>();
+                for (String line : lines.subList(1, lines.size())) {
+                    String[] fields = line.split(" ");
+                    hashes.add(fields[0]);
+                    selfContained.add(Boolean.parseBoolean(fields[1]));
+                }
+                return new State(first[0], List.copyOf(hashes), List.copyOf(selfContained), Boolean.parseBoolean(first[1]));
+            } catch (IOException | RuntimeException e) {
+                return null;
+            }
+        }
+
+        void write(Path file) throws IOException {
+            StringBuilder text = new StringBuilder(headerHash).append(' ').append(inherits).append('\n');
+            for (int i = 0; i < slideHashes.size(); i++) {
+                text.append(slideHashes.get(i)).append(' ').append(selfContained.get(i)).append('\n');
+            }
+            Files.writeString(file, text);
+        }
+    }
+
+    /**
+     * How to build the new HTML from the old
+     *
+     * @param reused for each slide of the new deck, the 0-based index of the slide in the old HTML
+     *               to reuse, or -1 if the slide must be rendered
+     */
+    record Plan(int[] reused) {
+
+        /**
+         * 0-based indices of the slides to render, in order
+         */
+        List<Integer> toRender() {
+            List<Integer> toRender = new ArrayList<>();
+            for (int i = 0; i < reused.length; i++) {
+                if (reused[i] < 0) {
+                    toRender.add(i);
+                }
+            }
+            return toRender;
+        }
+
+        boolean isUnchanged(int previousSlideCount) {
+            if (reused.length != previousSlideCount) {
+                return false;
+            }
+            for (int i = 0; i < reused.length; i++) {
+                if (reused[i] != i) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Work out which slides can keep their existing HTML
+     *
+     * @return null if the whole deck must be rendered
+     */
+    static Plan plan(State previous, State current) {
+        if (!previous.headerHash().equals(current.headerHash()) || previous.inherits() || current.inherits()) {
+            return null;
+        }
+        List<String> oldHashes = previous.slideHashes();
+        List<String> newHashes = current.slideHashes();
+        int[] reused = new int[newHashes.size()];
+        boolean[] used = new boolean[oldHashes.size()];
+        Arrays.fill(reused, -1);
+        // Prefer keeping slides in place, then look for slides that moved
+        for (int i = 0; i < Math.min(oldHashes.size(), newHashes.size()); i++) {
+            if (oldHashes.get(i).equals(newHashes.get(i))) {
+                reused[i] = i;
+                used[i] = true;
+            }
+        }
+        Map<String, Deque<Integer>> unusedByHash = new HashMap<>();
+        for (int i = 0; i < oldHashes.size(); i++) {
+            if (!used[i]) {
+                unusedByHash.computeIfAbsent(oldHashes.get(i), h -> new ArrayDeque<>()).add(i);
+            }
+        }
+        for (int i = 0; i < newHashes.size(); i++) {
+            Deque<Integer> candidates = unusedByHash.get(newHashes.get(i));
+            if (reused[i] < 0 && candidates != null && !candidates.isEmpty()) {
+                reused[i] = candidates.poll();
+                used[reused[i]] = true;
+            }
+        }
+
+        for (int i = 0; i < newHashes.size(); i++) {
+            if (reused[i] != i && !current.selfContained().get(i)) {
+                return null;
+            }
+        }
+        for (int i = 0; i < oldHashes.size(); i++) {
+            if (!used[i] && !previous.selfContained().get(i)) {
+                return null;
+            }
+        }
+        return new Plan(reused);
+    }
+
+    /**
+     * Markdown for a deck of just the slides to render, with the same header
+     */
+    static String partialDeck(SlideDeck deck, Plan plan) {
+        StringBuilder markdown = new StringBuilder("---\n").append(deck.header()).append("\n---\n");
+        List<Integer> toRender = plan.toRender();
+        for (int i = 0; i < toRender.size(); i++) {
+            if (i > 0) {
+                markdown.append("\n---\n");
+            }
+            markdown.append(deck.slides().get(toRender.get(i)).content());
+        }
+        return markdown.append('\n').toString();
+    }
+
+    /**
+     * Build the new HTML from the slides of the existing HTML and of the partial render,
+     * numbering each slide for its place in the new deck
+     *
+     * @return null if either document does not have the expected slides
+     */
+    static String splice(String existingHtml, int previousSlideCount, String partialHtml, Plan plan) {
+        List<int[]> existing = slideElements(existingHtml);
+        List<int[]> rendered = slideElements(partialHtml);
+        if (existing.isEmpty() || existing.size() != previousSlideCount || rendered.size() != plan.toRender().size()) {
+            return null;
+        }
+        int total = plan.reused().length;
+        StringBuilder html = new StringBuilder(existingHtml.length() + partialHtml.length());
+        html.append(existingHtml, 0, existing.get(0)[0]);
+        int next = 0;
+        for (int i = 0; i < total; i++) {
+            int[] element;
+            String source;
+            if (plan.reused()[i] >= 0) {
+                element = existing.get(plan.reused()[i]);
+                source = existingHtml;
+            } else {
+                element = rendered.get(next++);
+                source = partialHtml;
+            }
+            html.append(renumber(source.substring(element[0], element[1]), i + 1, total));
+        }
+        return html.append(existingHtml, existing.get(existing.size() - 1)[1], existingHtml.length()).toString();
+    }
+
+    /**
+     * Start and end of each slide's svg element, allowing for svg nested inside slides
+     */
+    static List<int[]> slideElements(String html) {
+        List<int[]> elements = new ArrayList<>();
+        Matcher start = SLIDE_START.matcher(html);
+        Matcher tag = SVG_TAG.matcher(html);
+        int position = 0;
+        while (start.find(position)) {
+            int depth = 0;
+            int end = -1;
+            tag.region(start.start(), html.length());
+            while (tag.find()) {
+                depth += tag.group().equals("</svg>") ? -1 : 1;
+                if (depth == 0) {
+                    end = tag.end();
+                    break;
+                }
+            }
+            if (end < 0) {
+                break;
+            }
+            elements.add(new int[]{start.start(), end});
+            position = end;
+        }
+        return elements;
+    }
+
+    private static String renumber(String element, int number, int total) {
+        Matcher section = SECTION_TAG.matcher(element);
+        StringBuilder result = new StringBuilder(element.length());
+        while (section.find()) {
+            Matcher attribute = SLIDE_NUMBER.matcher(section.group());
+            StringBuilder tag = new StringBuilder();
+            while (attribute.find()) {
+                int value = attribute.group(1).equals("data-marpit-pagination-total") ? total : number;
+                attribute.appendReplacement(tag, attribute.group(1) + "=\"" + value + "\"");
+            }
+            attribute.appendTail(tag);
+            section.appendReplacement(result, Matcher.quoteReplacement(tag.toString()));
+        }
+        return section.appendTail(result).toString();
+    }
+
+    private static boolean hasInheritedDirective(String content) {
+        Matcher comment = COMMENT.matcher(content);
+        while (comment.find()) {
+            if (INHERITED_DIRECTIVE.matcher(comment.group(1)).find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String sha256(String text) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -8,14 +8,23 @@ import com.embabel.agent.domain.io.FileArtifact;
 import com.embabel.agent.domain.library.CompletedResearch;
 import com.embabel.agent.domain.library.ResearchReport;
 import com.embabel.agent.domain.library.ResearchResult;
+import com.embabel.agent.domain.library.ResearchTopic;
 import com.embabel.agent.domain.library.ResearchTopics;
 import com.embabel.common.ai.model.LlmOptions;
 import com.embabel.common.ai.model.ModelSelectionCriteria;
+import com.embabel.common.ai.prompt.PromptContributor;
+import com.embabel.template.decker_agent.CheckpointStore.Stage;
+import com.embabel.template.decker_agent.PresentationScheduler.Degradation;
+import com.embabel.template.decker_agent.PresentationScheduler.Step;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static java.lang.String.join;
 import static kotlin.collections.CollectionsKt.emptyList;
@@ -25,15 +34,35 @@ import static kotlinx.coroutines.Dispatchers.getIO;
 @Agent(description = "Presentation maker. Build a presentation on a topic")
 class PresentationMaker {
 
+    /**
+     * Blackboard name of the section drafting started during research in streaming mode, awaited by createDeck
+     */
+    private static final String SECTION_WRITER = "deckSectionWriter";
+
     private final SlideFormatter slideFormatter;
     private final FilePersister filePersister;
     private final PresentationMakerProperties properties;
+    private final ResearchReportCache researchReportCache;
+    private final CheckpointStore checkpointStore;
+    private final LlmConcurrencyLimiter llmLimiter;
+    private final LlmHedger llmHedger;
+    private final PresentationMetrics metrics;
+    private final PresentationScheduler scheduler;
     private final Logger logger = LoggerFactory.getLogger(PresentationMaker.class);
 
-    public PresentationMaker(SlideFormatter slideFormatter, FilePersister filePersister, PresentationMakerProperties properties) {
+    public PresentationMaker(SlideFormatter slideFormatter, FilePersister filePersister, PresentationMakerProperties properties,
+                             ResearchReportCache researchReportCache, CheckpointStore checkpointStore,
+                             LlmConcurrencyLimiter llmLimiter, LlmHedger llmHedger, PresentationMetrics metrics,
+                             PresentationScheduler scheduler) {
         this.slideFormatter = slideFormatter;
         this.filePersister = filePersister;
         this.properties = properties;
+        this.researchReportCache = researchReportCache;
+        this.checkpointStore = checkpointStore;
+        this.llmLimiter = llmLimiter;
+        this.llmHedger = llmHedger;
+        this.metrics = metrics;
+        this.scheduler = scheduler;
     }
 
     @Action
@@ -45,57 +74,265 @@ class PresentationMaker {
                 About the presenter: %s
                 """.formatted(presentationRequest.getBrief(), presentationRequest.getPresenterBio());
 
-        return ActionMethodPromptRunnerKt.usingModel(properties.getCreationLlm())
-                .createObject(prompt.trim(), ResearchTopics.class);
+        return metrics.action("identifyResearchTopics", () ->
+                resumeOrRun(presentationRequest, Stage.TOPICS, ResearchTopics.class, () ->
+                        llmLimiter.call("topics", () -> ActionMethodPromptRunnerKt.usingModel(properties.getCreationLlm())
+                                .createObject(prompt.trim(), ResearchTopics.class))));
     }
 
     @Action
     public ResearchResult researchTopics(ResearchTopics researchTopics, PresentationRequest presentationRequest, OperationContext context) {
-        List<ResearchReport> researchReports = MapperKt.parallelMap(
-                researchTopics.getTopics(),
+        return metrics.action("researchTopics", () ->
+                resumeOrRun(presentationRequest, Stage.RESEARCH, ResearchResult.class, () -> {
+                    try {
+                        return research(researchTopics, presentationRequest, context);
+                    } catch (RuntimeException | Error e) {
+                        // createDeck will not run after failed research, so stop drafting sections for it
+                        if (context.get(SECTION_WRITER) instanceof DeckSectionWriter sectionWriter) {
+                            sectionWriter.close();
+                        }
+                        throw e;
+                    }
+                }));
+    }
+
+    /**
+     * Resume a stage from its checkpoint, or run it on the request's schedule.
+     * Output degraded to keep to the time budget is not saved, so a later run with more time does the full work.
+     */
+    <T> T resumeOrRun(PresentationRequest presentationRequest, Stage stage, Class<T> type, Supplier<T> work) {
+        T checkpoint = checkpointStore.load(presentationRequest, stage, type);
+        if (checkpoint != null) {
+            logger.info("Resuming from {} checkpoint", stage);
+            return checkpoint;
+        }
+        PresentationScheduler.Schedule schedule = scheduler.schedule(presentationRequest);
+        // Checkpointed stages are the pipeline steps of the same name
+        Step step = Step.valueOf(stage.name());
+        schedule.start(step);
+        T result = work.get();
+        if (schedule.isDegraded(step)) {
+            logger.info("Not saving degraded {} checkpoint", stage);
+        } else {
+            checkpointStore.save(presentationRequest, stage, result);
+        }
+        return result;
+    }
+
+    private ResearchResult research(ResearchTopics researchTopics, PresentationRequest presentationRequest, OperationContext context) {
+        PresentationScheduler.Schedule schedule = scheduler.schedule(presentationRequest);
+        List<ResearchTopic> allTopics = researchTopics.getTopics();
+        // Topics are researched in the order the LLM listed them, which is usually by importance
+        List<ResearchTopic> requestedTopics = schedule.isApplied(Degradation.FEWER_TOPICS)
+                ? allTopics.subList(0, (allTopics.size() + 1) / 2)
+                : allTopics;
+        if (requestedTopics.size() < allTopics.size()) {
+            logger.info("Researching {} of {} topics to keep to the time budget", requestedTopics.size(), allTopics.size());
+        }
+        TopicDeduplicator.Merged merged = TopicDeduplicator.merge(requestedTopics, properties.getTopicMergeThreshold());
+        List<ResearchTopic> topics = merged.topics();
+        if (merged.callsAvoided() > 0) {
+            logger.info("Merged {} topics into {} before research, avoiding {} research calls",
+                    requestedTopics.size(), topics.size(), merged.callsAvoided());
+        }
+        String researchLlm = schedule.isApplied(Degradation.CHEAPER_RESEARCH_MODEL)
+                ? properties.getDegradedResearchLlm()
+                : properties.getResearchLlm();
+        ResearchReportCache.Context cacheContext = ResearchReportCache.Context.of(researchLlm, presentationRequest);
+        ResearchReport[] reports = new ResearchReport[topics.size()];
+        List<Integer> misses = new ArrayList<>();
+        for (int i = 0; i < topics.size(); i++) {
+            reports[i] = researchReportCache.get(topics.get(i), cacheContext);
+            if (reports[i] == null) {
+                misses.add(i);
+            }
+        }
+        int hits = topics.size() - misses.size();
+        logger.info("Research cache: {} hits, {} misses, hit ratio {}%",
+                hits, misses.size(), topics.isEmpty() ? 0 : hits * 100 / topics.size());
+
+        final DeckSectionWriter sectionWriter = properties.isStreamingDeck()
+                ? sectionWriter(presentationRequest, context)
+                : null;
+        if (sectionWriter != null) {
+            // Kept on the blackboard, so it lives only as long as this agent process
+            context.set(SECTION_WRITER, sectionWriter);
+            for (int i = 0; i < topics.size(); i++) {
+                if (reports[i] != null) {
+                    sectionWriter.draft(presentationRequest, i, topics.size(), topics.get(i), reports[i]);
+                }
+            }
+        }
+
+        List<PromptContributor> promptContributors = promptContributors(presentationRequest);
+        ResearchDeadlines deadlines = new ResearchDeadlines(
+                properties.getResearchSoftDeadline(), properties.getResearchHardDeadline(), metrics);
+        List<ResearchDeadlines.Result<ResearchReport>> researchReports = MapperKt.parallelMap(
+                misses,
                 context,
                 10, // concurrencyLevel
                 getIO(), // dispatcher
-                (researchTopic, continuation) -> context.promptRunner(
-                                LlmOptions.fromModel(properties.getResearchLlm()),
-                                emptySet(), // 使用Kotlin的emptySet
-                                emptyList(), // 使用Kotlin的emptyList
-                                emptyList(),
-                                emptyList(),
-                                false)
-                        .withToolGroup(CoreToolGroups.WEB)
-                        .withToolObject(presentationRequest.getProject())
-                        .withPromptContributor(presentationRequest)
-                        .createObject(
-                                "Given the following topic and the goal to create a presentation\n" +
-                                        "for this audience, create a research report.\n" +
-                                        "Use web tools to research and the findPatternInProject tool to look\n" +
-                                        "within the given software project.\n" +
-                                        "Always look for code examples in the project before using the web.\n" +
-                                        "Topic: " + researchTopic.getTopic() + "\n" +
-                                        "Questions:\n" +
-                                        join("\n", researchTopic.getQuestions()),
-                                ResearchReport.class
-                        )
+                (index, continuation) -> {
+                    ResearchTopic researchTopic = topics.get(index);
+                    var researcher = context.promptRunner(
+                                    LlmOptions.fromModel(researchLlm),
+                                    emptySet(), // 使用Kotlin的emptySet
+                                    emptyList(), // 使用Kotlin的emptyList
+                                    emptyList(),
+                                    emptyList(),
+                                    false)
+                            .withPromptContributors(promptContributors);
+                    String topicAndQuestions = "Topic: " + researchTopic.getTopic() + "\n" +
+                            "Questions:\n" +
+                            join("\n", researchTopic.getQuestions());
+                    ResearchDeadlines.Result<ResearchReport> result = deadlines.research(
+                            researchTopic.getTopic(),
+                            () -> llmHedger.call("research", researchLlm, () -> researcher
+                                    .withToolGroup(CoreToolGroups.WEB)
+                                    .withToolObject(presentationRequest.getProject())
+                                    .createObject(
+                                            "Given the following topic and the goal to create a presentation\n" +
+                                                    "for this audience, create a research report.\n" +
+                                                    "Use web tools to research and the findPatternInProject tool to look\n" +
+                                                    "within the given software project.\n" +
+                                                    "Always look for code examples in the project before using the web.\n" +
+                                                    topicAndQuestions,
+                                            ResearchReport.class
+                                    )),
+                            () -> llmLimiter.call("research-wrap-up", () -> researcher.createObject(
+                                    "Research on the following topic for this presentation has run out of time.\n" +
+                                            "Without looking anything else up, write a concise research report\n" +
+                                            "from what you already know, saying where answers are uncertain.\n" +
+                                            topicAndQuestions,
+                                    ResearchReport.class
+                            )));
+                    if (sectionWriter != null && result.value() != null) {
+                        // Start on this topic's slides while other topics are still being researched
+                        sectionWriter.draft(presentationRequest, index, topics.size(), researchTopic, result.value());
+                    }
+                    return result;
+                }
         );
+        boolean incomplete = false;
+        for (int i = 0; i < misses.size(); i++) {
+            int index = misses.get(i);
+            ResearchDeadlines.Result<ResearchReport> result = researchReports.get(i);
+            switch (result.outcome()) {
+                case COMPLETED -> {
+                    reports[index] = result.value();
+                    researchReportCache.put(topics.get(index), cacheContext, reports[index]);
+                }
+                case WRAPPED_UP -> {
+                    // Not cached, so the topic is researched fully next time
+                    reports[index] = result.value();
+                    incomplete = true;
+                }
+                case TIMED_OUT -> {
+                    reports[index] = new ResearchReport(
+                            topics.get(index).getTopic(),
+                            "Research on this topic did not finish in time, so there are no findings for it.",
+                            List.of());
+                    incomplete = true;
+                }
+                case FAILED -> {
+                    reports[index] = new ResearchReport(
+                            topics.get(index).getTopic(),
+                            "Research on this topic failed, so there are no findings for it.",
+                            List.of());
+                    incomplete = true;
+                }
+            }
+        }
+        if (!misses.isEmpty()) {
+            logger.info("Research latency per topic: {}", deadlines.summary());
+        }
+        if (incomplete) {
+            // Research is not checkpointed, so a resumed run tries the unfinished topics again
+            schedule.markIncomplete(Step.RESEARCH);
+        }
+        if (presentationRequest.getProject() != null) {
+            logger.info("Project tool calls: {}", presentationRequest.getProject().toolCallMemo());
+        }
 
-        return new ResearchResult(researchTopics.getTopics().stream()
-                .map(topic ->
-                        new CompletedResearch(topic, researchReports.get(researchTopics.getTopics().indexOf(topic)))).
-                toList());
+        // Each requested topic gets the research of the merged topic it was part of
+        return new ResearchResult(IntStream.range(0, requestedTopics.size())
+                .mapToObj(i -> new CompletedResearch(requestedTopics.get(i), reports[merged.mergedIndex()[i]]))
+                .toList());
+    }
+
+    /**
+     * The request and, if it has a software project, an overview of the project,
+     * so conversations need fewer tool calls to find their way around it
+     */
+    private List<PromptContributor> promptContributors(PresentationRequest presentationRequest) {
+        Project project = presentationRequest.getProject();
+        int digestTokenBudget = properties.getProjectDigestTokenBudget();
+        if (project == null || digestTokenBudget <= 0) {
+            return List.of(presentationRequest);
+        }
+        return List.of(presentationRequest, PromptContributor.fixed(project.digest(digestTokenBudget)));
     }
 
     @Action
     public SlideDeck createDeck(PresentationRequest presentationRequest, ResearchResult researchResult, OperationContext context) {
-        List<ResearchReport> reports = researchResult.getTopicResearches().stream().map(CompletedResearch::getResearchReport).toList();
-        SlideDeck slideDeck = context.promptRunner(
+        return metrics.action("createDeck", () ->
+                resumeOrRun(presentationRequest, Stage.DECK, SlideDeck.class, () ->
+                        properties.isStreamingDeck()
+                                ? stitchDeck(presentationRequest, researchResult, context)
+                                : writeDeck(presentationRequest, researchResult, context)));
+    }
+
+    private DeckSectionWriter sectionWriter(PresentationRequest presentationRequest, OperationContext context) {
+        var sectionWriter = context.promptRunner(
                         LlmOptions.fromCriteria(ModelSelectionCriteria.byName(properties.getCreationLlm())),
                         emptySet(),
                         emptyList(),
                         emptyList(),
                         emptyList(),
                         false)
-                .withPromptContributor(presentationRequest)
+                .withPromptContributors(promptContributors(presentationRequest))
+                .withToolObject(presentationRequest.getProject());
+        var stitcher = context.promptRunner(
+                LlmOptions.fromCriteria(ModelSelectionCriteria.byName(properties.getStitchingLlm())),
+                emptySet(),
+                emptyList(),
+                emptyList(),
+                emptyList(),
+                false);
+        return new DeckSectionWriter(sectionWriter, stitcher, llmLimiter, properties);
+    }
+
+    /**
+     * Finish the sections drafted during research, or draft them all now if research
+     * was resumed from a checkpoint, then stitch them into a deck
+     */
+    private SlideDeck stitchDeck(PresentationRequest presentationRequest, ResearchResult researchResult, OperationContext context) {
+        DeckSectionWriter sectionWriter = context.get(SECTION_WRITER) instanceof DeckSectionWriter drafting && !drafting.isClosed()
+                ? drafting
+                : sectionWriter(presentationRequest, context);
+        SlideDeck slideDeck;
+        try (sectionWriter) {
+            slideDeck = sectionWriter.stitch(presentationRequest, researchResult);
+        }
+        filePersister.saveFile(
+                presentationRequest.getOutputDirectory(),
+                presentationRequest.rawOutputFile(),
+                slideDeck.getDeck()
+        );
+        return slideDeck;
+    }
+
+    private SlideDeck writeDeck(PresentationRequest presentationRequest, ResearchResult researchResult, OperationContext context) {
+        String research = new ResearchCompactor(properties.getResearchTokenBudget())
+                .compact(presentationRequest.getBrief(), researchResult.getTopicResearches());
+        SlideDeck slideDeck = llmLimiter.call("deck", () -> context.promptRunner(
+                        LlmOptions.fromCriteria(ModelSelectionCriteria.byName(properties.getCreationLlm())),
+                        emptySet(),
+                        emptyList(),
+                        emptyList(),
+                        emptyList(),
+                        false)
+                .withPromptContributors(promptContributors(presentationRequest))
                 .withToolGroup(CoreToolGroups.WEB)
                 .withToolObject(presentationRequest.getProject())
                 .createObject(
@@ -106,7 +343,7 @@ class PresentationMaker {
                                 "# Presentation narrative\n" +
                                 presentationRequest.getBrief() + "\n\n" +
                                 "Support your points using the following research:\n" +
-                                reports + "\n\n" +
+                                research + "\n\n" +
                                 "The presentation should be " + presentationRequest.getSlideCount() + " slides long.\n" +
                                 "It should have a compelling narrative and call to action.\n" +
                                 "It should end with a list of reference links.\n" +
@@ -124,7 +361,7 @@ class PresentationMaker {
                                 presentationRequest.getHeader() + "\n" +
                                 "```",
                         SlideDeck.class
-                );
+                ));
         filePersister.saveFile(
                 presentationRequest.getOutputDirectory(),
                 presentationRequest.rawOutputFile(),
@@ -135,31 +372,83 @@ class PresentationMaker {
 
     @Action(outputBinding = "withDiagrams", cost = 1.0)
     public SlideDeck expandDigraphs(SlideDeck slideDeck, PresentationRequest presentationRequest) {
-        DigraphExpander diagramExpander = new DotCliDigraphExpander(presentationRequest.getOutputDirectory());
-        SlideDeck withDigraphs = slideDeck.expandDigraphs(diagramExpander);
+        return metrics.action("expandDigraphs", () ->
+                resumeOrRun(presentationRequest, Stage.DIAGRAMS, SlideDeck.class, () ->
+                        renderDiagrams(slideDeck, presentationRequest)));
+    }
+
+    private SlideDeck renderDiagrams(SlideDeck slideDeck, PresentationRequest presentationRequest) {
+        if (scheduler.schedule(presentationRequest).isApplied(Degradation.SKIP_DIAGRAMS)) {
+            logger.info("Not rendering diagrams, to keep to the time budget");
+            filePersister.saveFile(
+                    presentationRequest.getOutputDirectory(),
+                    presentationRequest.withDiagramsOutputFile(),
+                    slideDeck.getDeck()
+            );
+            return slideDeck;
+        }
+        DigraphExpander diagramExpander = new CachingDigraphExpander(
+                diagramRenderer(presentationRequest.getOutputDirectory()),
+                properties.getDiagramRenderer().name(),
+                Path.of(properties.getDiagramCacheDirectory()),
+                Path.of(presentationRequest.getOutputDirectory()),
+                "svg",
+                properties.getDiagramCacheMaxSize().toBytes()
+        );
+        SlideDeck withDigraphs = slideDeck.expandDigraphs(diagramExpander, properties.getDiagramConcurrency());
         filePersister.saveFile(
                 presentationRequest.getOutputDirectory(),
                 presentationRequest.withDiagramsOutputFile(),
                 withDigraphs.getDeck()
         );
-        return slideDeck;
+        return withDigraphs;
+    }
+
+    private DigraphExpander diagramRenderer(String outputDirectory) {
+        return switch (properties.getDiagramRenderer()) {
+            case DOT -> new DotCliDigraphExpander(outputDirectory, properties.isBatchDiagramRendering(), metrics);
+            case JAVA -> new JavaDigraphExpander(outputDirectory);
+        };
     }
 
     @Action(outputBinding = "withDiagrams")
     public SlideDeck loadWithDigraphs(PresentationRequest presentationRequest) {
-        String content = filePersister.loadFile(
-                presentationRequest.getOutputDirectory(),
-                presentationRequest.withDiagramsOutputFile()
-        );
-        return content != null ? new SlideDeck(content) : null;
+        return metrics.action("loadWithDigraphs", () -> {
+            String content = filePersister.loadFile(
+                    presentationRequest.getOutputDirectory(),
+                    presentationRequest.withDiagramsOutputFile()
+            );
+            return content != null ? new SlideDeck(content) : null;
+        });
     }
 
     @Action(outputBinding = "withIllustrations")
     public SlideDeck addIllustrations(@RequireNameMatch SlideDeck withDiagrams, PresentationRequest presentationRequest, OperationContext context) {
-        SlideDeck deckWithIllustrations;
+        return metrics.action("addIllustrations", () -> {
+            SlideDeck deckWithIllustrations = resumeOrRun(presentationRequest, Stage.ILLUSTRATIONS, SlideDeck.class, () ->
+                    illustrate(withDiagrams, presentationRequest, context));
+
+            logger.info(
+                    "Saving final MARP markdown to {}/{}",
+                    presentationRequest.getOutputDirectory(),
+                    presentationRequest.getOutputFile()
+            );
+            filePersister.saveFile(
+                    presentationRequest.getOutputDirectory(),
+                    presentationRequest.getOutputFile(),
+                    deckWithIllustrations.getDeck()
+            );
+            return deckWithIllustrations;
+        });
+    }
+
+    private SlideDeck illustrate(SlideDeck withDiagrams, PresentationRequest presentationRequest, OperationContext context) {
         if (!presentationRequest.isAutoIllustrate()) {
             logger.info("Not auto illustrating");
-            deckWithIllustrations = withDiagrams;
+            return withDiagrams;
+        } else if (scheduler.schedule(presentationRequest).isApplied(Degradation.SKIP_ILLUSTRATIONS)) {
+            logger.info("Not illustrating, to keep to the time budget");
+            return withDiagrams;
         } else {
             logger.info("Asking LLM to add illustrations to this resource");
 
@@ -170,56 +459,39 @@ class PresentationMaker {
                     emptyList(),
                     emptyList(),
                     false).withToolGroup(CoreToolGroups.WEB);
-            List<Slide> newSlides = withDiagrams.slides().stream().map(slide -> {
-                String newContent = illustrator.generateText(
-                        "Take the following slide in MARP format.\n" +
-                                "Overall objective: " + presentationRequest.getBrief() + "\n\n" +
-                                "If the slide contains an important point, try to add an image to it\n" +
-                                "Check that the image is available.\n" +
-                                "Don't make the image too big.\n" +
-                                "Put the image on the right.\n" +
-                                "Make no other changes.\n" +
-                                "Do not perform any web research besides seeking images.\n" +
-                                "Return nothing but the amended slide content (the content between <slide></slide>).\n" +
-                                "Do not ask any questions.\n" +
-                                "If you don't think an image is needed, return the slide unchanged.\n\n" +
-                                "<slide>\n" +
-                                slide.content() + "\n" +
-                                "</slide>"
-                );
-                return new Slide(slide.number(), newContent);
-            }).collect(Collectors.toList());
-
-            SlideDeck dwi = withDiagrams;
-            for (Slide slide : newSlides) {
-                dwi = dwi.replaceSlide(slide, slide.content());
-            }
-            deckWithIllustrations = dwi;
+            SlideDeck illustrated = new SlideIllustrator(illustrator, llmLimiter, presentationRequest.getBrief(), properties)
+                    .illustrate(withDiagrams);
+            logger.info("Illustrated {} of {} slides", illustrated.changesSince(withDiagrams).size(), illustrated.slideCount());
+            return illustrated;
         }
-
-        logger.info(
-                "Saving final MARP markdown to {}/{}",
-                presentationRequest.getOutputDirectory(),
-                presentationRequest.getOutputFile()
-        );
-        filePersister.saveFile(
-                presentationRequest.getOutputDirectory(),
-                presentationRequest.getOutputFile(),
-                deckWithIllustrations.getDeck()
-        );
-        return withDiagrams;
     }
 
     @AchievesGoal(description = "Create a presentation based on research reports")
     @Action
     public FileArtifact convertToSlides(PresentationRequest presentationRequest, @RequireNameMatch SlideDeck withIllustrations) {
-        String htmlFile = slideFormatter.createHtmlSlides(
-                presentationRequest.getOutputDirectory(),
-                presentationRequest.getOutputFile()
-        );
-        return new FileArtifact(
-                presentationRequest.getOutputDirectory(),
-                htmlFile
-        );
+        return metrics.action("convertToSlides", () -> {
+            PresentationScheduler.Schedule schedule = scheduler.schedule(presentationRequest);
+            schedule.start(Step.SLIDES);
+            // The formatter reads the deck from disk. Decks of other requests may still be being written.
+            filePersister.flush(
+                    presentationRequest.getOutputDirectory(),
+                    presentationRequest.rawOutputFile(),
+                    presentationRequest.withDiagramsOutputFile(),
+                    presentationRequest.getOutputFile()
+            );
+            String htmlFile = slideFormatter.createHtmlSlides(
+                    presentationRequest.getOutputDirectory(),
+                    presentationRequest.getOutputFile()
+            );
+            schedule.finish();
+            String report = schedule.report();
+            if (!report.isEmpty()) {
+                logger.info("{}", report.strip());
+            }
+            return new FileArtifact(
+                    presentationRequest.getOutputDirectory(),
+                    htmlFile
+            );
+        });
     }
 }
@@ -2,18 +2,425 @@ package com.embabel.template.decker_agent;
 
 import com.embabel.agent.config.models.OpenAiModels;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
 
 @ConfigurationProperties(prefix = "embabel.presentation-maker")
 class PresentationMakerProperties {
+
+    /**
+     * How dot diagrams are rendered
+     */
+    enum DiagramRenderer {
+        /**
+         * Graphviz dot CLI, see {@link DotCliDigraphExpander}
+         */
+        DOT,
+        /**
+         * In-process renderer, see {@link JavaDigraphExpander}
+         */
+        JAVA
+    }
+
+    /**
+     * How the Marp deck is rendered to HTML
+     */
+    enum SlideRenderer {
+        /**
+         * Marp CLI, see {@link MarpCliSlideFormatter}
+         */
+        MARP,
+        /**
+         * In-process renderer, see {@link JavaMarpSlideFormatter}
+         */
+        JAVA
+    }
+
     private String researchLlm = OpenAiModels.GPT_41;
     private String creationLlm = OpenAiModels.GPT_41;
 
+    /**
+     * Maximum number of concurrent illustration LLM calls
+     */
+    private int illustrationConcurrency = 8;
+
+    /**
+     * Number of slides sent to the LLM in each illustration call
+     */
+    private int slidesPerIllustrationCall = 4;
+
+    /**
+     * Time allowed per slide in an illustration call, after which the original slides are kept
+     */
+    private Duration illustrationTimeoutPerSlide = Duration.ofSeconds(60);
+
+    /**
+     * Directory for cached diagram renders
+     */
+    private String diagramCacheDirectory = Path.of(System.getProperty("user.home"), ".embabel", "decker", "diagrams").toString();
+
+    /**
+     * Maximum total size of cached diagram renders
+     */
+    private DataSize diagramCacheMaxSize = DataSize.ofMegabytes(100);
+
+    /**
+     * Maximum number of diagrams rendered concurrently
+     */
+    private int diagramConcurrency = 4;
+
+    /**
+     * Selects the {@link DigraphExpander} that renders diagrams
+     */
+    private DiagramRenderer diagramRenderer = DiagramRenderer.DOT;
+
+    /**
+     * Selects the {@link SlideFormatter} bean
+     */
+    private SlideRenderer slideRenderer = SlideRenderer.MARP;
+
+    /**
+     * Whether to render all diagrams in a deck with a single dot process
+     */
+    private boolean batchDiagramRendering = true;
+
+    /**
+     * Directory for cached research reports
+     */
+    private String researchCacheDirectory = Path.of(System.getProperty("user.home"), ".embabel", "decker", "research").toString();
+
+    /**
+     * How long a cached research report is used. Zero disables the cache.
+     */
+    private Duration researchCacheTtl = Duration.ofDays(7);
+
+    /**
+     * Maximum total size of cached research reports
+     */
+    private DataSize researchCacheMaxSize = DataSize.ofMegabytes(50);
+
+    /**
+     * Directory for pipeline stage checkpoints
+     */
+    private String checkpointDirectory = Path.of(System.getProperty("user.home"), ".embabel", "decker", "checkpoints").toString();
+
+    /**
+     * Whether to draft each topic's slides as soon as its research completes,
+     * then stitch the sections into a deck, rather than writing the deck in one call
+     */
+    private boolean streamingDeck = false;
+
+    /**
+     * Model for the final pass that stitches drafted sections into a deck
+     */
+    private String stitchingLlm = OpenAiModels.GPT_41_MINI;
+
+    /**
+     * Time allowed for drafting a section once research is complete
+     */
+    private Duration sectionDraftTimeout = Duration.ofMinutes(5);
+
+    /**
+     * Maximum LLM calls in flight, shared by all presentations being made
+     */
+    private int llmConcurrency = 16;
+
+    /**
+     * Number of presentations made at once by the make-presentations command
+     */
+    private int batchWorkers = 4;
+
+    /**
+     * Approximate tokens of research to include in the deck prompt, after removing
+     * duplicates and the content least relevant to the brief; 0 to include it all
+     */
+    private int researchTokenBudget = 12_000;
+
+    /**
+     * Research model used instead of researchLlm when a presentation's time budget is at risk
+     */
+    private String degradedResearchLlm = OpenAiModels.GPT_41_MINI;
+
+    /**
+     * Time after which a topic still being researched is asked to wrap up with what is already known
+     */
+    private Duration researchSoftDeadline = Duration.ofMinutes(3);
+
+    /**
+     * Time after which research on a topic is cancelled and the presentation goes ahead without it
+     */
+    private Duration researchHardDeadline = Duration.ofMinutes(6);
+
+    /**
+     * Whether to hedge LLM calls in fan-out stages such as research: when a call runs longer than
+     * hedgePercentile of recent calls to its model, a duplicate is made and the first response is used
+     */
+    private boolean hedging = false;
+
+    /**
+     * Percentile of recent latencies for a model after which a call to it is hedged
+     */
+    private double hedgePercentile = 90;
+
+    /**
+     * Calls to a model that must complete before its calls are hedged
+     */
+    private int hedgeMinSamples = 20;
+
+    /**
+     * Maximum duplicate calls made by hedging, as a fraction of all calls that could be hedged
+     */
+    private double maxHedgeFraction = 0.1;
+
+    /**
+     * Similarity of research topics, from 0 to 1, at which they are merged and researched once; above 1 to never merge
+     */
+    private double topicMergeThreshold = 0.5;
+
+    /**
+     * Approximate tokens of the software project overview given to research and deck prompts; 0 to leave it out
+     */
+    private int projectDigestTokenBudget = 2_000;
+
     public String getResearchLlm() {
         return researchLlm;
     }
 
+    public void setResearchLlm(String researchLlm) {
+        this.researchLlm = researchLlm;
+    }
+
     public String getCreationLlm() {
         return creationLlm;
     }
 
+    public void setCreationLlm(String creationLlm) {
+        this.creationLlm = creationLlm;
+    }
+
+    public int getIllustrationConcurrency() {
+        return illustrationConcurrency;
+    }
+
+    public void setIllustrationConcurrency(int illustrationConcurrency) {
+        this.illustrationConcurrency = illustrationConcurrency;
+    }
+
+    public int getSlidesPerIllustrationCall() {
+        return slidesPerIllustrationCall;
+    }
+
+    public void setSlidesPerIllustrationCall(int slidesPerIllustrationCall) {
+        this.slidesPerIllustrationCall = slidesPerIllustrationCall;
+    }
+
+    public Duration getIllustrationTimeoutPerSlide() {
+        return illustrationTimeoutPerSlide;
+    }
+
+    public void setIllustrationTimeoutPerSlide(Duration illustrationTimeoutPerSlide) {
+        this.illustrationTimeoutPerSlide = illustrationTimeoutPerSlide;
+    }
+
+    public String getDiagramCacheDirectory() {
+        return diagramCacheDirectory;
+    }
+
+    public void setDiagramCacheDirectory(String diagramCacheDirectory) {
+        this.diagramCacheDirectory = diagramCacheDirectory;
+    }
+
+    public DataSize getDiagramCacheMaxSize() {
+        return diagramCacheMaxSize;
+    }
+
+    public void setDiagramCacheMaxSize(DataSize diagramCacheMaxSize) {
+        this.diagramCacheMaxSize = diagramCacheMaxSize;
+    }
+
+    public int getDiagramConcurrency() {
+        return diagramConcurrency;
+    }
+
+    public void setDiagramConcurrency(int diagramConcurrency) {
+        this.diagramConcurrency = diagramConcurrency;
+    }
+
+    public boolean isBatchDiagramRendering() {
+        return batchDiagramRendering;
+    }
+
+    public void setBatchDiagramRendering(boolean batchDiagramRendering) {
+        this.batchDiagramRendering = batchDiagramRendering;
+    }
+
+    public DiagramRenderer getDiagramRenderer() {
+        return diagramRenderer;
+    }
+
+    public void setDiagramRenderer(DiagramRenderer diagramRenderer) {
+        this.diagramRenderer = diagramRenderer;
+    }
+
+    public SlideRenderer getSlideRenderer() {
+        return slideRenderer;
+    }
+
+    public void setSlideRenderer(SlideRenderer slideRenderer) {
+        this.slideRenderer = slideRenderer;
+    }
+
+    public String getResearchCacheDirectory() {
+        return researchCacheDirectory;
+    }
+
+    public void setResearchCacheDirectory(String researchCacheDirectory) {
+        this.researchCacheDirectory = researchCacheDirectory;
+    }
+
+    public Duration getResearchCacheTtl() {
+        return researchCacheTtl;
+    }
+
+    public void setResearchCacheTtl(Duration researchCacheTtl) {
+        this.researchCacheTtl = researchCacheTtl;
+    }
+
+    public DataSize getResearchCacheMaxSize() {
+        return researchCacheMaxSize;
+    }
+
+    public void setResearchCacheMaxSize(DataSize researchCacheMaxSize) {
+        this.researchCacheMaxSize = researchCacheMaxSize;
+    }
+
+    public String getCheckpointDirectory() {
+        return checkpointDirectory;
+    }
+
+    public void setCheckpointDirectory(String checkpointDirectory) {
+        this.checkpointDirectory = checkpointDirectory;
+    }
+
+    public boolean isStreamingDeck() {
+        return streamingDeck;
+    }
+
+    public void setStreamingDeck(boolean streamingDeck) {
+        this.streamingDeck = streamingDeck;
+    }
+
+    public String getStitchingLlm() {
+        return stitchingLlm;
+    }
+
+    public void setStitchingLlm(String stitchingLlm) {
+        this.stitchingLlm = stitchingLlm;
+    }
+
+    public Duration getSectionDraftTimeout() {
+        return sectionDraftTimeout;
+    }
+
+    public void setSectionDraftTimeout(Duration sectionDraftTimeout) {
+        this.sectionDraftTimeout = sectionDraftTimeout;
+    }
+
+    public int getLlmConcurrency() {
+        return llmConcurrency;
+    }
+
+    public void setLlmConcurrency(int llmConcurrency) {
+        this.llmConcurrency = llmConcurrency;
+    }
+
+    public int getBatchWorkers() {
+        return batchWorkers;
+    }
+
+    public void setBatchWorkers(int batchWorkers) {
+        this.batchWorkers = batchWorkers;
+    }
+
+    public int getResearchTokenBudget() {
+        return researchTokenBudget;
+    }
+
+    public void setResearchTokenBudget(int researchTokenBudget) {
+        this.researchTokenBudget = researchTokenBudget;
+    }
+
+    public String getDegradedResearchLlm() {
+        return degradedResearchLlm;
+    }
+
+    public void setDegradedResearchLlm(String degradedResearchLlm) {
+        this.degradedResearchLlm = degradedResearchLlm;
+    }
+
+    public Duration getResearchSoftDeadline() {
+        return researchSoftDeadline;
+    }
+
+    public void setResearchSoftDeadline(Duration researchSoftDeadline) {
+        this.researchSoftDeadline = researchSoftDeadline;
+    }
+
+    public Duration getResearchHardDeadline() {
+        return researchHardDeadline;
+    }
+
+    public void setResearchHardDeadline(Duration researchHardDeadline) {
+        this.researchHardDeadline = researchHardDeadline;
+    }
+
+    public boolean isHedging() {
+        return hedging;
+    }
+
+    public void setHedging(boolean hedging) {
+        this.hedging = hedging;
+    }
+
+    public double getHedgePercentile() {
+        return hedgePercentile;
+    }
+
+    public void setHedgePercentile(double hedgePercentile) {
+        this.hedgePercentile = hedgePercentile;
+    }
+
+    public int getHedgeMinSamples() {
+        return hedgeMinSamples;
+    }
+
+    public void setHedgeMinSamples(int hedgeMinSamples) {
+        this.hedgeMinSamples = hedgeMinSamples;
+    }
+
+    public double getMaxHedgeFraction() {
+        return maxHedgeFraction;
+    }
+
+    public void setMaxHedgeFraction(double maxHedgeFraction) {
+        this.maxHedgeFraction = maxHedgeFraction;
+    }
+
+    public double getTopicMergeThreshold() {
+        return topicMergeThreshold;
+    }
+
+    public void setTopicMergeThreshold(double topicMergeThreshold) {
+        this.topicMergeThreshold = topicMergeThreshold;
+    }
+
+    public int getProjectDigestTokenBudget() {
+        return projectDigestTokenBudget;
+    }
+
+    public void setProjectDigestTokenBudget(int projectDigestTokenBudget) {
+        this.projectDigestTokenBudget = projectDigestTokenBudget;
+    }
 }
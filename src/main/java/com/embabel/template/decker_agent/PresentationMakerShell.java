@@ -4,12 +4,16 @@ import com.embabel.agent.api.common.autonomy.AgentProcessExecution;
 import com.embabel.agent.core.Agent;
 import com.embabel.agent.core.AgentPlatform;
 import com.embabel.agent.core.AgentProcess;
+import com.embabel.agent.core.AgentProcessStatusCode;
 import com.embabel.agent.core.ProcessOptions;
 import com.embabel.agent.event.logging.personality.severance.LumonColorPalette;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.fasterxml.jackson.module.kotlin.ExtensionsKt;
 import kotlin.collections.CollectionsKt;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.core.io.ResourceLoader;
 import org.springframework.shell.standard.ShellComponent;
 import org.springframework.shell.standard.ShellMethod;
@@ -17,53 +21,234 @@ import org.springframework.shell.standard.ShellOption;
 
 import java.io.IOException;
 import java.nio.charset.Charset;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
 
 import static com.embabel.agent.shell.FormatProcessOutputKt.formatProcessOutput;
 
 @ShellComponent("Presentation maker commands")
 public class PresentationMakerShell {
 
+    private static final String RECOMPUTE_HELP = "Stages to recompute rather than resume from checkpoints, comma separated: topics, research, deck, diagrams, illustrations or all";
+
+    private final Logger logger = LoggerFactory.getLogger(PresentationMakerShell.class);
+
     private final AgentPlatform agentPlatform;
     private final ResourceLoader resourceLoader;
     private final ObjectMapper objectMapper;
+    private final CheckpointStore checkpointStore;
+    private final PresentationMakerProperties properties;
+    private final PresentationMetrics metrics;
+    private final PresentationScheduler scheduler;
 
-    public PresentationMakerShell(AgentPlatform agentPlatform, ResourceLoader resourceLoader, ObjectMapper objectMapper) {
+    public PresentationMakerShell(AgentPlatform agentPlatform, ResourceLoader resourceLoader, ObjectMapper objectMapper,
+                                  CheckpointStore checkpointStore, PresentationMakerProperties properties,
+                                  PresentationMetrics metrics, PresentationScheduler scheduler) {
         this.agentPlatform = agentPlatform;
         this.resourceLoader = resourceLoader;
         this.objectMapper = objectMapper;
+        this.checkpointStore = checkpointStore;
+        this.properties = properties;
+        this.metrics = metrics;
+        this.scheduler = scheduler;
     }
 
     @ShellMethod
     public String makePresentation(
             @ShellOption(defaultValue = "file:/Users/rjohnson/dev/embabel.com/embabel-agent/embabel-agent-api/src/main/kotlin/com/embabel/examples/dogfood/presentation/kotlinconf_presentation.yml")
-            String file
+            String file,
+            @ShellOption(defaultValue = "", help = RECOMPUTE_HELP)
+            String recompute
     ) throws IOException {
-        ObjectMapper yamlReader = ExtensionsKt.registerKotlinModule(new ObjectMapper(new YAMLFactory()));
+        PresentationRequest presentationRequest = readRequest(
+                resourceLoader.getResource(file).getContentAsString(Charset.defaultCharset()));
 
-        PresentationRequest presentationRequest = yamlReader.readValue(
-                resourceLoader.getResource(file).getContentAsString(Charset.defaultCharset()),
-                PresentationRequest.class
-        );
+        checkpointStore.invalidate(presentationRequest, CheckpointStore.Stage.parse(recompute));
 
+        Map<String, PresentationMetrics.Reading> before = metrics.snapshot();
+        AgentProcess agentProcess = run(presentationRequest);
+
+        return formatProcessOutput(
+                AgentProcessExecution.Companion.fromProcessStatus(
+                        presentationRequest,
+                        agentProcess
+                ),
+                LumonColorPalette.INSTANCE,
+                objectMapper,
+                140
+        ) + "\ndeck is at " + presentationRequest.getOutputDirectory() + "/" + presentationRequest.getOutputFile()
+                + "\n\n" + scheduler.report(presentationRequest)
+                + "\n" + metrics.report(before);
+    }
+
+    @ShellMethod("Make a presentation for each request file in a directory or matching a glob, several at a time")
+    public String makePresentations(
+            @ShellOption(help = "Directory of request YAML files, or a glob such as decks/**/*.yml")
+            String files,
+            @ShellOption(defaultValue = "0", help = "Presentations to make at once, or 0 to use embabel.presentation-maker.batch-workers")
+            int workers,
+            @ShellOption(defaultValue = "", help = RECOMPUTE_HELP)
+            String recompute
+    ) throws IOException, InterruptedException {
+        List<Path> requestFiles = requestFiles(files.startsWith("file:") ? files.substring("file:".length()) : files);
+        if (requestFiles.isEmpty()) {
+            return "No request files found for " + files;
+        }
+        Set<CheckpointStore.Stage> stages = CheckpointStore.Stage.parse(recompute);
+        int workerCount = Math.min(requestFiles.size(), Math.max(1, workers > 0 ? workers : properties.getBatchWorkers()));
+        logger.info("Making {} presentations, {} at a time", requestFiles.size(), workerCount);
+
+        Map<String, PresentationMetrics.Reading> before = metrics.snapshot();
+        long start = System.nanoTime();
+        List<Future<DeckRun>> futures;
+        try (ExecutorService executor = Executors.newFixedThreadPool(workerCount)) {
+            futures = executor.invokeAll(requestFiles.stream()
+                    .map(requestFile -> (Callable<DeckRun>) () -> makeDeck(requestFile, stages))
+                    .toList());
+        }
+        List<DeckRun> runs = new ArrayList<>(futures.size());
+        for (Future<DeckRun> future : futures) {
+            try {
+                runs.add(future.get());
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Presentation run failed unexpectedly", e.getCause());
+            }
+        }
+        return summary(runs, Duration.ofNanos(System.nanoTime() - start)) + "\n" + metrics.report(before);
+    }
+
+    @ShellMethod("Show presentation metrics since startup: time per action, LLM and tool calls, dot and marp time, bytes written")
+    public String presentationMetrics(
+            @ShellOption(defaultValue = "false", help = "Show all application metrics in Prometheus text format")
+            boolean prometheus,
+            @ShellOption(defaultValue = "", help = "File to write the metrics to instead of showing them")
+            String output
+    ) throws IOException {
+        String text = prometheus ? metrics.prometheus() : metrics.report();
+        if (text == null) {
+            return "No Prometheus registry is configured";
+        }
+        if (output.isBlank()) {
+            return text;
+        }
+        Files.writeString(Path.of(output), text);
+        return "Wrote metrics to " + output;
+    }
+
+    /**
+     * Outcome of making one deck in a batch
+     *
+     * @param result where the deck is, or why it failed
+     */
+    record DeckRun(Path requestFile, boolean succeeded, Duration elapsed, String result) {
+    }
+
+    private DeckRun makeDeck(Path requestFile, Set<CheckpointStore.Stage> recompute) {
+        long start = System.nanoTime();
+        try {
+            PresentationRequest presentationRequest = readRequest(Files.readString(requestFile));
+            checkpointStore.invalidate(presentationRequest, recompute);
+            AgentProcess agentProcess = run(presentationRequest);
+            Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+            if (agentProcess.getStatus() != AgentProcessStatusCode.COMPLETED) {
+                return new DeckRun(requestFile, false, elapsed, "process " + agentProcess.getStatus().name().toLowerCase(Locale.ROOT));
+            }
+            String degradations = scheduler.degradations(presentationRequest);
+            return new DeckRun(requestFile, true, elapsed,
+                    presentationRequest.getOutputDirectory() + "/" + presentationRequest.getOutputFile()
+                            + (degradations.isEmpty() ? "" : " (" + degradations + ")"));
+        } catch (Exception e) {
+            logger.warn("Failed to make presentation for {}", requestFile, e);
+            return new DeckRun(requestFile, false, Duration.ofNanos(System.nanoTime() - start),
+                    e.getClass().getSimpleName() + ": " + e.getMessage());
+        }
+    }
+
+    private PresentationRequest readRequest(String yaml) throws IOException {
+        ObjectMapper yamlReader = ExtensionsKt.registerKotlinModule(new ObjectMapper(new YAMLFactory()))
+                .registerModule(new JavaTimeModule());
+        return yamlReader.readValue(yaml, PresentationRequest.class);
+    }
+
+    private AgentProcess run(PresentationRequest presentationRequest) {
         Agent targetAgent = CollectionsKt.single(
                 agentPlatform.agents(),
                 agent -> agent.getName().equals("PresentationMaker")
         );
 
-        AgentProcess agentProcess = agentPlatform.runAgentWithInput(
+        return agentPlatform.runAgentWithInput(
                 targetAgent,
                 ProcessOptions.Companion.getDEFAULT(),
                 presentationRequest
         );
+    }
 
-        return formatProcessOutput(
-                AgentProcessExecution.Companion.fromProcessStatus(
-                        presentationRequest,
-                        agentProcess
-                ),
-                LumonColorPalette.INSTANCE,
-                objectMapper,
-                140
-        ) + "\ndeck is at " + presentationRequest.getOutputDirectory() + "/" + presentationRequest.getOutputFile();
+    /**
+     * @param files a directory, whose YAML files are returned, or a glob
+     */
+    static List<Path> requestFiles(String files) throws IOException {
+        Path path = Path.of(files);
+        if (Files.isDirectory(path)) {
+            try (Stream<Path> listing = Files.list(path)) {
+                return listing
+                        .filter(p -> p.getFileName().toString().matches(".*\\.ya?ml"))
+                        .filter(Files::isRegularFile)
+                        .sorted()
+                        .toList();
+            }
+        }
+        // Walk from the longest leading part of the pattern without wildcards
+        Path base = path.isAbsolute() ? path.getRoot() : Path.of("");
+        for (Path segment : path) {
+            if (segment.toString().matches(".*[*?\\[{].*")) {
+                break;
+            }
+            base = base.resolve(segment);
+        }
+        if (base.equals(path)) {
+            return Files.isRegularFile(path) ? List.of(path) : List.of();
+        }
+        if (!Files.isDirectory(base)) {
+            return List.of();
+        }
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + files);
+        try (Stream<Path> walk = Files.walk(base)) {
+            return walk
+                    .filter(matcher::matches)
+                    .filter(Files::isRegularFile)
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    static String summary(List<DeckRun> runs, Duration total) {
+        int nameWidth = Math.max(4, runs.stream().mapToInt(run -> run.requestFile().toString().length()).max().orElse(0));
+        String row = "%-" + nameWidth + "s  %-6s  %9s  %s%n";
+        StringBuilder table = new StringBuilder(String.format(row, "Deck", "Status", "Time", "Result"));
+        table.append("-".repeat(nameWidth + 30)).append('\n');
+        for (DeckRun run : runs) {
+            table.append(String.format(row,
+                    run.requestFile(),
+                    run.succeeded() ? "ok" : "FAILED",
+                    String.format("%.1fs", run.elapsed().toMillis() / 1000.0),
+                    run.result()));
+        }
+        long failed = runs.stream().filter(run -> !run.succeeded()).count();
+        table.append(String.format("%n%d decks, %d failed, %.1fs elapsed%n", runs.size(), failed, total.toMillis() / 1000.0));
+        return table.toString();
     }
 }
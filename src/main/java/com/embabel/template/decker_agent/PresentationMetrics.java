@@ -0,0 +1,222 @@
+package com.embabel.template.decker_agent;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Micrometer instrumentation for making presentations: time spent in each agent action,
+ * LLM calls and time waiting for an LLM permit, project tool calls, external dot and
+ * marp processes, and bytes written to output files.
+ * All meters are named decker.*, and are exported with the application's other metrics.
+ */
+@Service
+class PresentationMetrics {
+
+    static final String PREFIX = "decker.";
+    static final String ACTION = PREFIX + "action";
+    static final String LLM_CALLS = PREFIX + "llm.calls";
+    static final String LLM_WAIT = PREFIX + "llm.wait";
+    static final String TOOL_CALLS = PREFIX + "tool.calls";
+    static final String PROCESS = PREFIX + "process";
+    static final String BYTES_WRITTEN = PREFIX + "files.written";
+    static final String RESEARCH_TOPIC = PREFIX + "research.topic";
+    static final String LLM_HEDGES = PREFIX + "llm.hedges";
+
+    private final MeterRegistry registry;
+
+    @Autowired
+    PresentationMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Metrics for code created outside Spring, such as tool objects read from a request,
+     * recorded to the global registry the application's registry is added to
+     */
+    static PresentationMetrics global() {
+        return new PresentationMetrics(Metrics.globalRegistry);
+    }
+
+    /**
+     * Time an agent action, tagged with whether it succeeded
+     */
+    <T> T action(String action, Supplier<T> work) {
+        return timed(ACTION, work, Tag.of("action", action));
+    }
+
+    /**
+     * Time an LLM call
+     *
+     * @param purpose what the call is for, such as research or illustration
+     */
+    <T> T llmCall(String purpose, Supplier<T> call) {
+        return timed(LLM_CALLS, call, Tag.of("purpose", purpose));
+    }
+
+    void llmWait(String purpose, long nanos) {
+        Timer.builder(LLM_WAIT).tag("purpose", purpose).register(registry).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param result whether the duplicate call won, lost, or was not made because no permit was free
+     */
+    void hedge(String purpose, String result) {
+        Counter.builder(LLM_HEDGES).tag("purpose", purpose).tag("result", result).register(registry).increment();
+    }
+
+    /**
+     * @param result whether the call was run, remembered or shared with an identical call in flight
+     */
+    void toolCall(String tool, String result) {
+        Counter.builder(TOOL_CALLS).tag("tool", tool).tag("result", result).register(registry).increment();
+    }
+
+    /**
+     * Time an external process such as dot or marp
+     */
+    void process(String command, Runnable work) {
+        timed(PROCESS, () -> {
+            work.run();
+            return null;
+        }, Tag.of("command", command));
+    }
+
+    /**
+     * Time to research one topic, with tail percentiles published
+     *
+     * @param outcome whether the research completed, wrapped up early or timed out
+     */
+    void researchTopic(String outcome, long nanos) {
+        Timer.builder(RESEARCH_TOPIC)
+                .tag("outcome", outcome)
+                .publishPercentiles(0.5, 0.9, 0.99)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    void bytesWritten(String fileName, long bytes) {
+        DistributionSummary.builder(BYTES_WRITTEN)
+                .baseUnit("bytes")
+                .tag("type", fileName.contains(".") ? fileName.substring(fileName.lastIndexOf('.') + 1) : "none")
+                .register(registry)
+                .record(bytes);
+    }
+
+    private <T> T timed(String name, Supplier<T> work, Tag tag) {
+        long start = System.nanoTime();
+        String outcome = "failure";
+        try {
+            T result = work.get();
+            outcome = "success";
+            return result;
+        } finally {
+            Timer.builder(name)
+                    .tags(List.of(tag, Tag.of("outcome", outcome)))
+                    .register(registry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Count and total of a meter: milliseconds for timers, bytes for files written
+     */
+    record Reading(long count, double total) {
+    }
+
+    /**
+     * Current readings of all presentation meters, keyed by name and tags
+     */
+    Map<String, Reading> snapshot() {
+        Map<String, Reading> readings = new TreeMap<>();
+        for (Meter meter : registry.getMeters()) {
+            if (!meter.getId().getName().startsWith(PREFIX)) {
+                continue;
+            }
+            Reading reading = switch (meter) {
+                case Timer timer -> new Reading(timer.count(), timer.totalTime(TimeUnit.MILLISECONDS));
+                case DistributionSummary summary -> new Reading(summary.count(), summary.totalAmount());
+                case Counter counter -> new Reading((long) counter.count(), counter.count());
+                default -> null;
+            };
+            if (reading != null) {
+                readings.merge(key(meter), reading, (a, b) -> new Reading(a.count() + b.count(), a.total() + b.total()));
+            }
+        }
+        return readings;
+    }
+
+    private static String key(Meter meter) {
+        String tags = meter.getId().getTags().stream()
+                .map(tag -> tag.getKey() + "=" + tag.getValue())
+                .collect(Collectors.joining(","));
+        return meter.getId().getName().substring(PREFIX.length()) + (tags.isEmpty() ? "" : "{" + tags + "}");
+    }
+
+    /**
+     * Table of what changed since an earlier snapshot, for example over one run
+     */
+    String report(Map<String, Reading> since) {
+        Map<String, Reading> now = snapshot();
+        int width = Math.max(5, now.keySet().stream().mapToInt(String::length).max().orElse(0));
+        String row = "%-" + width + "s  %8s  %12s%n";
+        StringBuilder table = new StringBuilder(String.format(row, "Meter", "Count", "Total"));
+        table.append("-".repeat(width + 24)).append('\n');
+        now.forEach((key, reading) -> {
+            Reading before = since.getOrDefault(key, new Reading(0, 0));
+            long count = reading.count() - before.count();
+            if (count == 0) {
+                return;
+            }
+            double total = reading.total() - before.total();
+            String formatted = key.startsWith(BYTES_WRITTEN.substring(PREFIX.length())) ? String.format("%,.0fB", total)
+                    : key.startsWith(TOOL_CALLS.substring(PREFIX.length()))
+                    || key.startsWith(LLM_HEDGES.substring(PREFIX.length())) ? ""
+                    : String.format("%,.0fms", total);
+            table.append(String.format(row, key, count, formatted));
+        });
+        return table.toString();
+    }
+
+    String report() {
+        return report(Map.of());
+    }
+
+    /**
+     * All application metrics in Prometheus text format, or null if no Prometheus registry is configured
+     */
+    String prometheus() {
+        PrometheusMeterRegistry prometheus = prometheusRegistry(registry);
+        return prometheus == null ? null : prometheus.scrape();
+    }
+
+    private static PrometheusMeterRegistry prometheusRegistry(MeterRegistry registry) {
+        if (registry instanceof PrometheusMeterRegistry prometheus) {
+            return prometheus;
+        }
+        if (registry instanceof CompositeMeterRegistry composite) {
+            for (MeterRegistry child : composite.getRegistries()) {
+                PrometheusMeterRegistry prometheus = prometheusRegistry(child);
+                if (prometheus != null) {
+                    return prometheus;
+                }
+            }
+        }
+        return null;
+    }
+}
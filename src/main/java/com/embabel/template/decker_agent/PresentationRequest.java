@@ -5,9 +5,11 @@ import com.embabel.common.ai.prompt.PromptContribution;
 import com.embabel.common.ai.prompt.PromptContributionLocation;
 import com.embabel.common.ai.prompt.PromptContributor;
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.time.Duration;
 import java.util.Map;
 
 class PresentationRequest implements PromptContributor {
@@ -21,6 +23,12 @@ class PresentationRequest implements PromptContributor {
     private Map<String, ImageInfo> images = Map.of();
     private boolean autoIllustrate;
     private CoStar coStar;
+    /**
+     * How long making the presentation may take, or null for no limit.
+     * Not part of the request's identity, so checkpoints are shared with runs with other budgets.
+     */
+    @JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
+    private Duration timeBudget;
 
     @JsonIgnore
     private Project project;
@@ -86,6 +94,10 @@ class PresentationRequest implements PromptContributor {
         return coStar;
     }
 
+    public Duration getTimeBudget() {
+        return timeBudget;
+    }
+
     @JsonIgnore
     public Project getProject() {
         return project;
@@ -0,0 +1,229 @@
+package com.embabel.template.decker_agent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps presentations with a {@link PresentationRequest#getTimeBudget() time budget} within it.
+ * Each step of the pipeline is planned a share of the budget. When a step starts, the time used so far
+ * plus the time planned for the remaining steps is compared with the budget, and while that would overrun,
+ * degradations are applied in a fixed order, passing over any whose step has already started.
+ */
+@Service
+class PresentationScheduler {
+
+    /**
+     * Pipeline steps, in order
+     */
+    enum Step {
+        TOPICS(0.05), RESEARCH(0.50), DECK(0.25), DIAGRAMS(0.05), ILLUSTRATIONS(0.10), SLIDES(0.05);
+
+        /**
+         * Share of the time budget planned for this step
+         */
+        final double share;
+
+        Step(double share) {
+            this.share = share;
+        }
+    }
+
+    /**
+     * Ways to save time, in the order they are applied
+     */
+    enum Degradation {
+        FEWER_TOPICS(Step.RESEARCH, 0.5, "researched half the topics"),
+        CHEAPER_RESEARCH_MODEL(Step.RESEARCH, 0.5, "used the degraded research model"),
+        SKIP_ILLUSTRATIONS(Step.ILLUSTRATIONS, 0, "skipped illustrations"),
+        SKIP_DIAGRAMS(Step.DIAGRAMS, 0, "skipped diagram rendering");
+
+        /**
+         * The step this shortens, which must not have started when it is applied
+         */
+        final Step step;
+        /**
+         * Fraction of the step's planned time still needed
+         */
+        final double remaining;
+        final String description;
+
+        Degradation(Step step, double remaining, String description) {
+            this.step = step;
+            this.remaining = remaining;
+            this.description = description;
+        }
+    }
+
+    private final Map<PresentationRequest, Schedule> schedules = Collections.synchronizedMap(new WeakHashMap<>());
+    private final LongSupplier nanoTime;
+
+    PresentationScheduler() {
+        this(System::nanoTime);
+    }
+
+    PresentationScheduler(LongSupplier nanoTime) {
+        this.nanoTime = nanoTime;
+    }
+
+    /**
+     * The schedule for a run, whose clock starts when it is first asked for
+     */
+    Schedule schedule(PresentationRequest presentationRequest) {
+        return schedules.computeIfAbsent(presentationRequest, request -> new Schedule(request.getTimeBudget(), nanoTime));
+    }
+
+    /**
+     * How a run used its time budget and what was degraded, or an empty string if it had no budget
+     */
+    String report(PresentationRequest presentationRequest) {
+        Schedule schedule = schedules.get(presentationRequest);
+        return schedule == null ? "" : schedule.report();
+    }
+
+    /**
+     * What was degraded to keep a run to its time budget, such as "skipped illustrations", or an empty string
+     */
+    String degradations(PresentationRequest presentationRequest) {
+        Schedule schedule = schedules.get(presentationRequest);
+        return schedule == null ? "" : schedule.degradations().stream()
+                .map(degradation -> degradation.description)
+                .collect(Collectors.joining(", "));
+    }
+
+    /**
+     * Timing and degradations of one run
+     */
+    static class Schedule {
+
+        private final Logger logger = LoggerFactory.getLogger(Schedule.class);
+
+        private final Duration budget;
+        private final LongSupplier nanoTime;
+        private final long start;
+        private final Map<Step, Long> elapsed = new EnumMap<>(Step.class);
+        private final Set<Degradation> applied = EnumSet.noneOf(Degradation.class);
+        private final Set<Step> incomplete = EnumSet.noneOf(Step.class);
+        private Step current;
+        private long currentStart;
+
+        /**
+         * @param budget null for no limit
+         */
+        Schedule(Duration budget, LongSupplier nanoTime) {
+            this.budget = budget;
+            this.nanoTime = nanoTime;
+            this.start = nanoTime.getAsLong();
+        }
+
+        /**
+         * Record the start of a step, degrading the rest of the run if it is behind plan
+         */
+        synchronized void start(Step step) {
+            long now = nanoTime.getAsLong();
+            finishCurrent(now);
+            current = step;
+            currentStart = now;
+            if (budget == null) {
+                return;
+            }
+            for (Degradation degradation : Degradation.values()) {
+                if (!isAtRisk(step, now)) {
+                    return;
+                }
+                if (degradation.step.compareTo(step) >= 0 && applied.add(degradation)) {
+                    logger.warn("Time budget at risk before {}: {} of {} used, so {}", step,
+                            seconds(now - start), seconds(budget.toNanos()), degradation.description);
+                }
+            }
+            if (isAtRisk(step, now)) {
+                logger.warn("Time budget at risk before {} with every degradation applied", step);
+            }
+        }
+
+        synchronized boolean isApplied(Degradation degradation) {
+            return applied.contains(degradation);
+        }
+
+        /**
+         * Record that a step went ahead without all of its work, such as research that ran out of time
+         */
+        synchronized void markIncomplete(Step step) {
+            incomplete.add(step);
+        }
+
+        /**
+         * Whether any degradation shortening this step has been applied, or the step was incomplete
+         */
+        synchronized boolean isDegraded(Step step) {
+            return incomplete.contains(step) || applied.stream().anyMatch(degradation -> degradation.step == step);
+        }
+
+        synchronized Set<Degradation> degradations() {
+            return EnumSet.copyOf(applied);
+        }
+
+        /**
+         * Record the end of the last step
+         */
+        synchronized void finish() {
+            finishCurrent(nanoTime.getAsLong());
+            current = null;
+        }
+
+        synchronized String report() {
+            if (budget == null) {
+                return "";
+            }
+            long used = elapsed.values().stream().mapToLong(Long::longValue).sum();
+            String steps = elapsed.entrySet().stream()
+                    .map(entry -> entry.getKey().name().toLowerCase(Locale.ROOT) + " " + seconds(entry.getValue()))
+                    .collect(Collectors.joining(", "));
+            String degradations = applied.isEmpty() ? "none"
+                    : applied.stream().map(degradation -> degradation.description).collect(Collectors.joining(", "));
+            return String.format("Time budget %s, used %s (%s)%nDegradations: %s%n",
+                    seconds(budget.toNanos()), seconds(used), steps, degradations);
+        }
+
+        private boolean isAtRisk(Step step, long now) {
+            double planned = 0;
+            for (Step remaining : Step.values()) {
+                if (remaining.compareTo(step) >= 0) {
+                    planned += remaining.share * remainingFraction(remaining);
+                }
+            }
+            return now - start + planned * budget.toNanos() > budget.toNanos();
+        }
+
+        private double remainingFraction(Step step) {
+            double fraction = 1;
+            for (Degradation degradation : applied) {
+                if (degradation.step == step) {
+                    fraction *= degradation.remaining;
+                }
+            }
+            return fraction;
+        }
+
+        private void finishCurrent(long now) {
+            if (current != null) {
+                elapsed.merge(current, now - currentStart, Long::sum);
+            }
+        }
+    }
+
+    private static String seconds(long nanos) {
+        return String.format("%.1fs", nanos / 1e9);
+    }
+}
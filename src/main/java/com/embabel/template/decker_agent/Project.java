@@ -8,13 +8,50 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.springframework.ai.tool.ToolCallback;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
 
 class Project implements FileReadTools, SymbolSearch {
 
+    static final Set<String> IGNORED_DIRECTORIES = Set.of(
+            ".git", ".idea", ".gradle", ".mvn", "node_modules");
+
+    /**
+     * Build output directories. Ignored only at the project root or beside a build file,
+     * as deeper down they may be source packages.
+     */
+    static final Set<String> BUILD_OUTPUT_DIRECTORIES = Set.of("target", "build", "out");
+
+    static final Set<String> BUILD_FILES = Set.of("pom.xml", "build.gradle", "build.gradle.kts");
+
+    /**
+     * Tool results remembered for the life of the project, which is the life of the agent process using it
+     */
+    private static final int MEMOISED_TOOL_CALLS = 256;
+
+    private static final Path CODE_INDEX_DIRECTORY = Path.of(System.getProperty("user.home"), ".embabel", "decker", "code-index");
+
+    private static final Path DIGEST_DIRECTORY = Path.of(System.getProperty("user.home"), ".embabel", "decker", "project-digest");
+
     private final String root;
     private final List<StringTransformer> fileContentTransformers = List.of(WellKnownFileContentTransformers.INSTANCE.getRemoveApacheLicenseHeader());
+    private volatile String fingerprint;
+    private volatile CodeIndex codeIndex;
+    private volatile String digest;
+    private final ToolCallMemo toolCallMemo = new ToolCallMemo(MEMOISED_TOOL_CALLS);
 
     public Project(String root) {
         this.root = root;
@@ -32,6 +69,109 @@ class Project implements FileReadTools, SymbolSearch {
         return fileContentTransformers;
     }
 
+    /**
+     * Should a walk of the project from root skip this directory and everything in it?
+     */
+    static boolean isIgnoredDirectory(Path root, Path dir) {
+        if (dir.equals(root)) {
+            return false;
+        }
+        String name = dir.getFileName().toString();
+        if (IGNORED_DIRECTORIES.contains(name)) {
+            return true;
+        }
+        if (!BUILD_OUTPUT_DIRECTORIES.contains(name)) {
+            return false;
+        }
+        Path parent = dir.getParent();
+        return parent.equals(root) || BUILD_FILES.stream().anyMatch(buildFile -> Files.isRegularFile(parent.resolve(buildFile)));
+    }
+
+    /**
+     * Hash of the path, size and modification time of every source file, ignoring build output
+     * and VCS directories. Computed once per instance, so it describes the project as it was
+     * when first asked.
+     */
+    String fingerprint() {
+        String result = fingerprint;
+        if (result == null) {
+            result = computeFingerprint();
+            fingerprint = result;
+        }
+        return result;
+    }
+
+    private String computeFingerprint() {
+        Path rootPath = Path.of(root);
+        TreeMap<String, String> files = new TreeMap<>();
+        if (Files.isDirectory(rootPath)) {
+            try {
+                Files.walkFileTree(rootPath, new SimpleFileVisitor<>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+                        return isIgnoredDirectory(rootPath, dir)
+                                ? FileVisitResult.SKIP_SUBTREE
+                                : FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                        files.put(rootPath.relativize(file).toString(), attributes.size() + ":" + attributes.lastModifiedTime().toMillis());
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException e) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(rootPath.toAbsolutePath().normalize().toString().getBytes(StandardCharsets.UTF_8));
+            files.forEach((path, stamp) -> {
+                digest.update((byte) 0);
+                digest.update(path.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+                digest.update(stamp.getBytes(StandardCharsets.UTF_8));
+            });
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * {@link ProjectDigest Overview} of the project for prompts, built once per instance
+     * and cached on disk for as long as the project's fingerprint is unchanged
+     *
+     * @param tokenBudget approximate tokens the digest may use
+     */
+    String digest(int tokenBudget) {
+        String result = digest;
+        if (result == null) {
+            synchronized (this) {
+                result = digest;
+                if (result == null) {
+                    result = ProjectDigest.forRoot(Path.of(root), fingerprint(), DIGEST_DIRECTORY, tokenBudget);
+                    digest = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Read-only tool calls are memoised, as the parallel research conversations sharing
+     * this project often make the same calls
+     */
+    ToolCallMemo toolCallMemo() {
+        return toolCallMemo;
+    }
+
     @Override
     public boolean exists() {
         return FileReadTools.DefaultImpls.exists(this);
@@ -40,31 +180,31 @@ class Project implements FileReadTools, SymbolSearch {
     @NotNull
     @Override
     public List<String> findFiles(@NotNull String glob) {
-        return FileReadTools.DefaultImpls.findFiles(this, glob);
+        return toolCallMemo.call("findFiles", Arrays.asList(glob), () -> FileReadTools.DefaultImpls.findFiles(this, glob));
     }
 
     @NotNull
     @Override
     public List<String> findFiles(@NotNull String glob, boolean findHighest) {
-        return FileReadTools.DefaultImpls.findFiles(this, glob, findHighest);
+        return toolCallMemo.call("findFiles", Arrays.asList(glob, findHighest), () -> FileReadTools.DefaultImpls.findFiles(this, glob, findHighest));
     }
 
     @Nullable
     @Override
     public String safeReadFile(@NotNull String path) {
-        return FileReadTools.DefaultImpls.safeReadFile(this, path);
+        return toolCallMemo.call("safeReadFile", Arrays.asList(path), () -> FileReadTools.DefaultImpls.safeReadFile(this, path));
     }
 
     @NotNull
     @Override
     public String readFile(@NotNull String path) {
-        return FileReadTools.DefaultImpls.readFile(this, path);
+        return toolCallMemo.call("readFile", Arrays.asList(path), () -> FileReadTools.DefaultImpls.readFile(this, path));
     }
 
     @NotNull
     @Override
     public List<String> listFiles(@NotNull String path) {
-        return FileReadTools.DefaultImpls.listFiles(this, path);
+        return toolCallMemo.call("listFiles", Arrays.asList(path), () -> FileReadTools.DefaultImpls.listFiles(this, path));
     }
 
     @NotNull
@@ -88,13 +228,36 @@ class Project implements FileReadTools, SymbolSearch {
     @NotNull
     @Override
     public String findPatternInProject(@NotNull String pattern, @NotNull String globPattern) {
-        return SymbolSearch.DefaultImpls.findPatternInProject(this, pattern, globPattern);
+        return toolCallMemo.call("findPatternInProject", Arrays.asList(pattern, globPattern),
+                () -> SymbolSearch.DefaultImpls.findPatternInProject(this, pattern, globPattern));
     }
 
+    /**
+     * Search through the project's {@link CodeIndex}, which only reads files that can contain a match
+     */
     @NotNull
     @Override
     public List<PatternMatch> findPatternInProject(@NotNull Regex pattern, @NotNull String globPattern, boolean useParallelSearch) {
-        return SymbolSearch.DefaultImpls.findPatternInProject(this, pattern, globPattern, useParallelSearch);
+        if (!Files.isDirectory(Path.of(root))) {
+            return SymbolSearch.DefaultImpls.findPatternInProject(this, pattern, globPattern, useParallelSearch);
+        }
+        return codeIndex().search(pattern.toPattern(), path -> matchesGlob(path, globPattern), useParallelSearch).stream()
+                .map(match -> new PatternMatch(match.relativePath(), match.lineNumber(), match.line()))
+                .toList();
+    }
+
+    private CodeIndex codeIndex() {
+        CodeIndex result = codeIndex;
+        if (result == null) {
+            synchronized (this) {
+                result = codeIndex;
+                if (result == null) {
+                    result = CodeIndex.forRoot(Path.of(root), CODE_INDEX_DIRECTORY);
+                    codeIndex = result;
+                }
+            }
+        }
+        return result;
     }
 
     @Override
@@ -0,0 +1,238 @@
+package com.embabel.template.decker_agent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Overview of a software project for research and deck prompts: README excerpt, build modules,
+ * entry points, source packages and the signatures of top-level types. Given to the LLM up front,
+ * it saves the tool calls each conversation would otherwise make to find its way around.
+ * Built from the files on disk without an LLM, trimmed to a token budget with the most useful
+ * sections first, and saved by project fingerprint so an unchanged project is not read again.
+ */
+final class ProjectDigest {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProjectDigest.class);
+
+    private static final Set<String> README_FILES = Set.of("README.md", "README.adoc", "README.txt", "README");
+    private static final long MAX_SOURCE_BYTES = 512 * 1024;
+
+    private static final Pattern PACKAGE = Pattern.compile("(?m)^package\\s+([\\w.]+)");
+    /**
+     * A type declared at the start of a line, so not nested in another type
+     */
+    private static final Pattern TOP_LEVEL_TYPE = Pattern.compile(
+            "(?m)^((?:(?:public|protected|private|abstract|final|sealed|non-sealed|static|strictfp|data|open|internal|enum|annotation|value)\\s+)*"
+                    + "(?:class|interface|enum|record|object|@interface)\\s+\\w+[^{\\n]*)");
+    private static final Pattern ENTRY_POINT = Pattern.compile(
+            "static\\s+void\\s+main\\s*\\(|^fun\\s+main\\s*\\(|^\\s*@SpringBootApplication\\b", Pattern.MULTILINE);
+
+    /**
+     * README lines that are only badges, images or spacing, which tell the LLM nothing
+     */
+    private static final Pattern README_DECORATION = Pattern.compile(
+            "(?m)^\\s*(?:(?:\\[?!\\[[^\\]]*]\\([^)]*\\)(?:]\\([^)]*\\))?|<img\\b[^>]*>|&nbsp;)\\s*)+$\\n?");
+
+    private ProjectDigest() {
+    }
+
+    /**
+     * The digest for a project, read from the cache directory if it was built for the same fingerprint and budget
+     *
+     * @param fingerprint changes whenever a file in the project does
+     */
+    static String forRoot(Path root, String fingerprint, Path cacheDirectory, int tokenBudget) {
+        Path cached = cacheDirectory.resolve(fingerprint + "-" + tokenBudget + ".md");
+        try {
+            if (Files.isRegularFile(cached)) {
+                return Files.readString(cached);
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to read cached project digest {}", cached, e);
+        }
+        long start = System.currentTimeMillis();
+        String digest = build(root, tokenBudget);
+        logger.info("Built ~{} token project digest of {} in {}ms",
+                ResearchCompactor.estimateTokens(digest), root, System.currentTimeMillis() - start);
+        try {
+            Files.createDirectories(cacheDirectory);
+            Path temp = Files.createTempFile(cacheDirectory, "digest", ".tmp");
+            Files.writeString(temp, digest);
+            Files.move(temp, cached, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Failed to cache project digest of {}", root, e);
+        }
+        return digest;
+    }
+
+    /**
+     * Build the digest from the files under root
+     */
+    static String build(Path root, int tokenBudget) {
+        Sources sources = scan(root);
+        int maxChars = tokenBudget * 4;
+        StringBuilder digest = new StringBuilder("# Software project overview\n")
+                .append("Use this overview of the project to decide where to look, and the project tools for details it leaves out.\n");
+
+        if (sources.readme() != null) {
+            // The README is often long, so it may use at most a quarter of the budget
+            String readme = README_DECORATION.matcher(sources.readme()).replaceAll("").replaceAll("\n{3,}", "\n\n");
+            digest.append("\n## README excerpt\n").append(excerpt(readme, maxChars / 4)).append('\n');
+        }
+        appendSection(digest, "Build modules", sources.buildFiles(), maxChars);
+        appendSection(digest, "Entry points", sources.entryPoints(), maxChars);
+        List<String> packages = new ArrayList<>();
+        sources.types().forEach((packageName, types) -> packages.add(packageName + " (" + types.size() + " types)"));
+        appendSection(digest, "Packages", packages, maxChars);
+
+        int omitted = 0;
+        for (Map.Entry<String, List<String>> entry : sources.types().entrySet()) {
+            String heading = "\n## Types in " + entry.getKey() + "\n";
+            if (digest.length() + heading.length() > maxChars) {
+                omitted += entry.getValue().size();
+                continue;
+            }
+            digest.append(heading);
+            for (String type : entry.getValue()) {
+                String line = "- " + type + "\n";
+                if (digest.length() + line.length() > maxChars) {
+                    omitted++;
+                } else {
+                    digest.append(line);
+                }
+            }
+        }
+        if (omitted > 0) {
+            digest.append("\n(").append(omitted).append(" more types not listed)\n");
+        }
+        return digest.toString();
+    }
+
+    private static void appendSection(StringBuilder digest, String title, List<String> lines, int maxChars) {
+        if (lines.isEmpty()) {
+            return;
+        }
+        digest.append("\n## ").append(title).append('\n');
+        for (String line : lines) {
+            if (digest.length() + line.length() + 3 > maxChars) {
+                digest.append("- ...\n");
+                return;
+            }
+            digest.append("- ").append(line).append('\n');
+        }
+    }
+
+    /**
+     * The start of the text, cut at a paragraph or line break where possible
+     */
+    static String excerpt(String text, int maxChars) {
+        String stripped = text.strip();
+        if (stripped.length() <= maxChars) {
+            return stripped;
+        }
+        int cut = stripped.lastIndexOf("\n\n", maxChars);
+        if (cut < maxChars / 2) {
+            cut = stripped.lastIndexOf('\n', maxChars);
+        }
+        if (cut < maxChars / 2) {
+            cut = maxChars;
+        }
+        return stripped.substring(0, cut).strip() + "\n...";
+    }
+
+    /**
+     * What the digest is built from
+     *
+     * @param types top-level type signatures of main sources by package, in package order
+     */
+    private record Sources(String readme, List<String> buildFiles, List<String> entryPoints, Map<String, List<String>> types) {
+    }
+
+    private static Sources scan(Path root) {
+        String[] readme = {null};
+        List<String> buildFiles = new ArrayList<>();
+        List<String> entryPoints = new ArrayList<>();
+        Map<String, List<String>> types = new TreeMap<>();
+        if (!Files.isDirectory(root)) {
+            return new Sources(null, buildFiles, entryPoints, types);
+        }
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+                    return Project.isIgnoredDirectory(root, dir)
+                            ? FileVisitResult.SKIP_SUBTREE
+                            : FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                    String name = file.getFileName().toString();
+                    String relativePath = root.relativize(file).toString().replace('\\', '/');
+                    if (README_FILES.contains(name) && file.getParent().equals(root)) {
+                        readme[0] = read(file);
+                    } else if (Project.BUILD_FILES.contains(name)) {
+                        String module = root.relativize(file.getParent()).toString().replace('\\', '/');
+                        buildFiles.add((module.isEmpty() ? "." : module) + " (" + name + ")");
+                    } else if ((name.endsWith(".java") || name.endsWith(".kt")) && !relativePath.contains("src/test/")
+                            && attributes.size() <= MAX_SOURCE_BYTES) {
+                        String source = read(file);
+                        if (source != null) {
+                            addSource(relativePath, source, entryPoints, types);
+                        }
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buildFiles.sort(null);
+        entryPoints.sort(null);
+        types.values().forEach(list -> list.sort(null));
+        return new Sources(readme[0], buildFiles, entryPoints, types);
+    }
+
+    private static void addSource(String relativePath, String source, List<String> entryPoints, Map<String, List<String>> types) {
+        Matcher packageMatcher = PACKAGE.matcher(source);
+        String packageName = packageMatcher.find() ? packageMatcher.group(1) : "(default package)";
+        Matcher type = TOP_LEVEL_TYPE.matcher(source);
+        while (type.find()) {
+            types.computeIfAbsent(packageName, p -> new ArrayList<>())
+                    .add(type.group(1).strip().replaceAll("\\s+", " "));
+        }
+        if (ENTRY_POINT.matcher(source).find()) {
+            entryPoints.add(relativePath);
+        }
+    }
+
+    private static String read(Path file) {
+        try {
+            return Files.readString(file, StandardCharsets.UTF_8);
+        } catch (IOException | UncheckedIOException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package com.embabel.template.decker_agent;
+
+import com.embabel.agent.domain.library.CompletedResearch;
+import com.embabel.agent.domain.library.InternetResource;
+import com.embabel.agent.domain.library.ResearchTopic;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Shrinks research reports to fit a token budget before they go into the deck prompt.
+ * Links repeated across reports are kept once, paragraphs that are near duplicates of
+ * an earlier paragraph are dropped, and the remaining paragraphs are ranked by relevance
+ * to the brief and the topic's questions, keeping the best of each topic first.
+ * Kept paragraphs stay in their original order.
+ * Tokens are estimated at four characters each, which is close enough for budgeting.
+ */
+class ResearchCompactor {
+
+    private static final int CHARS_PER_TOKEN = 4;
+
+    /**
+     * Longer paragraphs are split at sentence boundaries so they can be ranked separately
+     */
+    private static final int MAX_PARAGRAPH_CHARS = 1200;
+
+    /**
+     * Jaccard similarity of word trigrams above which a paragraph repeats an earlier one
+     */
+    private static final double DUPLICATE_SIMILARITY = 0.6;
+
+    private static final Pattern PARAGRAPH_BREAK = Pattern.compile("\\n\\s*\\n");
+    private static final Pattern SENTENCE_END = Pattern.compile("(?<=[.!?])\\s+");
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private static final Set<String> STOP_WORDS = Set.of(
+            "the", "and", "for", "are", "but", "not", "you", "all", "can", "has", "had", "was", "were", "with",
+            "this", "that", "these", "those", "from", "into", "its", "our", "their", "they", "them", "which",
+            "what", "when", "where", "who", "how", "why", "will", "would", "should", "could", "also", "than",
+            "then", "there", "here", "such", "use", "used", "using", "about", "more", "most", "other", "some",
+            "any", "each", "may", "might", "one", "two", "very", "been", "being", "have", "does", "did"
+    );
+
+    private final Logger logger = LoggerFactory.getLogger(ResearchCompactor.class);
+
+    private final int tokenBudget;
+
+    /**
+     * @param tokenBudget approximate tokens the compacted research may use; zero or less disables compaction
+     */
+    ResearchCompactor(int tokenBudget) {
+        this.tokenBudget = tokenBudget;
+    }
+
+    /**
+     * @param brief what the presentation is about, used to rank content
+     * @return the research as prompt text
+     */
+    String compact(String brief, List<CompletedResearch> researches) {
+        String original = researches.stream().map(CompletedResearch::getResearchReport).toList().toString();
+        if (tokenBudget <= 0) {
+            return original;
+        }
+
+        List<Paragraph> paragraphs = new ArrayList<>();
+        List<Set<String>> seenShingles = new ArrayList<>();
+        int duplicateParagraphs = 0;
+        for (int topic = 0; topic < researches.size(); topic++) {
+            for (String text : paragraphs(researches.get(topic).getResearchReport().getContent())) {
+                Set<String> shingles = shingles(text);
+                if (isNearDuplicate(shingles, seenShingles)) {
+                    duplicateParagraphs++;
+                    continue;
+                }
+                seenShingles.add(shingles);
+                paragraphs.add(new Paragraph(topic, paragraphs.size(), text, terms(text)));
+            }
+        }
+
+        Set<String> seenLinks = new HashSet<>();
+        List<Map<String, InternetResource>> topicLinks = new ArrayList<>();
+        int duplicateLinks = 0;
+        for (CompletedResearch research : researches) {
+            Map<String, InternetResource> links = new LinkedHashMap<>();
+            List<InternetResource> reportLinks = research.getResearchReport().getLinks();
+            for (InternetResource link : reportLinks == null ? List.<InternetResource>of() : reportLinks) {
+                String key = normalizeUrl(link.getUrl());
+                if (!seenLinks.add(key)) {
+                    duplicateLinks++;
+                } else {
+                    links.put(key, link);
+                }
+            }
+            topicLinks.add(links);
+        }
+
+        int budget = tokenBudget;
+        List<String> headers = new ArrayList<>();
+        for (CompletedResearch research : researches) {
+            String header = "# Research: " + research.getTopic().getTopic() + "\n";
+            headers.add(header);
+            budget -= estimateTokens(header);
+        }
+        // Links are what the reference slides are built from, so they get up to half the budget, in topic order
+        int linkBudget = Math.max(0, budget / 2);
+        List<List<String>> keptLinks = new ArrayList<>();
+        int droppedLinks = 0;
+        for (Map<String, InternetResource> links : topicLinks) {
+            List<String> kept = new ArrayList<>();
+            for (InternetResource link : links.values()) {
+                String line = "- " + link.getUrl() + (link.getSummary() == null || link.getSummary().isBlank() ? "" : ": " + link.getSummary()) + "\n";
+                int tokens = estimateTokens(line);
+                if (tokens <= linkBudget) {
+                    kept.add(line);
+                    linkBudget -= tokens;
+                    budget -= tokens;
+                } else {
+                    droppedLinks++;
+                }
+            }
+            keptLinks.add(kept);
+        }
+
+        double[] scores = score(paragraphs, brief, researches);
+        List<Paragraph> ranked = paragraphs.stream()
+                .sorted(Comparator.comparingDouble((Paragraph paragraph) -> scores[paragraph.position()]).reversed())
+                .toList();
+        Set<Integer> kept = new HashSet<>();
+        // Best paragraph of each topic first, so no topic is crowded out entirely
+        Set<Integer> topicsCovered = new HashSet<>();
+        for (Paragraph paragraph : ranked) {
+            if (!topicsCovered.contains(paragraph.topic()) && paragraph.tokens() <= budget) {
+                topicsCovered.add(paragraph.topic());
+                kept.add(paragraph.position());
+                budget -= paragraph.tokens();
+            }
+        }
+        for (Paragraph paragraph : ranked) {
+            if (!kept.contains(paragraph.position()) && paragraph.tokens() <= budget) {
+                kept.add(paragraph.position());
+                budget -= paragraph.tokens();
+            }
+        }
+
+        StringBuilder compacted = new StringBuilder();
+        for (int topic = 0; topic < researches.size(); topic++) {
+            compacted.append(headers.get(topic));
+            for (Paragraph paragraph : paragraphs) {
+                if (paragraph.topic() == topic && kept.contains(paragraph.position())) {
+                    compacted.append(paragraph.text()).append("\n\n");
+                }
+            }
+            if (!keptLinks.get(topic).isEmpty()) {
+                compacted.append("Links:\n");
+                keptLinks.get(topic).forEach(compacted::append);
+            }
+            compacted.append('\n');
+        }
+
+        String result = compacted.toString();
+        logger.info("Compacted research from ~{} to ~{} tokens (budget {}): dropped {} duplicate and {} low relevance paragraphs, {} duplicate and {} excess links",
+                estimateTokens(original), estimateTokens(result), tokenBudget,
+                duplicateParagraphs, paragraphs.size() - kept.size(), duplicateLinks, droppedLinks);
+        return result;
+    }
+
+    static int estimateTokens(String text) {
+        return (text.length() + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+    }
+
+    /**
+     * @param topic    index of the research the paragraph came from
+     * @param position index of the paragraph across all research
+     */
+    private record Paragraph(int topic, int position, String text, List<String> terms) {
+
+        int tokens() {
+            // Allow for the blank line after the paragraph
+            return estimateTokens(text) + 1;
+        }
+    }
+
+    /**
+     * Score each paragraph by the rarer query terms it mentions, favouring dense paragraphs.
+     * Terms from the brief count fully, terms from the paragraph's own topic and questions count half.
+     *
+     * @return scores indexed by paragraph position
+     */
+    private static double[] score(List<Paragraph> paragraphs, String brief, List<CompletedResearch> researches) {
+        Map<String, Integer> documentFrequency = new HashMap<>();
+        for (Paragraph paragraph : paragraphs) {
+            new HashSet<>(paragraph.terms()).forEach(term -> documentFrequency.merge(term, 1, Integer::sum));
+        }
+        Set<String> briefTerms = new HashSet<>(terms(brief == null ? "" : brief));
+        List<Set<String>> topicTerms = researches.stream()
+                .map(research -> {
+                    ResearchTopic topic = research.getTopic();
+                    Set<String> terms = new HashSet<>(terms(topic.getTopic()));
+                    topic.getQuestions().forEach(question -> terms.addAll(terms(question)));
+                    return terms;
+                })
+                .toList();
+        double[] scores = new double[paragraphs.size()];
+        for (Paragraph paragraph : paragraphs) {
+            double score = 0;
+            for (String term : new HashSet<>(paragraph.terms())) {
+                double weight = briefTerms.contains(term) ? 1.0 : topicTerms.get(paragraph.topic()).contains(term) ? 0.5 : 0;
+                if (weight > 0) {
+                    score += weight * Math.log(1 + (double) paragraphs.size() / documentFrequency.get(term));
+                }
+            }
+            scores[paragraph.position()] = score / Math.sqrt(Math.max(1, paragraph.terms().size()));
+        }
+        return scores;
+    }
+
+    private static List<String> paragraphs(String content) {
+        List<String> paragraphs = new ArrayList<>();
+        if (content == null) {
+            return paragraphs;
+        }
+        for (String paragraph : PARAGRAPH_BREAK.split(content)) {
+            paragraph = paragraph.strip();
+            if (paragraph.isEmpty()) {
+                continue;
+            }
+            if (paragraph.length() <= MAX_PARAGRAPH_CHARS) {
+                paragraphs.add(paragraph);
+                continue;
+            }
+            StringBuilder chunk = new StringBuilder();
+            for (String sentence : SENTENCE_END.split(paragraph)) {
+                if (!chunk.isEmpty() && chunk.length() + sentence.length() > MAX_PARAGRAPH_CHARS) {
+                    paragraphs.add(chunk.toString());
+                    chunk.setLength(0);
+                }
+                chunk.append(chunk.isEmpty() ? "" : " ").append(sentence);
+            }
+            if (!chunk.isEmpty()) {
+                paragraphs.add(chunk.toString());
+            }
+        }
+        return paragraphs;
+    }
+
+    /**
+     * Lower case words of three or more characters, leaving out common words
+     */
+    static List<String> terms(String text) {
+        List<String> terms = new ArrayList<>();
+        for (String word : NON_WORD.split(text.toLowerCase(Locale.ROOT))) {
+            if (word.length() >= 3 && !STOP_WORDS.contains(word)) {
+                terms.add(word);
+            }
+        }
+        return terms;
+    }
+
+    private static Set<String> shingles(String text) {
+        String[] words = NON_WORD.split(text.toLowerCase(Locale.ROOT).strip());
+        Set<String> shingles = new HashSet<>();
+        if (words.length < 3) {
+            shingles.add(String.join(" ", words));
+            return shingles;
+        }
+        for (int i = 0; i + 3 <= words.length; i++) {
+            shingles.add(words[i] + " " + words[i + 1] + " " + words[i + 2]);
+        }
+        return shingles;
+    }
+
+    private static boolean isNearDuplicate(Set<String> shingles, List<Set<String>> seen) {
+        for (Set<String> other : seen) {
+            int smaller = Math.min(shingles.size(), other.size());
+            int larger = Math.max(shingles.size(), other.size());
+            // Jaccard similarity can't reach the threshold if the sizes differ too much
+            if (smaller < DUPLICATE_SIMILARITY * larger) {
+                continue;
+            }
+            int common = 0;
+            for (String shingle : shingles) {
+                if (other.contains(shingle)) {
+                    common++;
+                }
+            }
+            if (common >= DUPLICATE_SIMILARITY * (shingles.size() + other.size() - common)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Normalise a URL so trivially different forms of the same link compare equal
+     */
+    static String normalizeUrl(String url) {
+        if (url == null) {
+            return "";
+        }
+        try {
+            URI uri = URI.create(url.strip());
+            String host = uri.getHost() == null ? "" : uri.getHost().toLowerCase(Locale.ROOT);
+            if (host.startsWith("www.")) {
+                host = host.substring(4);
+            }
+            String path = uri.getPath() == null ? "" : uri.getPath();
+            if (path.endsWith("/")) {
+                path = path.substring(0, path.length() - 1);
+            }
+            return host + path + (uri.getQuery() == null ? "" : "?" + uri.getQuery());
+        } catch (IllegalArgumentException e) {
+            return url.strip().toLowerCase(Locale.ROOT);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.embabel.template.decker_agent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Researches topics with a soft and a hard deadline each, so one slow topic cannot hold up a presentation.
+ * A conversation with the LLM cannot be sent a message between tool calls, so when research passes its soft
+ * deadline a quicker wrap-up call is started alongside it, and whichever finishes first is used.
+ * At the hard deadline both are cancelled, interrupting their threads.
+ * Research that fails gives no result rather than failing the presentation, as one that times out does.
+ * One instance covers the topics of one run, and summarizes their latencies.
+ */
+class ResearchDeadlines {
+
+    enum Outcome {
+        COMPLETED, WRAPPED_UP, TIMED_OUT, FAILED
+    }
+
+    /**
+     * @param value null if the research timed out or failed
+     */
+    record Result<T>(T value, Outcome outcome) {
+    }
+
+    /**
+     * Virtual threads, so cancelling research stuck in network I/O interrupts it
+     */
+    private static final ExecutorService TOPICS = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("research-topic-", 0).factory());
+
+    private final Logger logger = LoggerFactory.getLogger(ResearchDeadlines.class);
+
+    private final Duration softDeadline;
+    private final Duration hardDeadline;
+    private final PresentationMetrics metrics;
+    private final List<Long> latencies = new ArrayList<>();
+    private final Map<Outcome, Integer> outcomes = new EnumMap<>(Outcome.class);
+
+    ResearchDeadlines(Duration softDeadline, Duration hardDeadline, PresentationMetrics metrics) {
+        this.softDeadline = softDeadline;
+        this.hardDeadline = hardDeadline.compareTo(softDeadline) < 0 ? softDeadline : hardDeadline;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Research a topic, blocking until there is a result or the hard deadline passes
+     *
+     * @param research full research, which may take many tool calls
+     * @param wrapUp   quicker research from what is already known, started if research passes the soft deadline
+     * @return the first result to finish, with no value if neither finished by the hard deadline
+     * or every attempt started failed
+     */
+    <T> Result<T> research(String topic, Supplier<T> research, Supplier<T> wrapUp) {
+        long start = System.nanoTime();
+        CompletionService<T> completion = new ExecutorCompletionService<>(TOPICS);
+        Future<T> full = completion.submit(research::get);
+        Future<T> quick = null;
+        int running = 1;
+        long deadline = start + softDeadline.toNanos();
+        Outcome outcome = Outcome.TIMED_OUT;
+        try {
+            while (true) {
+                Future<T> done = completion.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (done == null && quick == null) {
+                    logger.info("Research on '{}' passed its soft deadline of {}s, asking it to wrap up", topic, softDeadline.toSeconds());
+                    quick = completion.submit(wrapUp::get);
+                    running++;
+                    deadline = start + hardDeadline.toNanos();
+                } else if (done == null) {
+                    logger.warn("Research on '{}' passed its hard deadline of {}s and was cancelled", topic, hardDeadline.toSeconds());
+                    return new Result<>(null, outcome);
+                } else {
+                    running--;
+                    try {
+                        T value = done.get();
+                        outcome = done == full ? Outcome.COMPLETED : Outcome.WRAPPED_UP;
+                        return new Result<>(value, outcome);
+                    } catch (ExecutionException e) {
+                        if (running == 0) {
+                            logger.warn("Research on '{}' failed", topic, e.getCause());
+                            outcome = Outcome.FAILED;
+                            return new Result<>(null, outcome);
+                        }
+                        logger.warn("Research on '{}' failed, waiting for the other attempt: {}", topic, e.getCause().toString());
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted researching '" + topic + "'", e);
+        } finally {
+            full.cancel(true);
+            if (quick != null) {
+                quick.cancel(true);
+            }
+            record(outcome, System.nanoTime() - start);
+        }
+    }
+
+    private synchronized void record(Outcome outcome, long nanos) {
+        latencies.add(nanos);
+        outcomes.merge(outcome, 1, Integer::sum);
+        metrics.researchTopic(outcome.name().toLowerCase(Locale.ROOT).replace('_', '-'), nanos);
+    }
+
+    /**
+     * Latency percentiles of the topics researched, such as
+     * "p50 41.2s, p90 95.0s, p99 180.0s, max 180.0s over 8 topics (7 completed, 1 timed out)"
+     */
+    synchronized String summary() {
+        if (latencies.isEmpty()) {
+            return "no topics researched";
+        }
+        long[] sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+        String outcomeCounts = outcomes.entrySet().stream()
+                .map(entry -> entry.getValue() + " " + entry.getKey().name().toLowerCase(Locale.ROOT).replace('_', ' '))
+                .collect(Collectors.joining(", "));
+        return String.format("p50 %s, p90 %s, p99 %s, max %s over %d topics (%s)",
+                seconds(percentile(sorted, 50)), seconds(percentile(sorted, 90)), seconds(percentile(sorted, 99)),
+                seconds(sorted[sorted.length - 1]), sorted.length, outcomeCounts);
+    }
+
+    /**
+     * Nearest-rank percentile of sorted values
+     */
+    static long percentile(long[] sorted, double percent) {
+        int rank = (int) Math.ceil(percent / 100 * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)];
+    }
+
+    private static String seconds(long nanos) {
+        return String.format("%.1fs", nanos / 1e9);
+    }
+}
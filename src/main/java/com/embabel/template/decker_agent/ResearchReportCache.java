@@ -0,0 +1,161 @@
+package com.embabel.template.decker_agent;
+
+import com.embabel.agent.domain.library.ResearchReport;
+import com.embabel.agent.domain.library.ResearchTopic;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+
+/**
+ * Disk cache of research reports, keyed by a hash of the topic, its questions,
+ * the research model, the audience and a fingerprint of the software project.
+ * Entries expire after a time to live, and the least recently used entries are
+ * evicted when the cache exceeds its maximum size.
+ */
+@Service
+class ResearchReportCache {
+
+    private static final String SUFFIX = ".json";
+
+    private final Logger logger = LoggerFactory.getLogger(ResearchReportCache.class);
+
+    private final Path directory;
+    private final Duration ttl;
+    private final long maxBytes;
+    private final ObjectMapper objectMapper;
+    private final Clock clock;
+
+    @Autowired
+    ResearchReportCache(PresentationMakerProperties properties, ObjectMapper objectMapper) {
+        this(
+                Path.of(properties.getResearchCacheDirectory()),
+                properties.getResearchCacheTtl(),
+                properties.getResearchCacheMaxSize().toBytes(),
+                objectMapper,
+                Clock.systemUTC()
+        );
+    }
+
+    /**
+     * @param ttl      how long an entry is served after it was written; zero disables the cache
+     * @param maxBytes maximum total size of cached reports
+     */
+    ResearchReportCache(Path directory, Duration ttl, long maxBytes, ObjectMapper objectMapper, Clock clock) {
+        this.directory = directory;
+        this.ttl = ttl;
+        this.maxBytes = maxBytes;
+        this.objectMapper = objectMapper;
+        this.clock = clock;
+    }
+
+    /**
+     * What a cached report was produced from, other than the topic
+     *
+     * @param model              research model
+     * @param audience           prompt contribution describing the audience, may be empty
+     * @param projectFingerprint {@link Project#fingerprint()}, or empty without a project
+     */
+    record Context(String model, String audience, String projectFingerprint) {
+
+        static Context of(String model, PresentationRequest presentationRequest) {
+            Project project = presentationRequest.getProject();
+            return new Context(
+                    model,
+                    presentationRequest.getCoStar() != null ? presentationRequest.contribution() : "",
+                    project != null ? project.fingerprint() : ""
+            );
+        }
+    }
+
+    /**
+     * Stored form of a report
+     */
+    record Entry(Instant createdAt, String topic, ResearchReport report) {
+    }
+
+    boolean isEnabled() {
+        return ttl.isPositive();
+    }
+
+    /**
+     * @return the cached report, or null if there is none or it has expired
+     */
+    ResearchReport get(ResearchTopic topic, Context context) {
+        if (!isEnabled()) {
+            return null;
+        }
+        Path path = path(topic, context);
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        try {
+            Entry entry = objectMapper.readValue(path.toFile(), Entry.class);
+            if (entry.createdAt().plus(ttl).isBefore(clock.instant())) {
+                logger.info("Research cache entry for '{}' expired", topic.getTopic());
+                Files.deleteIfExists(path);
+                return null;
+            }
+            Files.setLastModifiedTime(path, FileTime.from(clock.instant()));
+            return entry.report();
+        } catch (IOException e) {
+            logger.warn("Ignoring unreadable research cache entry {}", path.getFileName(), e);
+            return null;
+        }
+    }
+
+    void put(ResearchTopic topic, Context context, ResearchReport report) {
+        if (!isEnabled() || report == null) {
+            return;
+        }
+        try {
+            Files.createDirectories(directory);
+            Path temp = Files.createTempFile(directory, "report", ".tmp");
+            objectMapper.writeValue(temp.toFile(), new Entry(clock.instant(), topic.getTopic(), report));
+            Files.move(temp, path(topic, context), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Failed to cache research report for '{}'", topic.getTopic(), e);
+            return;
+        }
+        DiskCacheEviction.evict(directory, SUFFIX, maxBytes, "research");
+    }
+
+    private Path path(ResearchTopic topic, Context context) {
+        return directory.resolve(key(topic, context) + SUFFIX);
+    }
+
+    static String key(ResearchTopic topic, Context context) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            update(digest, topic.getTopic());
+            for (String question : topic.getQuestions()) {
+                update(digest, question);
+            }
+            update(digest, context.model());
+            update(digest, context.audience());
+            update(digest, context.projectFingerprint());
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update((value == null ? "" : value.strip()).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+}
@@ -0,0 +1,10 @@
+package com.embabel.template.decker_agent;
+
+/**
+ * A slide that differs between two versions of a deck
+ *
+ * @param before content in the earlier version, or null if the slide was added
+ * @param after  content in the later version, or null if the slide was removed
+ */
+public record SlideChange(int number, String before, String after) {
+}
@@ -1,38 +1,77 @@
 package com.embabel.template.decker_agent;
 
 import com.embabel.agent.domain.library.ContentAsset;
-import kotlin.collections.CollectionsKt;
-import kotlin.text.StringsKt;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Instant;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
+/**
+ * Immutable, versioned Marp deck. The text is parsed at most once into its header and slides
+ * plus the exact text between them, after which only the parsed form is kept.
+ * Decks derived via {@link #withHeader(String)}, {@link #replaceSlides(Map)} or
+ * {@link #expandDigraphs(DigraphExpander)} are new versions that share every unchanged
+ * slide with the deck they came from, so keeping several stages of a deck alive costs
+ * little more than keeping one, and {@link #changesSince(SlideDeck)} is cheap.
+ * Decks derived via withHeader or replaceSlides render in the standard layout,
+ * a header followed by slides, each after a --- line.
+ */
 public class SlideDeck implements ContentAsset {
 
     private static final Logger logger = LoggerFactory.getLogger(SlideDeck.class);
 
-    private final String deck;
+    private static final Pattern SLIDE_SEPARATOR = Pattern.compile("(?m)^\\s*---+\\s*$");
+    private static final String TRIM_CHARS = "\r\n \t";
+    private static final int DEFAULT_DIAGRAM_CONCURRENCY = 4;
+
+    /**
+     * Text around the parts of a deck in the standard layout: before the header,
+     * between parts and after the last part
+     */
+    private static final String LEADING_SEPARATOR = "---\n";
+    private static final String SEPARATOR = "\n---\n";
+    private static final String TRAILING_NEWLINE = "\n";
+
+    /**
+     * Text not yet parsed. Cleared once parsed, as the index renders back to the same text.
+     */
+    private volatile String deck;
+    private volatile Index index;
+    private final int version;
     private final Instant timestamp = Instant.now();
 
-    public SlideDeck(String deck) {
+    @JsonCreator
+    public SlideDeck(@JsonProperty("deck") String deck) {
         this.deck = deck;
+        this.version = 0;
+    }
+
+    private SlideDeck(Index index, int version) {
+        this.index = index;
+        this.version = version;
     }
 
     public String getDeck() {
-        return deck;
+        String text = deck;
+        return text != null ? text : index().render();
     }
 
     @NotNull
     @Override
     public String getContent() {
-        return deck;
+        return getDeck();
     }
 
     @NotNull
@@ -41,102 +80,324 @@ public class SlideDeck implements ContentAsset {
         return timestamp;
     }
 
+    /**
+     * Number of derivations between the deck created from text and this one
+     */
+    public int version() {
+        return version;
+    }
+
     public int slideCount() {
-        return slides().size();
+        return index().slides().size();
     }
 
     public List<Slide> slides() {
-        if (deck == null || deck.isBlank()) {
-            return List.of();
-        }
-        String[] parts = deck.split("(?m)^\\s*---+\\s*$");
-        List<String> trimmedParts = Arrays.stream(parts)
-                // 使用Kotlin的精确trim方法
-                .map(p -> StringsKt.trim(p, new char[]{'\r', '\n', ' ', '\t'}))
-                .filter(p -> !p.isBlank())
-                .toList();
-
-        if (trimmedParts.isEmpty()) {
-            return List.of();
-        }
-        if (trimmedParts.size() == 1 && deck.trim().startsWith("---")) {
-            return List.of();
-        }
+        return index().slides();
+    }
 
-        // 使用Kotlin标准库的drop和mapIndexed方法
-        List<String> slideContents = CollectionsKt.drop(trimmedParts, 1);
-        return CollectionsKt.mapIndexed(slideContents, (index, content) -> new Slide(index + 1, content));
+    /**
+     * Return the slide with the given 1-based number, or null if there is no such slide
+     */
+    public Slide slide(int number) {
+        List<Slide> slides = index().slides();
+        return number < 1 || number > slides.size() ? null : slides.get(number - 1);
     }
 
     public String header() {
-        if (deck == null || deck.isBlank()) {
-            return "";
-        }
-        String[] parts = deck.split("(?m)^\\s*---+\\s*$");
-        List<String> trimmedParts = Arrays.stream(parts)
-                .map(p -> StringsKt.trim(p, new char[]{'\r', '\n', ' ', '\t'}))
-                .filter(p -> !p.isBlank())
-                .collect(Collectors.toList());
-
-        if (!trimmedParts.isEmpty() && deck.trim().startsWith("---")) {
-            return trimmedParts.get(0);
-        }
-        return "";
+        return index().header();
     }
 
     public SlideDeck withHeader(String header) {
-        String trimmedHeader = header.trim();
-        List<Slide> slides = slides();
-
-        if (slides.isEmpty()) {
-            return new SlideDeck("---\n" + trimmedHeader + "\n");
-        } else {
-            String slideContents = slides.stream().map(Slide::content).collect(Collectors.joining("\n---\n"));
-            return new SlideDeck("---\n" + trimmedHeader + "\n---\n" + slideContents + "\n");
-        }
+        return derive(index(), Map.of(0, header.trim()));
     }
 
     public SlideDeck replaceSlide(Slide slide, String newContent) {
-        List<Slide> slides = slides();
-        if (slides.isEmpty() || slide.number() < 1 || slide.number() > slides.size()) {
+        return replaceSlides(Map.of(slide.number(), newContent));
+    }
+
+    /**
+     * Replace the content of several slides in one pass.
+     * Slide numbers refer to this deck and numbers out of range are ignored.
+     *
+     * @param newContents new content keyed by 1-based slide number
+     */
+    public SlideDeck replaceSlides(Map<Integer, String> newContents) {
+        Index current = index();
+        int slideCount = current.slides().size();
+        Map<Integer, String> newParts = new HashMap<>();
+        newContents.forEach((number, content) -> {
+            if (number >= 1 && number <= slideCount) {
+                newParts.put(number, content);
+            }
+        });
+        return newParts.isEmpty() ? this : derive(current, newParts);
+    }
+
+    /**
+     * Slides that differ between an earlier version of this deck and this one, in slide order.
+     * Slides shared between the versions are skipped by identity without comparing their content.
+     */
+    public List<SlideChange> changesSince(SlideDeck earlier) {
+        List<Slide> before = earlier.slides();
+        List<Slide> after = slides();
+        List<SlideChange> changes = new ArrayList<>();
+        for (int i = 0; i < Math.max(before.size(), after.size()); i++) {
+            Slide was = i < before.size() ? before.get(i) : null;
+            Slide is = i < after.size() ? after.get(i) : null;
+            if (was == is || (was != null && is != null && was.content().equals(is.content()))) {
+                continue;
+            }
+            changes.add(new SlideChange(i + 1, was == null ? null : was.content(), is == null ? null : is.content()));
+        }
+        return changes;
+    }
+
+    public SlideDeck expandDigraphs(DigraphExpander digraphExpander) {
+        return expandDigraphs(digraphExpander, DEFAULT_DIAGRAM_CONCURRENCY);
+    }
+
+    /**
+     * Replace dot diagrams with image references to their renders.
+     * The deck is scanned once and each distinct diagram is rendered once,
+     * all in a single call to {@link DigraphExpander#expandDiagrams(Map, int)}.
+     * Slides without diagrams are shared with this deck.
+     */
+    public SlideDeck expandDigraphs(DigraphExpander digraphExpander, int concurrency) {
+        String content = getContent();
+        List<DotBlock> blocks = new ArrayList<>();
+        // Dot source to file base, so that each distinct diagram is rendered once
+        Map<String, String> fileBaseByDot = new LinkedHashMap<>();
+        Set<String> usedFileBases = new HashSet<>();
+        for (DotBlockScanner.Block block : DotBlockScanner.scan(content)) {
+            String fileBase = fileBaseByDot.computeIfAbsent(block.graph(), d -> uniqueFileBase(block.name(), usedFileBases));
+            blocks.add(new DotBlock(block.start(), block.end(), fileBase));
+        }
+        logger.info("Found {} dot diagrams, {} distinct", blocks.size(), fileBaseByDot.size());
+        if (blocks.isEmpty()) {
             return this;
         }
 
-        List<Slide> updatedSlides = slides.stream().map(s -> {
-            if (s.number() == slide.number()) {
-                return new Slide(s.number(), newContent);
+        Map<String, String> dotByFileBase = new LinkedHashMap<>();
+        fileBaseByDot.forEach((dot, fileBase) -> dotByFileBase.put(fileBase, dot));
+        Map<String, String> diagramFiles = digraphExpander.expandDiagrams(dotByFileBase, concurrency);
+
+        StringBuilder result = new StringBuilder(content.length());
+        int position = 0;
+        for (DotBlock block : blocks) {
+            result.append(content, position, block.start())
+                    .append("\n![Diagram](./")
+                    .append(diagramFiles.get(block.fileBase()))
+                    .append(")\n");
+            position = block.end();
+        }
+        result.append(content, position, content.length());
+        logger.info("Replaced {} dot diagrams", blocks.size());
+        return new SlideDeck(Index.parse(result.toString(), index()), version + 1);
+    }
+
+    /**
+     * Diagrams with the same name but different content must not overwrite each other
+     */
+    private static String uniqueFileBase(String name, Set<String> usedFileBases) {
+        String fileBase = name;
+        for (int i = 2; !usedFileBases.add(fileBase); i++) {
+            fileBase = name + "_" + i;
+        }
+        return fileBase;
+    }
+
+    private Index index() {
+        Index parsed = index;
+        if (parsed == null) {
+            synchronized (this) {
+                parsed = index;
+                if (parsed == null) {
+                    parsed = Index.parse(deck, null);
+                    index = parsed;
+                    deck = null;
+                }
+            }
+        }
+        return parsed;
+    }
+
+    /**
+     * Create the next version of a deck in the standard layout with new content for some
+     * of its parts, where part 0 is the header and part n is slide n. Whitespace around new
+     * content moves into the text between parts, as it would on parsing. If a part would not
+     * parse back to a single part, for example because new content contains a separator or
+     * the header is blank, render and re-parse the deck so that behaviour is the same as re-parsing.
+     */
+    private SlideDeck derive(Index current, Map<Integer, String> newParts) {
+        Index standard = Index.standard(current.header(), current.slides());
+        if (!newParts.values().stream().allMatch(SlideDeck::isSinglePart)
+                || (!newParts.containsKey(0) && !isSinglePart(standard.lead()))) {
+            List<String> parts = new ArrayList<>(standard.slides().size() + 1);
+            parts.add(standard.lead());
+            standard.slides().forEach(slide -> parts.add(slide.content()));
+            newParts.forEach(parts::set);
+            return new SlideDeck(Index.parse(Index.render(parts, standard.gaps()), current), version + 1);
+        }
+        String[] lead = {standard.lead()};
+        List<Slide> slides = new ArrayList<>(standard.slides());
+        List<String> gaps = new ArrayList<>(standard.gaps());
+        newParts.forEach((part, content) -> {
+            int start = trimStart(content, 0, content.length());
+            int end = trimEnd(content, start, content.length());
+            if (start > 0) {
+                gaps.set(part, gaps.get(part) + content.substring(0, start));
+            }
+            if (end < content.length()) {
+                gaps.set(part + 1, content.substring(end) + gaps.get(part + 1));
+            }
+            if (part == 0) {
+                lead[0] = content.substring(start, end);
             } else {
-                return s;
+                slides.set(part - 1, new Slide(part, content.substring(start, end)));
             }
-        }).collect(Collectors.toList());
+        });
+        return new SlideDeck(new Index(lead[0], true, List.copyOf(slides), List.copyOf(gaps)), version + 1);
+    }
 
-        String currentHeader = header();
-        String slideContents = updatedSlides.stream().map(Slide::content).collect(Collectors.joining("\n---\n"));
+    /**
+     * Would this content parse as exactly one part of a deck?
+     */
+    private static boolean isSinglePart(String content) {
+        return content != null
+                && !content.isBlank()
+                && !SLIDE_SEPARATOR.matcher(content).find();
+    }
 
-        return new SlideDeck("---\n" + currentHeader + "\n---\n" + slideContents + "\n");
+    private static int trimStart(String s, int start, int end) {
+        while (start < end && TRIM_CHARS.indexOf(s.charAt(start)) >= 0) {
+            start++;
+        }
+        return start;
     }
 
-    public SlideDeck expandDigraphs(DigraphExpander digraphExpander) {
-        String result = getContent();
-        Pattern dotBlockRegex = Pattern.compile("(```)?dot\\s*digraph\\s+(\\w+)\\s+(\\{[\\s\\S;]*?\\})\\s*(```)?", Pattern.DOTALL);
-        Matcher matches = dotBlockRegex.matcher(getContent());
-
-        logger.info("Found {} regex matches",
-                dotBlockRegex.matcher(getContent()).results().count());
-
-        int replacedDiagrams = 0;
-        while (matches.find()) {
-            String dotString = matches.group(3);
-            String diagramName = matches.group(2);
-
-            // Fixed: Correct parameter order to match Kotlin version
-            String diagramFile = digraphExpander.expandDiagram(diagramName, "digraph " + dotString);
-            String imageReference = "\n![Diagram](./" + diagramFile + ")\n";
-            result = result.replace(matches.group(0), imageReference);
-            replacedDiagrams++;
-            logger.info("Replaced dot diagram {} with\n{}", diagramFile, matches.group(0));
+    private static int trimEnd(String s, int start, int end) {
+        while (end > start && TRIM_CHARS.indexOf(s.charAt(end - 1)) >= 0) {
+            end--;
+        }
+        return end;
+    }
+
+    private record DotBlock(int start, int end, String fileBase) {
+    }
+
+    /**
+     * Parsed deck. The parts are the trimmed, non-blank text between separators: the lead,
+     * which is the header if the deck starts with a separator and is otherwise ignored,
+     * followed by the slides. Gaps hold the exact text around the parts, one more than
+     * there are parts, so rendering gives back the text that was parsed.
+     * Gaps equal to a standard separator share one string, as nearly all of them are.
+     *
+     * @param lead null if there are no parts
+     */
+    private record Index(String lead, boolean hasHeader, List<Slide> slides, List<String> gaps) {
+
+        static final Index EMPTY = new Index(null, false, List.of(), List.of(""));
+
+        /**
+         * Parse text, sharing slides and slide content with an earlier version where they are unchanged
+         *
+         * @param previous may be null
+         */
+        static Index parse(String deck, Index previous) {
+            if (deck == null) {
+                return EMPTY;
+            }
+            List<String> parts = new ArrayList<>();
+            List<String> gaps = new ArrayList<>();
+            int gapStart = 0;
+            int position = 0;
+            Matcher separator = SLIDE_SEPARATOR.matcher(deck);
+            while (position <= deck.length()) {
+                boolean found = separator.find();
+                int end = found ? separator.start() : deck.length();
+                int partStart = trimStart(deck, position, end);
+                int partEnd = trimEnd(deck, partStart, end);
+                String part = deck.substring(partStart, partEnd);
+                if (!part.isBlank()) {
+                    gaps.add(shared(deck.substring(gapStart, partStart)));
+                    parts.add(part);
+                    gapStart = partEnd;
+                }
+                if (!found) {
+                    break;
+                }
+                position = separator.end();
+            }
+            gaps.add(shared(deck.substring(gapStart)));
+            if (parts.isEmpty()) {
+                return new Index(null, false, List.of(), List.copyOf(gaps));
+            }
+
+            List<Slide> previousSlides = previous == null ? List.of() : previous.slides();
+            Map<String, String> previousContents = new HashMap<>();
+            previousSlides.forEach(slide -> previousContents.put(slide.content(), slide.content()));
+            List<Slide> slides = new ArrayList<>(parts.size() - 1);
+            for (int i = 1; i < parts.size(); i++) {
+                String content = parts.get(i);
+                Slide earlier = i <= previousSlides.size() ? previousSlides.get(i - 1) : null;
+                slides.add(earlier != null && earlier.content().equals(content)
+                        ? earlier
+                        : new Slide(i, previousContents.getOrDefault(content, content)));
+            }
+            boolean hasHeader = deck.trim().startsWith("---");
+            return new Index(parts.get(0), hasHeader, List.copyOf(slides), List.copyOf(gaps));
+        }
+
+        /**
+         * Header and slides in the standard layout
+         */
+        static Index standard(String header, List<Slide> slides) {
+            List<String> gaps = new ArrayList<>(slides.size() + 2);
+            gaps.add(LEADING_SEPARATOR);
+            slides.forEach(slide -> gaps.add(SEPARATOR));
+            gaps.add(TRAILING_NEWLINE);
+            return new Index(header, true, slides, List.copyOf(gaps));
+        }
+
+        /**
+         * The standard separator equal to this gap if there is one, so parsed decks don't each hold a copy
+         */
+        private static String shared(String gap) {
+            return switch (gap) {
+                case SEPARATOR -> SEPARATOR;
+                case LEADING_SEPARATOR -> LEADING_SEPARATOR;
+                case TRAILING_NEWLINE -> TRAILING_NEWLINE;
+                default -> gap;
+            };
+        }
+
+        String header() {
+            return hasHeader ? lead : "";
+        }
+
+        String render() {
+            if (lead == null) {
+                return gaps.get(0);
+            }
+            List<String> parts = new ArrayList<>(slides.size() + 1);
+            parts.add(lead);
+            slides.forEach(slide -> parts.add(slide.content()));
+            return render(parts, gaps);
+        }
+
+        static String render(List<String> parts, List<String> gaps) {
+            int length = 0;
+            for (String part : parts) {
+                length += part.length();
+            }
+            for (String gap : gaps) {
+                length += gap.length();
+            }
+            StringBuilder text = new StringBuilder(length);
+            for (int i = 0; i < parts.size(); i++) {
+                text.append(gaps.get(i)).append(parts.get(i));
+            }
+            return text.append(gaps.get(parts.size())).toString();
         }
-        logger.info("Replaced {} dot diagrams", replacedDiagrams);
-        return new SlideDeck(result);
     }
 }
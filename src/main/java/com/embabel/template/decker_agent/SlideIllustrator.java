@@ -0,0 +1,212 @@
+package com.embabel.template.decker_agent;
+
+import com.embabel.agent.api.common.PromptRunner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Adds illustrations to the slides of a deck.
+ * Slides are sent to the LLM in chunks, with a bounded number of calls in flight.
+ * A chunk that fails or times out keeps its original slides.
+ */
+class SlideIllustrator {
+
+    private final Logger logger = LoggerFactory.getLogger(SlideIllustrator.class);
+
+    /**
+     * The LLM calls made to illustrate slides
+     */
+    interface Illustrator {
+
+        String generateText(String prompt);
+
+        <T> T createObject(String prompt, Class<T> outputClass);
+    }
+
+    private final Illustrator illustrator;
+    private final LlmConcurrencyLimiter llmLimiter;
+    private final String brief;
+    private final PresentationMakerProperties properties;
+
+    SlideIllustrator(PromptRunner illustrator, LlmConcurrencyLimiter llmLimiter, String brief, PresentationMakerProperties properties) {
+        this(new Illustrator() {
+            @Override
+            public String generateText(String prompt) {
+                return illustrator.generateText(prompt);
+            }
+
+            @Override
+            public <T> T createObject(String prompt, Class<T> outputClass) {
+                return illustrator.createObject(prompt, outputClass);
+            }
+        }, llmLimiter, brief, properties);
+    }
+
+    SlideIllustrator(Illustrator illustrator, LlmConcurrencyLimiter llmLimiter, String brief, PresentationMakerProperties properties) {
+        this.illustrator = illustrator;
+        this.llmLimiter = llmLimiter;
+        this.brief = brief;
+        this.properties = properties;
+    }
+
+    public SlideDeck illustrate(SlideDeck deck) {
+        List<Slide> slides = deck.slides();
+        int chunkSize = Math.max(1, properties.getSlidesPerIllustrationCall());
+        List<List<Slide>> chunks = new ArrayList<>();
+        for (int i = 0; i < slides.size(); i += chunkSize) {
+            chunks.add(slides.subList(i, Math.min(i + chunkSize, slides.size())));
+        }
+        logger.info("Illustrating {} slides in {} calls of up to {} slides, {} at a time",
+                slides.size(), chunks.size(), chunkSize, properties.getIllustrationConcurrency());
+
+        List<List<Slide>> illustratedChunks = new ArrayList<>(chunks.size());
+        // Not closed with try-with-resources, as close() would wait for timed out calls that ignore interruption
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            Semaphore calls = new Semaphore(Math.max(1, properties.getIllustrationConcurrency()), true);
+            List<Illustration> illustrations = new ArrayList<>(chunks.size());
+            for (List<Slide> chunk : chunks) {
+                CompletableFuture<Long> started = new CompletableFuture<>();
+                Future<List<Slide>> result = executor.submit(() -> {
+                    try {
+                        calls.acquire();
+                        try {
+                            // The LLM permit is held as long as the call runs, even past its timeout
+                            return llmLimiter.call("illustration", () -> {
+                                started.complete(System.nanoTime());
+                                return illustrateChunk(chunk);
+                            });
+                        } finally {
+                            calls.release();
+                        }
+                    } finally {
+                        // Don't leave the caller waiting for a call that never started
+                        started.complete(System.nanoTime());
+                    }
+                });
+                illustrations.add(new Illustration(chunk, started, result));
+            }
+            for (Illustration illustration : illustrations) {
+                illustratedChunks.add(await(illustration));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Map<Integer, String> newContents = new HashMap<>();
+        illustratedChunks.forEach(chunk -> chunk.forEach(slide -> newContents.put(slide.number(), slide.content())));
+        return deck.replaceSlides(newContents);
+    }
+
+    /**
+     * A chunk being illustrated
+     *
+     * @param started completed with the {@link System#nanoTime()} the LLM call started
+     */
+    private record Illustration(List<Slide> chunk, CompletableFuture<Long> started, Future<List<Slide>> result) {
+    }
+
+    /**
+     * Wait for the chunk's LLM call to start, then for up to its timeout,
+     * so time spent queueing for a permit doesn't count against the timeout
+     *
+     * @return the illustrated chunk, or the original if illustrating it failed or timed out
+     */
+    private List<Slide> await(Illustration illustration) {
+        List<Slide> chunk = illustration.chunk();
+        long timeoutNanos = properties.getIllustrationTimeoutPerSlide().toNanos() * chunk.size();
+        try {
+            long remainingNanos = illustration.started().get() + timeoutNanos - System.nanoTime();
+            return illustration.result().get(Math.max(0, remainingNanos), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            illustration.result().cancel(true);
+            logger.warn("Illustrating slides {} timed out after {}ms: keeping original slides",
+                    numbers(chunk), TimeUnit.NANOSECONDS.toMillis(timeoutNanos));
+        } catch (ExecutionException e) {
+            logger.warn("Illustrating slides {} failed: keeping original slides", numbers(chunk), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            illustration.result().cancel(true);
+        }
+        return chunk;
+    }
+
+    private List<Slide> illustrateChunk(List<Slide> chunk) {
+        if (chunk.size() == 1) {
+            Slide slide = chunk.get(0);
+            return List.of(new Slide(slide.number(), illustrator.generateText(singleSlidePrompt(slide))));
+        }
+        IllustratedSlides illustrated = illustrator.createObject(multiSlidePrompt(chunk), IllustratedSlides.class);
+        if (illustrated == null || illustrated.slides() == null || illustrated.slides().size() != chunk.size()) {
+            logger.warn("LLM returned the wrong number of slides for slides {}: keeping original slides", numbers(chunk));
+            return chunk;
+        }
+        List<Slide> result = new ArrayList<>(chunk.size());
+        for (int i = 0; i < chunk.size(); i++) {
+            Slide original = chunk.get(i);
+            String newContent = illustrated.slides().get(i);
+            result.add(newContent == null || newContent.isBlank() ? original : new Slide(original.number(), newContent));
+        }
+        return result;
+    }
+
+    private String singleSlidePrompt(Slide slide) {
+        return "Take the following slide in MARP format.\n" +
+                "Overall objective: " + brief + "\n\n" +
+                "If the slide contains an important point, try to add an image to it\n" +
+                "Check that the image is available.\n" +
+                "Don't make the image too big.\n" +
+                "Put the image on the right.\n" +
+                "Make no other changes.\n" +
+                "Do not perform any web research besides seeking images.\n" +
+                "Return nothing but the amended slide content (the content between <slide></slide>).\n" +
+                "Do not ask any questions.\n" +
+                "If you don't think an image is needed, return the slide unchanged.\n\n" +
+                "<slide>\n" +
+                slide.content() + "\n" +
+                "</slide>";
+    }
+
+    private String multiSlidePrompt(List<Slide> chunk) {
+        StringBuilder prompt = new StringBuilder(
+                "Take the following " + chunk.size() + " slides in MARP format.\n" +
+                        "Overall objective: " + brief + "\n\n" +
+                        "If a slide contains an important point, try to add an image to it\n" +
+                        "Check that the image is available.\n" +
+                        "Don't make the image too big.\n" +
+                        "Put the image on the right.\n" +
+                        "Make no other changes.\n" +
+                        "Do not perform any web research besides seeking images.\n" +
+                        "Return the amended content of every slide (the content between <slide></slide>),\n" +
+                        "one entry per slide, in the same order.\n" +
+                        "Do not ask any questions.\n" +
+                        "If you don't think an image is needed, return the slide unchanged.\n\n");
+        for (Slide slide : chunk) {
+            prompt.append("<slide>\n").append(slide.content()).append("\n</slide>\n");
+        }
+        return prompt.toString();
+    }
+
+    private static List<Integer> numbers(List<Slide> chunk) {
+        return chunk.stream().map(Slide::number).toList();
+    }
+
+    /**
+     * Structured LLM output for a chunk of illustrated slides
+     */
+    record IllustratedSlides(List<String> slides) {
+    }
+}
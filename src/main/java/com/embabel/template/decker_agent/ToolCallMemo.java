@@ -0,0 +1,133 @@
+package com.embabel.template.decker_agent;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Memoises read-only tool calls shared by concurrent LLM conversations.
+ * Identical calls in flight at the same time share one execution, and results are
+ * kept in a bounded least recently used map. Failures are passed to every waiting
+ * caller but not remembered, so a later call tries again.
+ */
+class ToolCallMemo {
+
+    private final Logger logger = LoggerFactory.getLogger(ToolCallMemo.class);
+
+    private final int maxEntries;
+    private final Map<Key, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final LinkedHashMap<Key, Object> results;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong sharedCalls = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final PresentationMetrics metrics = PresentationMetrics.global();
+
+    private record Key(String tool, List<?> arguments) {
+    }
+
+    /**
+     * @param maxEntries maximum results to remember
+     */
+    ToolCallMemo(int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.results = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Object> eldest) {
+                return size() > ToolCallMemo.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Return the remembered result of this call, wait for an identical call in flight,
+     * or run the call
+     *
+     * @param arguments must have value equality, and may contain nulls
+     */
+    @SuppressWarnings("unchecked")
+    <T> T call(String tool, List<?> arguments, Supplier<T> work) {
+        Key key = new Key(tool, arguments);
+        synchronized (results) {
+            if (results.containsKey(key)) {
+                hits.incrementAndGet();
+                metrics.toolCall(tool, "remembered");
+                logger.debug("Reusing result of {}{}", tool, arguments);
+                return (T) results.get(key);
+            }
+        }
+
+        CompletableFuture<Object> call = new CompletableFuture<>();
+        CompletableFuture<Object> running = inFlight.putIfAbsent(key, call);
+        if (running != null) {
+            sharedCalls.incrementAndGet();
+            metrics.toolCall(tool, "shared");
+            logger.debug("Waiting for identical call to {}{}", tool, arguments);
+            try {
+                return (T) running.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof Error error) {
+                    throw error;
+                }
+                // A checked exception, thrown undeclared by a Kotlin tool, stays wrapped
+                throw e.getCause() instanceof RuntimeException runtimeException ? runtimeException : e;
+            }
+        }
+
+        try {
+            synchronized (results) {
+                // The result may have been remembered after we looked, by a call that has now finished
+                if (results.containsKey(key)) {
+                    hits.incrementAndGet();
+                    metrics.toolCall(tool, "remembered");
+                    Object result = results.get(key);
+                    call.complete(result);
+                    return (T) result;
+                }
+            }
+            misses.incrementAndGet();
+            metrics.toolCall(tool, "run");
+            T result = work.get();
+            synchronized (results) {
+                results.put(key, result);
+            }
+            call.complete(result);
+            return result;
+        } catch (Throwable e) {
+            // Kotlin tools can throw checked exceptions without declaring them,
+            // and waiting callers must see those too or they would wait forever
+            call.completeExceptionally(e);
+            throw ToolCallMemo.<RuntimeException>rethrow(e);
+        } finally {
+            inFlight.remove(key, call);
+        }
+    }
+
+    /**
+     * Rethrow any exception unchanged, including a checked one the tool did not declare
+     */
+    @SuppressWarnings("unchecked")
+    private static <E extends Throwable> E rethrow(Throwable e) throws E {
+        throw (E) e;
+    }
+
+    /**
+     * Tool executions avoided, whether by a remembered result or by sharing a call in flight
+     */
+    long saved() {
+        return hits.get() + sharedCalls.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d calls run, %d saved (%d remembered, %d shared in flight)",
+                misses.get(), saved(), hits.get(), sharedCalls.get());
+    }
+}
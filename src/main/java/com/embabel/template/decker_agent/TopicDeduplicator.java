@@ -0,0 +1,107 @@
+package com.embabel.template.decker_agent;
+
+import com.embabel.agent.domain.library.ResearchTopic;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Merges research topics that overlap before they are researched, without an LLM, so each
+ * subject is researched once. Topics are compared by the Jaccard similarity of the shingles,
+ * single terms and pairs of adjacent terms, of their title and questions.
+ * Each topic joins the first earlier topic it is similar enough to, so merges don't chain
+ * through a series of slightly different topics, and near-duplicate questions are kept once.
+ */
+final class TopicDeduplicator {
+
+    /**
+     * Topics after merging
+     *
+     * @param topics      the merged topics, in the order of their first original topic
+     * @param mergedIndex for each original topic, the index of the merged topic it is part of
+     */
+    record Merged(List<ResearchTopic> topics, int[] mergedIndex) {
+
+        /**
+         * Research calls saved by merging
+         */
+        int callsAvoided() {
+            return mergedIndex.length - topics.size();
+        }
+    }
+
+    private TopicDeduplicator() {
+    }
+
+    /**
+     * @param threshold similarity at or above which topics are merged; above 1 to never merge
+     */
+    static Merged merge(List<ResearchTopic> topics, double threshold) {
+        List<Set<String>> leaders = new ArrayList<>();
+        List<List<ResearchTopic>> clusters = new ArrayList<>();
+        int[] mergedIndex = new int[topics.size()];
+        for (int i = 0; i < topics.size(); i++) {
+            Set<String> shingles = shingles(topics.get(i));
+            int cluster = 0;
+            while (cluster < leaders.size() && similarity(shingles, leaders.get(cluster)) < threshold) {
+                cluster++;
+            }
+            if (cluster == leaders.size()) {
+                leaders.add(shingles);
+                clusters.add(new ArrayList<>());
+            }
+            clusters.get(cluster).add(topics.get(i));
+            mergedIndex[i] = cluster;
+        }
+        List<ResearchTopic> merged = clusters.stream()
+                .map(cluster -> cluster.size() == 1 ? cluster.get(0) : mergeCluster(cluster, threshold))
+                .toList();
+        return new Merged(merged, mergedIndex);
+    }
+
+    private static ResearchTopic mergeCluster(List<ResearchTopic> cluster, double threshold) {
+        List<String> titles = new ArrayList<>();
+        List<String> questions = new ArrayList<>();
+        List<Set<String>> seen = new ArrayList<>();
+        for (ResearchTopic topic : cluster) {
+            titles.add(topic.getTopic());
+            for (String question : topic.getQuestions()) {
+                Set<String> shingles = shingles(question);
+                if (seen.stream().noneMatch(other -> similarity(shingles, other) >= threshold)) {
+                    seen.add(shingles);
+                    questions.add(question);
+                }
+            }
+        }
+        return new ResearchTopic(String.join(" / ", titles), List.copyOf(questions));
+    }
+
+    private static Set<String> shingles(ResearchTopic topic) {
+        return shingles(topic.getTopic() + "\n" + String.join("\n", topic.getQuestions()));
+    }
+
+    static Set<String> shingles(String text) {
+        List<String> terms = ResearchCompactor.terms(text);
+        Set<String> shingles = new HashSet<>(terms);
+        for (int i = 0; i + 1 < terms.size(); i++) {
+            shingles.add(terms.get(i) + " " + terms.get(i + 1));
+        }
+        return shingles;
+    }
+
+    static double similarity(Set<String> a, Set<String> b) {
+        if (a.isEmpty() && b.isEmpty()) {
+            // Nothing to compare, such as a title of short words only
+            return 0;
+        }
+        int common = 0;
+        for (String shingle : a) {
+            if (b.contains(shingle)) {
+                common++;
+            }
+        }
+        return (double) common / (a.size() + b.size() - common);
+    }
+}
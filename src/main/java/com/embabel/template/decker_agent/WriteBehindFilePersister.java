@@ -0,0 +1,226 @@
+package com.embabel.template.decker_agent;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Writes files on a background thread, so agent actions don't wait for disk.
+ * Files are written to a temporary file and renamed into place, so readers never see
+ * a partial file. Content identical to what the file already holds is not written again,
+ * and if a file is saved several times before it is written, only the latest content is.
+ * Call {@link #flush(String, String...)} before anything outside this persister reads the files.
+ */
+@Service
+class WriteBehindFilePersister implements FilePersister {
+
+    private final Logger logger = LoggerFactory.getLogger(WriteBehindFilePersister.class);
+
+    private final PresentationMetrics metrics;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(Thread.ofPlatform()
+            .name("file-persister")
+            .daemon(true)
+            .factory());
+    /**
+     * Content saved but not yet written, by path. Entries are removed once written,
+     * so loading a file always sees the latest content.
+     */
+    private final Map<Path, String> pending = new ConcurrentHashMap<>();
+    /**
+     * Completed when the queued write of a path is done, so flushing a file waits only for that file
+     */
+    private final Map<Path, CompletableFuture<Void>> writes = new ConcurrentHashMap<>();
+    /**
+     * Failed writes not yet reported by a flush, by path. A later successful write of the path clears its failure.
+     */
+    private final Map<Path, IOException> failures = new ConcurrentHashMap<>();
+
+    WriteBehindFilePersister(PresentationMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void saveFile(String directory, String fileName, String content) {
+        Path path = path(directory, fileName);
+        if (pending.put(path, content) == null) {
+            CompletableFuture<Void> written = new CompletableFuture<>();
+            writes.put(path, written);
+            writer.execute(() -> write(path, written));
+        }
+    }
+
+    @Override
+    public String loadFile(String directory, String fileName) {
+        Path path = path(directory, fileName);
+        String unwritten = pending.get(path);
+        if (unwritten != null) {
+            return unwritten;
+        }
+        try {
+            return Files.readString(path);
+        } catch (IOException e) {
+            // File does not exist
+            return null;
+        }
+    }
+
+    /**
+     * Wait until every file saved so far has been written
+     *
+     * @throws UncheckedIOException if a write failed since the last flush
+     */
+    @Override
+    public void flush() {
+        // The writer is single threaded, so this runs after every write queued before it
+        await(writer.submit(() -> {
+        }));
+        List<IOException> failed = new ArrayList<>();
+        for (Path path : failures.keySet()) {
+            IOException failure = failures.remove(path);
+            if (failure != null) {
+                failed.add(failure);
+            }
+        }
+        throwIfAny(failed);
+    }
+
+    /**
+     * Wait until the given files have been written, but not files saved for other decks
+     *
+     * @throws UncheckedIOException if writing one of these files failed since it was last flushed
+     */
+    @Override
+    public void flush(String directory, String... fileNames) {
+        List<IOException> failed = new ArrayList<>();
+        for (String fileName : fileNames) {
+            Path path = path(directory, fileName);
+            CompletableFuture<Void> written = writes.get(path);
+            if (written != null) {
+                await(written);
+            }
+            IOException failure = failures.remove(path);
+            if (failure != null) {
+                failed.add(failure);
+            }
+        }
+        throwIfAny(failed);
+    }
+
+    private static void await(Future<?> written) {
+        try {
+            written.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for files to be written", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static void throwIfAny(List<IOException> failed) {
+        if (!failed.isEmpty()) {
+            UncheckedIOException failure = new UncheckedIOException("Failed to write " + failed.size() + " files", failed.get(0));
+            failed.stream().skip(1).forEach(failure::addSuppressed);
+            throw failure;
+        }
+    }
+
+    private static Path path(String directory, String fileName) {
+        return Path.of(directory).resolve(fileName).toAbsolutePath().normalize();
+    }
+
+    @PreDestroy
+    void close() {
+        try {
+            flush();
+        } finally {
+            writer.shutdown();
+        }
+    }
+
+    private void write(Path path, CompletableFuture<Void> written) {
+        try {
+            String content = pending.get(path);
+            while (content != null) {
+                write(path, content);
+                if (pending.remove(path, content)) {
+                    return;
+                }
+                // Saved again while we were writing, and no other write was queued
+                content = pending.get(path);
+            }
+        } finally {
+            writes.remove(path, written);
+            written.complete(null);
+        }
+    }
+
+    private void write(Path path, String content) {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        // Only the latest content of a path counts, so an earlier failure is dropped
+        failures.remove(path);
+        try {
+            if (isUnchanged(path, bytes)) {
+                logger.debug("Skipping unchanged {}", path);
+                return;
+            }
+            Files.createDirectories(path.getParent());
+            Path temp = Files.createTempFile(path.getParent(), "." + path.getFileName(), ".tmp");
+            try {
+                Files.write(temp, bytes);
+                try {
+                    Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            metrics.bytesWritten(path.getFileName().toString(), bytes.length);
+            logger.debug("Wrote {} bytes to {}", bytes.length, path);
+        } catch (IOException e) {
+            logger.error("Failed to write {}", path, e);
+            failures.put(path, e);
+        }
+    }
+
+    /**
+     * Whether the file already has this content, for example from an earlier stage or run.
+     * Comparing hashes of the file as it is now, rather than of what we last wrote, means
+     * a file edited by hand is still overwritten.
+     */
+    private static boolean isUnchanged(Path path, byte[] bytes) throws IOException {
+        return Files.isRegularFile(path)
+                && Files.size(path) == bytes.length
+                && Arrays.equals(sha256(bytes), sha256(Files.readAllBytes(path)));
+    }
+
+    private static byte[] sha256(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
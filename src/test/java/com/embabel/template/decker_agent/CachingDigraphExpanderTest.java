@@ -0,0 +1,110 @@
+package com.embabel.template.decker_agent;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CachingDigraphExpanderTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final AtomicInteger renders = new AtomicInteger();
+
+    private DigraphExpander fakeRenderer(Path outputDirectory) {
+        return (fileBase, dot) -> {
+            renders.incrementAndGet();
+            try {
+                Files.writeString(outputDirectory.resolve(fileBase + ".svg"), "<svg>" + dot + "</svg>");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return fileBase + ".svg";
+        };
+    }
+
+    @Test
+    void testHitDoesNotCallDelegate() throws IOException {
+        Path out = Files.createDirectories(tempDir.resolve("out"));
+        var expander = new CachingDigraphExpander(fakeRenderer(out), "DOT", tempDir.resolve("cache"), out, "svg", 1_000_000);
+
+        assertEquals("first.svg", expander.expandDiagram("first", "digraph { a -> b }"));
+        assertEquals("second.svg", expander.expandDiagram("second", "  digraph { a -> b }\r\n"));
+
+        assertEquals(1, renders.get());
+        assertEquals(Files.readString(out.resolve("first.svg")), Files.readString(out.resolve("second.svg")));
+    }
+
+    @Test
+    void testMissDoesNotOverwriteCachedRender() throws IOException {
+        Path out = Files.createDirectories(tempDir.resolve("out"));
+        var expander = new CachingDigraphExpander(fakeRenderer(out), "DOT", tempDir.resolve("cache"), out, "svg", 1_000_000);
+
+        expander.expandDiagram("d", "digraph { a -> b }");
+        expander.expandDiagram("d", "digraph { a -> b }");
+        expander.expandDiagram("d", "digraph { c -> d }");
+        expander.expandDiagram("e", "digraph { a -> b }");
+
+        assertEquals(2, renders.get());
+        assertEquals("<svg>digraph { a -> b }</svg>", Files.readString(out.resolve("e.svg")));
+    }
+
+    @Test
+    void testEvictsWhenOverSize() throws IOException {
+        Path out = Files.createDirectories(tempDir.resolve("out"));
+        Path cache = tempDir.resolve("cache");
+        var expander = new CachingDigraphExpander(fakeRenderer(out), "DOT", cache, out, "svg", 40);
+
+        expander.expandDiagram("a", "digraph { a -> b }");
+        Path older = cache.resolve(expander.cacheKey("digraph { a -> b }") + ".svg");
+        Files.setLastModifiedTime(older, FileTime.fromMillis(0));
+        expander.expandDiagram("b", "digraph { c -> d }");
+
+        try (var files = Files.list(cache)) {
+            assertEquals(1, files.count());
+        }
+        assertFalse(Files.exists(older));
+    }
+
+    @Test
+    void testEvictionSkipsEntriesThatDisappear() throws IOException {
+        Path out = Files.createDirectories(tempDir.resolve("out"));
+        Path cache = Files.createDirectories(tempDir.resolve("cache"));
+        // Reading the attributes of a dangling link fails as for an entry another run has just evicted
+        Files.createSymbolicLink(cache.resolve("gone.svg"), cache.resolve("missing.svg"));
+        var expander = new CachingDigraphExpander(fakeRenderer(out), "DOT", cache, out, "svg", 40);
+
+        assertEquals("a.svg", expander.expandDiagram("a", "digraph { a -> b }"));
+        assertEquals("b.svg", expander.expandDiagram("b", "digraph { c -> d }"));
+        expander.expandDiagram("c", "digraph { c -> d }");
+
+        assertEquals(2, renders.get());
+        assertTrue(Files.exists(cache.resolve(expander.cacheKey("digraph { c -> d }") + ".svg")));
+    }
+
+    @Test
+    void testRenderersDoNotShareEntries() throws IOException {
+        Path out = Files.createDirectories(tempDir.resolve("out"));
+        Path cache = tempDir.resolve("cache");
+        var dot = new CachingDigraphExpander(fakeRenderer(out), "DOT", cache, out, "svg", 1_000_000);
+        var java = new CachingDigraphExpander(fakeRenderer(out), "JAVA", cache, out, "svg", 1_000_000);
+
+        dot.expandDiagram("a", "digraph { a -> b }");
+        java.expandDiagram("a", "digraph { a -> b }");
+        java.expandDiagram("a", "digraph { a -> b }");
+
+        assertEquals(2, renders.get());
+        assertNotEquals(dot.cacheKey("digraph { a -> b }"), java.cacheKey("digraph { a -> b }"));
+    }
+}
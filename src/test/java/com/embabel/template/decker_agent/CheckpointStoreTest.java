@@ -0,0 +1,146 @@
+package com.embabel.template.decker_agent;
+
+import com.embabel.agent.prompt.persona.CoStar;
+import com.embabel.common.ai.prompt.PromptContributionLocation;
+import com.embabel.template.decker_agent.CheckpointStore.Stage;
+import com.embabel.template.decker_agent.PresentationScheduler.Step;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CheckpointStoreTest {
+
+    @TempDir
+    Path directory;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    private static PresentationRequest request(String brief, Map<String, ImageInfo> images) {
+        return new PresentationRequest(10, "Java developer", brief, null,
+                "/tmp/decks", "deck.md", "---\nmarp: true\n---", images, false,
+                new CoStar("Conference talk", "Explain virtual threads", "Technical", "Friendly",
+                        "Java developers", "Slides", PromptContributionLocation.BEGINNING));
+    }
+
+    private final PresentationRequest request = request("Virtual threads in practice", Map.of());
+
+    private final PresentationScheduler scheduler = new PresentationScheduler();
+
+    /**
+     * Presentation maker with only what resuming and checkpointing stages uses
+     */
+    private PresentationMaker presentationMaker(CheckpointStore store) {
+        return new PresentationMaker(null, null, null, null, store, null, null, null, scheduler);
+    }
+
+    @Test
+    void testSaveInvalidatesLaterStages() {
+        CheckpointStore store = new CheckpointStore(directory, objectMapper);
+        store.save(request, Stage.TOPICS, "topics");
+        store.save(request, Stage.RESEARCH, "research");
+        store.save(request, Stage.DECK, "deck");
+
+        store.save(request, Stage.RESEARCH, "new research");
+
+        assertEquals("topics", store.load(request, Stage.TOPICS, String.class));
+        assertEquals("new research", store.load(request, Stage.RESEARCH, String.class));
+        assertNull(store.load(request, Stage.DECK, String.class), "the deck was built from the old research");
+    }
+
+    @Test
+    void testInvalidateRecomputesFromTheEarliestStage() {
+        CheckpointStore store = new CheckpointStore(directory, objectMapper);
+        for (Stage stage : Stage.values()) {
+            store.save(request, stage, stage.name());
+        }
+
+        store.invalidate(request, Stage.parse("illustrations, Deck"));
+
+        assertEquals("TOPICS", store.load(request, Stage.TOPICS, String.class));
+        assertEquals("RESEARCH", store.load(request, Stage.RESEARCH, String.class));
+        assertNull(store.load(request, Stage.DECK, String.class));
+        assertNull(store.load(request, Stage.DIAGRAMS, String.class));
+        assertNull(store.load(request, Stage.ILLUSTRATIONS, String.class));
+    }
+
+    @Test
+    void testParseStages() {
+        assertEquals(Set.of(), Stage.parse(null));
+        assertEquals(Set.of(), Stage.parse(" "));
+        assertEquals(EnumSet.allOf(Stage.class), Stage.parse(" ALL "));
+        assertEquals(EnumSet.of(Stage.RESEARCH, Stage.DECK), Stage.parse("research , DECK"));
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> Stage.parse("research,slides"));
+        assertEquals("Unknown stage 'slides', expected one of topics, research, deck, diagrams, illustrations or all",
+                e.getMessage());
+    }
+
+    @Test
+    void testIgnoresCorruptCheckpoint() throws Exception {
+        CheckpointStore store = new CheckpointStore(directory, objectMapper);
+        store.save(request, Stage.TOPICS, "topics");
+        Files.writeString(directory.resolve(store.requestKey(request)).resolve("topics.json"), "{\"truncated");
+
+        assertNull(store.load(request, Stage.TOPICS, String.class));
+        assertEquals("recomputed", presentationMaker(store).resumeOrRun(request, Stage.TOPICS, String.class, () -> "recomputed"));
+        assertEquals("recomputed", store.load(request, Stage.TOPICS, String.class));
+    }
+
+    @Test
+    void testResumesFromCheckpointWithoutRunningTheStage() {
+        CheckpointStore store = new CheckpointStore(directory, objectMapper);
+        store.save(request, Stage.TOPICS, "topics");
+
+        assertEquals("topics", presentationMaker(store).resumeOrRun(request, Stage.TOPICS, String.class,
+                () -> fail("a checkpointed stage must not run again")));
+    }
+
+    @Test
+    void testRunsAndSavesStageWithoutCheckpoint() {
+        CheckpointStore store = new CheckpointStore(directory, objectMapper);
+        store.save(request, Stage.TOPICS, "topics");
+
+        assertEquals("research", presentationMaker(store).resumeOrRun(request, Stage.RESEARCH, String.class, () -> "research"));
+
+        assertEquals("research", store.load(request, Stage.RESEARCH, String.class));
+    }
+
+    @Test
+    void testDoesNotSaveDegradedOutput() {
+        CheckpointStore store = new CheckpointStore(directory, objectMapper);
+
+        String research = presentationMaker(store).resumeOrRun(request, Stage.RESEARCH, String.class, () -> {
+            scheduler.schedule(request).markIncomplete(Step.RESEARCH);
+            return "partial research";
+        });
+
+        assertEquals("partial research", research);
+        assertNull(store.load(request, Stage.RESEARCH, String.class), "a later run should do the full research");
+    }
+
+    @Test
+    void testRequestKeyIsStableUnderMapEntryOrder() {
+        CheckpointStore store = new CheckpointStore(directory, objectMapper);
+        Map<String, ImageInfo> images = new LinkedHashMap<>();
+        images.put("logo", new ImageInfo("https://example.com/logo.png", "on the title slide"));
+        images.put("diagram", new ImageInfo("https://example.com/diagram.png", "when explaining carrier threads"));
+        Map<String, ImageInfo> reordered = new LinkedHashMap<>();
+        reordered.put("diagram", images.get("diagram"));
+        reordered.put("logo", images.get("logo"));
+
+        String key = store.requestKey(request("Virtual threads in practice", images));
+
+        assertEquals(key, store.requestKey(request("Virtual threads in practice", reordered)));
+        assertEquals(key, new CheckpointStore(directory, objectMapper).requestKey(request("Virtual threads in practice", images)));
+        assertNotEquals(key, store.requestKey(request("Structured concurrency", images)));
+    }
+}
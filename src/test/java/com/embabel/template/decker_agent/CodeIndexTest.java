@@ -0,0 +1,95 @@
+package com.embabel.template.decker_agent;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CodeIndexTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testExtractsOnlyRequiredLiterals() {
+        assertEquals(List.of("class", "Project"), CodeIndex.requiredLiterals(Pattern.compile("class\\s+Project\\b")));
+        assertEquals(List.of("findPattern"), CodeIndex.requiredLiterals(Pattern.compile("findPatternX?\\(")));
+        assertEquals(List.of("Deck"), CodeIndex.requiredLiterals(Pattern.compile("(Slide|Deck)?Deck[A-Z]*")));
+        assertEquals(List.of("a.b"), CodeIndex.requiredLiterals(Pattern.compile("\\Qa.b\\E")));
+        assertEquals(List.of(), CodeIndex.requiredLiterals(Pattern.compile("foo|bar")));
+        assertEquals(List.of(), CodeIndex.requiredLiterals(Pattern.compile("[abc]+.*\\w{3}")));
+        // Escapes with operands must not leave their operands behind as required text
+        assertEquals(List.of(), CodeIndex.requiredLiterals(Pattern.compile("\\x41BCD")));
+        assertEquals(List.of(), CodeIndex.requiredLiterals(Pattern.compile("\\x{41}BCD")));
+        assertEquals(List.of(), CodeIndex.requiredLiterals(Pattern.compile("\\u0041BCD")));
+        assertEquals(List.of(), CodeIndex.requiredLiterals(Pattern.compile("\\0101BCD")));
+        assertEquals(List.of(), CodeIndex.requiredLiterals(Pattern.compile("\\cAxyz")));
+        assertEquals(List.of(), CodeIndex.requiredLiterals(Pattern.compile("(?<n>ab)\\k<n>cde")));
+        assertEquals(List.of(), CodeIndex.requiredLiterals(Pattern.compile("\\N{LATIN CAPITAL LETTER A}BCD")));
+        assertEquals(List.of("Deck"), CodeIndex.requiredLiterals(Pattern.compile("\\p{Lu}Deck")));
+        assertEquals(List.of("Slide", "Deck"), CodeIndex.requiredLiterals(Pattern.compile("Slide\\pLDeck")));
+    }
+
+    @Test
+    void testFindsMatchesOnlyInCandidateFiles() throws Exception {
+        Path root = Files.createDirectories(directory.resolve("project"));
+        Files.createDirectories(root.resolve("src"));
+        Files.createDirectories(root.resolve("target"));
+        Files.writeString(root.resolve("src/Deck.java"), "package x;\n\nclass SlideDeck {\n}\n");
+        Files.writeString(root.resolve("src/Other.java"), "class Other {\n    // slidedeck mentioned in lower case\n}\n");
+        Files.writeString(root.resolve("target/Copy.java"), "class SlideDeck {}\n");
+        Files.write(root.resolve("src/image.png"), new byte[]{'c', 'l', 'a', 's', 's', ' ', 'S', 0, 1});
+
+        CodeIndex index = new CodeIndex(root, directory.resolve("index/project.idx"));
+
+        assertEquals(
+                List.of(new CodeIndex.Match("src/Deck.java", 3, "class SlideDeck {")),
+                index.search(Pattern.compile("class\\s+SlideDeck\\b"), path -> true, false)
+        );
+        assertEquals(2, index.search(Pattern.compile("(?i)slidedeck"), path -> true, true).size());
+        assertEquals(List.of(), index.search(Pattern.compile("SlideDeck"), path -> path.endsWith(".kt"), false));
+        assertEquals(1, index.search(Pattern.compile("\\x53lideDeck"), path -> true, false).size());
+    }
+
+    @Test
+    void testSkipsBuildOutputOnlyAtProjectAndModuleRoots() throws Exception {
+        Path root = Files.createDirectories(directory.resolve("project"));
+        Files.createDirectories(root.resolve("src/main/java/com/x/build"));
+        Files.createDirectories(root.resolve("module/target"));
+        Files.createDirectories(root.resolve("build"));
+        Files.writeString(root.resolve("module/pom.xml"), "<project/>\n");
+        Files.writeString(root.resolve("src/main/java/com/x/build/Builder.java"), "class Builder {}\n");
+        Files.writeString(root.resolve("module/target/Builder.java"), "class Builder {}\n");
+        Files.writeString(root.resolve("build/Builder.java"), "class Builder {}\n");
+
+        CodeIndex index = new CodeIndex(root, directory.resolve("index/project.idx"));
+
+        assertEquals(
+                List.of(new CodeIndex.Match("src/main/java/com/x/build/Builder.java", 1, "class Builder {}")),
+                index.search(Pattern.compile("class Builder"), path -> true, false)
+        );
+    }
+
+    @Test
+    void testRefreshesChangedFilesFromSavedIndex() throws Exception {
+        Path root = Files.createDirectories(directory.resolve("project"));
+        Path file = root.resolve("Notes.md");
+        Files.writeString(file, "nothing to see\n");
+        Path indexFile = directory.resolve("index/project.idx");
+        assertEquals(List.of(), new CodeIndex(root, indexFile).search(Pattern.compile("Marp"), path -> true, false));
+        assertTrue(Files.isRegularFile(indexFile));
+
+        Files.writeString(file, "rendered with Marp\n");
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now().plusSeconds(60)));
+        Files.writeString(root.resolve("New.md"), "Marp again\n");
+
+        assertEquals(2, new CodeIndex(root, indexFile).search(Pattern.compile("Marp"), path -> true, false).size());
+    }
+}
@@ -0,0 +1,103 @@
+package com.embabel.template.decker_agent;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Per-diagram latency of the diagram backends.
+ * The dot backend needs Graphviz on the path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DigraphExpanderBenchmark {
+
+    private static final String PIPELINE = """
+            digraph G {
+                rankdir=LR;
+                node [shape=box, style=filled, fillcolor=lightblue];
+                Research -> Outline -> Slides -> Diagrams -> Illustrations -> Deck;
+                Slides -> Review [style=dashed, label="feedback"];
+                Review -> Slides;
+            }
+            """;
+
+    private static final String CLUSTERS = """
+            digraph Architecture {
+                compound=true;
+                node [shape=box];
+                subgraph cluster_client {
+                    label="Client";
+                    style=filled; color=lightgrey;
+                    Browser; Shell [shape=ellipse];
+                }
+                subgraph cluster_server {
+                    label="Server";
+                    subgraph cluster_agents {
+                        label="Agents";
+                        Planner -> Researcher;
+                        Planner -> Writer;
+                    }
+                    Api -> Planner;
+                    Writer -> Store [label="persist"];
+                    Store [shape=cylinder];
+                }
+                Browser -> Api;
+                Shell -> Api;
+                Researcher -> Web [style=dotted];
+                Web [shape=diamond, label="Web\\nSearch"];
+            }
+            """;
+
+    @Param({"java", "dot"})
+    public String backend;
+
+    @Param({"pipeline", "clusters"})
+    public String diagram;
+
+    private Path directory;
+    private DigraphExpander expander;
+    private String dot;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("digraph-benchmark");
+        expander = backend.equals("java")
+                ? new JavaDigraphExpander(directory.toString())
+                : new DotCliDigraphExpander(directory.toString(), false);
+        dot = diagram.equals("pipeline") ? PIPELINE : CLUSTERS;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public String expandDiagram() {
+        return expander.expandDiagram("diagram", dot);
+    }
+}
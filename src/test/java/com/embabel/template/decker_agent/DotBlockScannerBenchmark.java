@@ -0,0 +1,62 @@
+package com.embabel.template.decker_agent;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Finding dot diagrams in synthetic decks with {@link DotBlockScanner},
+ * against the lazy regex it replaced, which stops at the first closing brace.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DotBlockScannerBenchmark {
+
+    private static final Pattern LAZY_REGEX = Pattern.compile("(```)?dot\\s*digraph\\s+(\\w+)\\s+(\\{[\\s\\S;]*?\\})\\s*(```)?", Pattern.DOTALL);
+
+    @Param({"100", "1000", "5000"})
+    public int slides;
+
+    @Param({"10", "50"})
+    public int diagramPercent;
+
+    private String text;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        text = SlideDeckBenchmark.deck(slides, diagramPercent);
+    }
+
+    @Benchmark
+    public List<DotBlockScanner.Block> scanner() {
+        return DotBlockScanner.scan(text);
+    }
+
+    @Benchmark
+    public int lazyRegex() {
+        int found = 0;
+        Matcher matcher = LAZY_REGEX.matcher(text);
+        while (matcher.find()) {
+            found++;
+        }
+        return found;
+    }
+}
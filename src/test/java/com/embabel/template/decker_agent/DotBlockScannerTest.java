@@ -0,0 +1,54 @@
+package com.embabel.template.decker_agent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DotBlockScannerTest {
+
+    @Test
+    void testIncludesNestedSubgraphsAndAttributeBlocks() {
+        String graph = """
+                {
+                    node [shape=box];
+                    subgraph cluster_a {
+                        label="A";
+                        subgraph cluster_b { x -> y [label="e"]; }
+                    }
+                    y -> z;
+                }""";
+        String text = "# Architecture\n\n```dot\ndigraph arch " + graph + "\n```\n\nAfter";
+
+        List<DotBlockScanner.Block> blocks = DotBlockScanner.scan(text);
+
+        assertEquals(1, blocks.size());
+        DotBlockScanner.Block block = blocks.get(0);
+        assertEquals("arch", block.name());
+        assertEquals("digraph " + graph, block.graph());
+        assertEquals(text.indexOf("```dot"), block.start());
+        assertEquals("\n\nAfter", text.substring(block.end()));
+    }
+
+    @Test
+    void testIgnoresBracesInStringsCommentsAndHtmlLabels() {
+        String graph = """
+                {
+                    a [label="}\\" {"];
+                    // not the end }
+                    /* nor { this */
+                    b [label=<<b>}</b>>];
+                    a -> b;
+                }""";
+        List<DotBlockScanner.Block> blocks = DotBlockScanner.scan("dot digraph g " + graph + " then dot digraph h { c }");
+
+        assertEquals(List.of("digraph " + graph, "digraph { c }"), blocks.stream().map(DotBlockScanner.Block::graph).toList());
+    }
+
+    @Test
+    void testSkipsTextThatIsNotADiagram() {
+        assertEquals(List.of(), DotBlockScanner.scan("A dot, a digraph, and dot digraph without braces"));
+        assertEquals(List.of(), DotBlockScanner.scan("dot digraph open { a -> b"));
+    }
+}
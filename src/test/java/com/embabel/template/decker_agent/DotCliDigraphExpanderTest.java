@@ -0,0 +1,132 @@
+package com.embabel.template.decker_agent;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DotCliDigraphExpanderTest {
+
+    private static final Map<String, String> DIAGRAMS = new LinkedHashMap<>();
+
+    static {
+        DIAGRAMS.put("first", "digraph { a -> b }");
+        DIAGRAMS.put("second", "digraph { c -> d }");
+        DIAGRAMS.put("third", "digraph { e -> f }");
+    }
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Output files of diagrams rendered separately, not in a batch
+     */
+    private final List<String> singleRenders = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * Stands in for dot: a batch writes the outputs of the graphs at the given indexes,
+     * and a separate render writes the graph from stdin to the -o file
+     */
+    private DotCliDigraphExpander.DotRunner runner(Set<Integer> batchOutputs) {
+        return (workDirectory, input, arguments) -> {
+            try {
+                if (arguments[1].equals("-O")) {
+                    List<String> graphs = Files.readString(workDirectory.resolve(arguments[2])).lines().toList();
+                    for (int index : batchOutputs) {
+                        Files.writeString(workDirectory.resolve(DotCliDigraphExpander.batchOutputFile(index)),
+                                "<svg>" + graphs.get(index) + "</svg>");
+                    }
+                } else {
+                    singleRenders.add(arguments[2]);
+                    Files.writeString(workDirectory.resolve(arguments[2]), "<svg>" + input + "</svg>");
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+
+    private DotCliDigraphExpander expander(DotCliDigraphExpander.DotRunner runner) {
+        return new DotCliDigraphExpander(directory.toString(), true, PresentationMetrics.global(), runner);
+    }
+
+    @Test
+    void testBatchOutputFileNames() {
+        assertEquals("diagrams.gv.svg", DotCliDigraphExpander.batchOutputFile(0));
+        assertEquals("diagrams.gv.2.svg", DotCliDigraphExpander.batchOutputFile(1));
+        assertEquals("diagrams.gv.10.svg", DotCliDigraphExpander.batchOutputFile(9));
+    }
+
+    @Test
+    void testRendersAllDiagramsInOneBatch() throws IOException {
+        Map<String, String> files = expander(runner(Set.of(0, 1, 2))).expandDiagrams(DIAGRAMS, 2);
+
+        assertEquals(Map.of("first", "first.svg", "second", "second.svg", "third", "third.svg"), files);
+        assertEquals("<svg>digraph { c -> d }</svg>", Files.readString(directory.resolve("second.svg")));
+        assertEquals(List.of(), singleRenders);
+        assertNoBatchDirectory();
+    }
+
+    @Test
+    void testRendersDiagramsMissingFromTheBatchSeparately() throws IOException {
+        Map<String, String> files = expander(runner(Set.of(0))).expandDiagrams(DIAGRAMS, 2);
+
+        assertEquals(Map.of("first", "first.svg", "second", "second.svg", "third", "third.svg"), files);
+        assertEquals(Set.of("second.svg", "third.svg"), Set.copyOf(singleRenders));
+        assertEquals("<svg>digraph { a -> b }</svg>", Files.readString(directory.resolve("first.svg")));
+        assertEquals("<svg>digraph { e -> f }</svg>", Files.readString(directory.resolve("third.svg")));
+        assertNoBatchDirectory();
+    }
+
+    @Test
+    void testRendersEveryDiagramSeparatelyWhenTheBatchFails() throws IOException {
+        DotCliDigraphExpander.DotRunner separateOnly = runner(Set.of());
+        DotCliDigraphExpander.DotRunner failingBatch = (workDirectory, input, arguments) -> {
+            if (arguments[1].equals("-O")) {
+                // Partial output left behind by the failed batch must not be used or kept
+                try {
+                    Files.writeString(workDirectory.resolve(DotCliDigraphExpander.batchOutputFile(0)), "");
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                throw new IllegalStateException("dot crashed");
+            }
+            separateOnly.run(workDirectory, input, arguments);
+        };
+
+        Map<String, String> files = expander(failingBatch).expandDiagrams(DIAGRAMS, 2);
+
+        assertEquals(3, files.size());
+        assertEquals(Set.of("first.svg", "second.svg", "third.svg"), Set.copyOf(singleRenders));
+        assertEquals("<svg>digraph { a -> b }</svg>", Files.readString(directory.resolve("first.svg")));
+        assertNoBatchDirectory();
+    }
+
+    @Test
+    void testRendersSeparatelyWithoutBatch() {
+        var expander = new DotCliDigraphExpander(directory.toString(), false, PresentationMetrics.global(), runner(Set.of(0, 1, 2)));
+
+        expander.expandDiagrams(DIAGRAMS, 2);
+
+        assertEquals(3, singleRenders.size());
+    }
+
+    private void assertNoBatchDirectory() throws IOException {
+        try (var files = Files.list(directory)) {
+            assertEquals(List.of(), files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(".dot-batch"))
+                    .toList());
+        }
+    }
+}
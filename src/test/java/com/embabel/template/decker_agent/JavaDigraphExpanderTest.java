@@ -0,0 +1,59 @@
+package com.embabel.template.decker_agent;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JavaDigraphExpanderTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testParsesClustersDefaultsAndEdgeChains() {
+        DotGraph graph = DotParser.parse("""
+                digraph G {
+                    node [shape=box];
+                    subgraph cluster_outer {
+                        label="Outer";
+                        a;
+                        subgraph cluster_inner { b -> c }
+                    }
+                    a -> b -> {c d} [label="go"];
+                    "quoted node" -> a;
+                }
+                """);
+
+        assertTrue(graph.directed());
+        assertEquals(5, graph.nodes().size());
+        assertEquals(5, graph.edges().size());
+        assertEquals("box", graph.node("d").attribute("shape", "ellipse"));
+        assertEquals("Outer", graph.clusters().get(0).attribute("label", ""));
+        DotGraph.Cluster inner = graph.node("b").cluster();
+        assertEquals("cluster_inner", inner.id());
+        assertTrue(inner.within(graph.node("a").cluster()));
+        assertNull(graph.node("d").cluster());
+    }
+
+    @Test
+    void testRejectsInvalidDot() {
+        assertThrows(IllegalArgumentException.class, () -> DotParser.parse("digraph { a -> }"));
+    }
+
+    @Test
+    void testWritesSvgWithEveryNode() throws Exception {
+        String file = new JavaDigraphExpander(directory.toString())
+                .expandDiagram("flow", "digraph { rankdir=LR; Research -> Slides -> Deck; Slides -> Research }");
+
+        assertEquals("flow.svg", file);
+        String svg = Files.readString(directory.resolve(file));
+        assertTrue(svg.startsWith("<svg") || svg.startsWith("<?xml"));
+        assertTrue(svg.contains(">Research<"));
+        assertTrue(svg.contains(">Slides<"));
+        assertTrue(svg.contains(">Deck<"));
+    }
+}
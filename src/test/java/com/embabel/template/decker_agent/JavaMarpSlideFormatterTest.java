@@ -0,0 +1,117 @@
+package com.embabel.template.decker_agent;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JavaMarpSlideFormatterTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testAppliesHeaderAndSpotDirectives() {
+        String html = JavaMarpSlideFormatter.render("""
+                ---
+                marp: true
+                theme: gaia
+                paginate: true
+                footer: Embabel
+                ---
+                <!-- _class: lead -->
+                <!-- _paginate: false -->
+                # Title
+                ---
+                # Second
+                """);
+
+        assertTrue(html.contains("<section id=\"1\" class=\"lead\">"));
+        assertTrue(html.contains("<section id=\"2\" data-paginate=\"2\">"));
+        assertEquals(2, html.split("<footer>Embabel</footer>", -1).length - 1);
+        assertTrue(html.contains("background: #fff8e1"), "gaia theme");
+    }
+
+    @Test
+    void testDoesNotSplitOnSeparatorInCode() {
+        String html = JavaMarpSlideFormatter.render("""
+                # One
+                ```yaml
+                ---
+                key: value
+                ```
+                ---
+                # Two
+                """);
+
+        assertTrue(html.contains("<section id=\"2\">"));
+        assertFalse(html.contains("<section id=\"3\""));
+        assertTrue(html.contains("<span class=\"hljs-attr\">key</span>"));
+    }
+
+    @Test
+    void testRendersImageSizesAndBackgrounds() {
+        String html = JavaMarpSlideFormatter.render("""
+                ![bg left:30% grayscale](hero.png)
+                ![w:200 Logo](logo.svg)
+                """);
+
+        assertTrue(html.contains("<img src=\"logo.svg\" alt=\"Logo\" style=\"width:200px;\" />"));
+        assertTrue(html.contains("background-image:url(&quot;hero.png&quot;)"));
+        assertTrue(html.contains("filter:grayscale(1);"));
+        assertTrue(html.contains("padding-left:calc(30% + var(--slide-padding));"));
+        assertFalse(html.contains("<img src=\"hero.png\""));
+    }
+
+    @Test
+    void testRendersMarkdownBlocks() {
+        String html = new MarkdownRenderer().render("""
+                ## Why *this* matters
+                - One
+                  - Nested `code`
+                - snake_case_name
+
+                | A | B |
+                |---|:-:|
+                | 1 | 2 |
+                """);
+
+        assertEquals("""
+                <h2>Why <em>this</em> matters</h2>
+                <ul>
+                <li>One
+                <ul>
+                <li>Nested <code>code</code></li>
+                </ul></li>
+                <li>snake_case_name</li>
+                </ul>
+                <table>
+                <thead>
+                <tr>
+                <th>A</th>
+                <th style="text-align:center">B</th>
+                </tr>
+                </thead>
+                <tbody>
+                <tr>
+                <td>1</td>
+                <td style="text-align:center">2</td>
+                </tr>
+                </tbody>
+                </table>
+                """, html);
+    }
+
+    @Test
+    void testWritesHtmlNextToMarkdown() throws Exception {
+        Files.writeString(directory.resolve("deck.md"), "# Hello");
+
+        String htmlFile = new JavaMarpSlideFormatter().createHtmlSlides(directory.toString(), "deck.md");
+
+        assertEquals("deck.html", htmlFile);
+        assertTrue(Files.readString(directory.resolve(htmlFile)).contains("<h1>Hello</h1>"));
+    }
+}
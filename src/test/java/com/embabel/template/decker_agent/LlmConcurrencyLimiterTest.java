@@ -0,0 +1,40 @@
+package com.embabel.template.decker_agent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LlmConcurrencyLimiterTest {
+
+    private final LlmConcurrencyLimiter limiter = new LlmConcurrencyLimiter(1, PresentationMetrics.global());
+
+    @Test
+    void testTryCallPassesNullResultsThrough() {
+        assertEquals(new LlmConcurrencyLimiter.Attempt<String>(true, null), limiter.tryCall("test", () -> null));
+    }
+
+    @Test
+    void testTryCallDoesNotCallWithoutAFreePermit() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread holder = Thread.ofVirtual().start(() -> limiter.call("test", () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "done";
+        }));
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+
+        assertEquals(LlmConcurrencyLimiter.Attempt.noPermit(), limiter.tryCall("test", () -> fail("no permit was free")));
+
+        release.countDown();
+        holder.join();
+        assertEquals(new LlmConcurrencyLimiter.Attempt<>(true, "free"), limiter.tryCall("test", () -> "free"));
+    }
+}
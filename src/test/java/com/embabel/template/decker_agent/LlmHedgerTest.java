@@ -0,0 +1,81 @@
+package com.embabel.template.decker_agent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LlmHedgerTest {
+
+    private final LlmConcurrencyLimiter limiter = new LlmConcurrencyLimiter(4, PresentationMetrics.global());
+
+    @Test
+    void testDoesNotHedgeWhenDisabled() {
+        LlmHedger hedger = new LlmHedger(limiter, PresentationMetrics.global(), false, 90, 1, 1);
+        AtomicInteger calls = new AtomicInteger();
+        warmUp(hedger, 5);
+
+        assertEquals("slow", hedger.call("test", "model", () -> {
+            calls.incrementAndGet();
+            return sleep(200, "slow");
+        }));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void testUsesTheHedgeWhenItAnswersFirstAndCancelsTheOriginal() throws InterruptedException {
+        LlmHedger hedger = new LlmHedger(limiter, PresentationMetrics.global(), true, 90, 5, 1);
+        warmUp(hedger, 5);
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch cancelled = new CountDownLatch(1);
+
+        long start = System.nanoTime();
+        String result = hedger.call("test", "model", () -> {
+            if (calls.incrementAndGet() == 1) {
+                try {
+                    Thread.sleep(60_000);
+                } catch (InterruptedException e) {
+                    cancelled.countDown();
+                }
+                return "original";
+            }
+            return "hedge";
+        });
+
+        assertEquals("hedge", result);
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        assertTrue(cancelled.await(1, TimeUnit.SECONDS), "the original call was cancelled");
+    }
+
+    @Test
+    void testLimitsHedgesToAFractionOfCalls() {
+        LlmHedger hedger = new LlmHedger(limiter, PresentationMetrics.global(), true, 50, 5, 0.1);
+        // 5 warm-up calls allow no hedge yet, as 1 hedge would be more than a tenth of 6 calls
+        warmUp(hedger, 5);
+        AtomicInteger calls = new AtomicInteger();
+
+        assertEquals("slow", hedger.call("test", "model", () -> {
+            calls.incrementAndGet();
+            return sleep(100, "slow");
+        }));
+        assertEquals(1, calls.get(), "no hedge over the budget");
+    }
+
+    private static void warmUp(LlmHedger hedger, int calls) {
+        for (int i = 0; i < calls; i++) {
+            hedger.call("test", "model", () -> sleep(10, "fast"));
+        }
+    }
+
+    private static String sleep(long millis, String result) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return result;
+    }
+}
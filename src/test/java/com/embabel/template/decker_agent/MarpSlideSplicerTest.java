@@ -0,0 +1,64 @@
+package com.embabel.template.decker_agent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MarpSlideSplicerTest {
+
+    private static final String DECK = """
+            ---
+            marp: true
+            paginate: true
+            ---
+            # One
+            ---
+            # Two
+            ---
+            # Three
+            """;
+
+    @Test
+    void testRendersOnlyChangedSlidesAndRenumbersMovedOnes() {
+        var before = new SlideDeck(DECK);
+        var after = new SlideDeck(DECK.replace("# Two\n---\n", "").replace("# One", "# One\n---\n# New"));
+
+        var plan = MarpSlideSplicer.plan(MarpSlideSplicer.State.of(before), MarpSlideSplicer.State.of(after));
+
+        assertNotNull(plan);
+        assertArrayEquals(new int[]{0, -1, 2}, plan.reused());
+        assertEquals("---\nmarp: true\npaginate: true\n---\n# New\n", MarpSlideSplicer.partialDeck(after, plan));
+
+        String existing = "<html><div>" + slide(1, 3, "One") + slide(2, 3, "Two") + slide(3, 3, "Three") + "</div></html>";
+        String spliced = MarpSlideSplicer.splice(existing, 3, "<div>" + slide(1, 1, "New") + "</div>", plan);
+        assertEquals("<html><div>" + slide(1, 3, "One") + slide(2, 3, "New") + slide(3, 3, "Three") + "</div></html>", spliced);
+        assertNull(MarpSlideSplicer.splice(existing, 4, "<div>" + slide(1, 1, "New") + "</div>", plan),
+                "slide count in HTML does not match");
+    }
+
+    @Test
+    void testRendersWholeDeckWhenHeaderOrInheritedDirectivesChange() {
+        var state = MarpSlideSplicer.State.of(new SlideDeck(DECK));
+        assertNull(MarpSlideSplicer.plan(state, MarpSlideSplicer.State.of(new SlideDeck(DECK.replace("paginate: true", "theme: gaia")))));
+        assertNull(MarpSlideSplicer.plan(state, MarpSlideSplicer.State.of(new SlideDeck(DECK.replace("# Two", "<!-- class: lead -->\n# Two")))));
+        assertNotNull(MarpSlideSplicer.plan(state, MarpSlideSplicer.State.of(new SlideDeck(DECK.replace("# Three", "# Tres")))));
+        assertNull(MarpSlideSplicer.plan(state, MarpSlideSplicer.State.of(new SlideDeck(DECK.replace("# Three", "<!-- _class: lead -->\n# Tres")))),
+                "comments may be speaker notes, which are not part of the slide HTML");
+    }
+
+    @Test
+    void testFindsSlidesContainingNestedSvg() {
+        String nested = "<svg data-marpit-svg=\"\"><foreignObject><section id=\"1\"><svg><g/></svg></section></foreignObject></svg>";
+        var elements = MarpSlideSplicer.slideElements("<div>" + nested + nested + "</div>");
+        assertEquals(2, elements.size());
+        assertEquals(List.of(5, 5 + nested.length()), List.of(elements.get(0)[0], elements.get(0)[1]));
+    }
+
+    private static String slide(int number, int total, String title) {
+        return "<svg data-marpit-svg=\"\" viewBox=\"0 0 1280 720\"><foreignObject width=\"1280\" height=\"720\">"
+                + "<section id=\"" + number + "\" data-paginate=\"true\" data-marpit-pagination=\"" + number
+                + "\" data-marpit-pagination-total=\"" + total + "\"><h1>" + title + "</h1></section></foreignObject></svg>";
+    }
+}
@@ -0,0 +1,73 @@
+package com.embabel.template.decker_agent;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PresentationMakerShellTest {
+
+    @TempDir
+    Path directory;
+
+    private Path requests() throws IOException {
+        Path requests = Files.createDirectories(directory.resolve("requests"));
+        Files.writeString(requests.resolve("b.yaml"), "slideCount: 10\n");
+        Files.writeString(requests.resolve("a.yml"), "slideCount: 10\n");
+        Files.writeString(requests.resolve("notes.txt"), "not a request\n");
+        Files.createDirectories(requests.resolve("archive"));
+        Files.writeString(requests.resolve("archive/c.yml"), "slideCount: 10\n");
+        return requests;
+    }
+
+    @Test
+    void testRequestFilesListsYamlFilesInADirectory() throws IOException {
+        Path requests = requests();
+
+        assertEquals(List.of(requests.resolve("a.yml"), requests.resolve("b.yaml")),
+                PresentationMakerShell.requestFiles(requests.toString()));
+    }
+
+    @Test
+    void testRequestFilesMatchesAGlob() throws IOException {
+        Path requests = requests();
+
+        assertEquals(List.of(requests.resolve("a.yml")),
+                PresentationMakerShell.requestFiles(requests + "/*.yml"));
+        assertEquals(List.of(requests.resolve("archive/c.yml")),
+                PresentationMakerShell.requestFiles(requests + "/**/*.yml"));
+        assertEquals(List.of(requests.resolve("b.yaml")),
+                PresentationMakerShell.requestFiles(requests.resolve("b.yaml").toString()));
+    }
+
+    @Test
+    void testRequestFilesIsEmptyWhenNothingMatches() throws IOException {
+        Path requests = requests();
+
+        assertEquals(List.of(), PresentationMakerShell.requestFiles(requests + "/*.json"));
+        assertEquals(List.of(), PresentationMakerShell.requestFiles(requests.resolve("missing.yml").toString()));
+        assertEquals(List.of(), PresentationMakerShell.requestFiles(directory.resolve("missing") + "/*.yml"));
+    }
+
+    @Test
+    void testSummary() {
+        List<PresentationMakerShell.DeckRun> runs = List.of(
+                new PresentationMakerShell.DeckRun(Path.of("a.yml"), true, Duration.ofMillis(1_500), "deck.html"),
+                new PresentationMakerShell.DeckRun(Path.of("talks/b.yml"), false, Duration.ofMillis(200), "Timed out"));
+
+        assertEquals("""
+                Deck         Status       Time  Result
+                -----------------------------------------
+                a.yml        ok           1.5s  deck.html
+                talks/b.yml  FAILED       0.2s  Timed out
+
+                2 decks, 1 failed, 2.0s elapsed
+                """, PresentationMakerShell.summary(runs, Duration.ofSeconds(2)));
+    }
+}
@@ -0,0 +1,62 @@
+package com.embabel.template.decker_agent;
+
+import com.embabel.template.decker_agent.PresentationScheduler.Degradation;
+import com.embabel.template.decker_agent.PresentationScheduler.Step;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PresentationSchedulerTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    @Test
+    void testDoesNotDegradeARunOnPlan() {
+        var schedule = new PresentationScheduler.Schedule(Duration.ofSeconds(100), now::get);
+        schedule.start(Step.TOPICS);
+        advance(5);
+        schedule.start(Step.RESEARCH);
+        advance(50);
+        schedule.start(Step.DECK);
+        schedule.finish();
+
+        assertEquals(EnumSet.noneOf(Degradation.class), schedule.degradations());
+        assertTrue(schedule.report().contains("Degradations: none"));
+    }
+
+    @Test
+    void testDegradesInOrderAndOnlyWhileBehindPlan() {
+        var schedule = new PresentationScheduler.Schedule(Duration.ofSeconds(100), now::get);
+        schedule.start(Step.TOPICS);
+        advance(20);
+        schedule.start(Step.RESEARCH);
+        assertEquals(EnumSet.of(Degradation.FEWER_TOPICS), schedule.degradations(), "halving research saves enough");
+        assertTrue(schedule.isDegraded(Step.RESEARCH));
+
+        advance(60);
+        schedule.start(Step.DECK);
+        advance(15);
+        schedule.start(Step.DIAGRAMS);
+        assertEquals(EnumSet.of(Degradation.FEWER_TOPICS, Degradation.SKIP_ILLUSTRATIONS, Degradation.SKIP_DIAGRAMS),
+                schedule.degradations(), "too late for a cheaper research model");
+        assertFalse(schedule.isDegraded(Step.DECK));
+    }
+
+    @Test
+    void testNeverDegradesWithoutABudget() {
+        var schedule = new PresentationScheduler.Schedule(null, now::get);
+        schedule.start(Step.TOPICS);
+        advance(1000);
+        schedule.start(Step.RESEARCH);
+        assertEquals(EnumSet.noneOf(Degradation.class), schedule.degradations());
+        assertEquals("", schedule.report());
+    }
+
+    private void advance(long seconds) {
+        now.addAndGet(Duration.ofSeconds(seconds).toNanos());
+    }
+}
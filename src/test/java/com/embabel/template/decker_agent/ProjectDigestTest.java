@@ -0,0 +1,98 @@
+package com.embabel.template.decker_agent;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProjectDigestTest {
+
+    @TempDir
+    Path directory;
+
+    private Path project() throws Exception {
+        Path root = Files.createDirectories(directory.resolve("project"));
+        Files.writeString(root.resolve("README.md"), "# Decker\n\nMakes slide decks from research.\n");
+        Files.writeString(root.resolve("pom.xml"), "<project/>\n");
+        Path main = Files.createDirectories(root.resolve("app/src/main/java/com/example/app"));
+        Files.writeString(root.resolve("app/pom.xml"), "<project/>\n");
+        Files.writeString(main.resolve("App.java"), """
+                package com.example.app;
+
+                @SpringBootApplication
+                public class App {
+                    public static void main(String[] args) {
+                    }
+
+                    static class Nested {
+                    }
+                }
+                """);
+        Files.writeString(main.resolve("Slide.java"), """
+                package com.example.app;
+
+                /**
+                 * class in a comment
+                 */
+                record Slide(int number,
+                             String content) {
+                }
+                """);
+        Path test = Files.createDirectories(root.resolve("app/src/test/java/com/example/app"));
+        Files.writeString(test.resolve("AppTest.java"), "package com.example.app;\n\nclass AppTest {\n}\n");
+        Path target = Files.createDirectories(root.resolve("app/target"));
+        Files.writeString(target.resolve("Generated.java"), "class Generated {\n}\n");
+        return root;
+    }
+
+    @Test
+    void testDescribesReadmeModulesEntryPointsAndTopLevelTypes() throws Exception {
+        String digest = ProjectDigest.build(project(), 2_000);
+
+        assertTrue(digest.contains("Makes slide decks from research."), digest);
+        assertTrue(digest.contains("- . (pom.xml)\n- app (pom.xml)\n"), digest);
+        assertTrue(digest.contains("## Entry points\n- app/src/main/java/com/example/app/App.java\n"), digest);
+        assertTrue(digest.contains("- com.example.app (2 types)\n"), digest);
+        assertTrue(digest.contains("- public class App\n- record Slide(int number,\n"), digest);
+        assertFalse(digest.contains("Nested"), digest);
+        assertFalse(digest.contains("AppTest"), digest);
+        assertFalse(digest.contains("Generated"), digest);
+    }
+
+    @Test
+    void testKeepsToTheTokenBudget() throws Exception {
+        Path root = project();
+        Path main = root.resolve("app/src/main/java/com/example/app");
+        for (int i = 0; i < 200; i++) {
+            Files.writeString(main.resolve("Type" + i + ".java"), "package com.example.app;\n\nclass Type" + i + " {\n}\n");
+        }
+
+        String digest = ProjectDigest.build(root, 300);
+
+        assertTrue(ResearchCompactor.estimateTokens(digest) <= 310, digest);
+        assertTrue(digest.contains("more types not listed"), digest);
+        assertTrue(digest.contains("## Entry points"), "entry points come before types");
+    }
+
+    @Test
+    void testReusesTheCachedDigestForTheSameFingerprint() throws Exception {
+        Path root = project();
+        Path cache = directory.resolve("cache");
+        String first = ProjectDigest.forRoot(root, "abc", cache, 2_000);
+        Files.writeString(root.resolve("README.md"), "# Changed\n");
+
+        assertEquals(first, ProjectDigest.forRoot(root, "abc", cache, 2_000));
+        assertTrue(ProjectDigest.forRoot(root, "def", cache, 2_000).contains("# Changed"));
+    }
+
+    @Test
+    void testCutsExcerptsAtParagraphs() {
+        String text = "First paragraph.\n\nSecond paragraph, which is rather longer.";
+
+        assertEquals("First paragraph.\n...", ProjectDigest.excerpt(text, 30));
+        assertEquals(text, ProjectDigest.excerpt(text, 100));
+    }
+}
@@ -0,0 +1,69 @@
+package com.embabel.template.decker_agent;
+
+import com.embabel.agent.domain.library.CompletedResearch;
+import com.embabel.agent.domain.library.InternetResource;
+import com.embabel.agent.domain.library.ResearchReport;
+import com.embabel.agent.domain.library.ResearchTopic;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResearchCompactorTest {
+
+    private static final String BRIEF = "How agent frameworks plan actions with goals";
+
+    private static CompletedResearch research(String topic, String content, InternetResource... links) {
+        return new CompletedResearch(
+                new ResearchTopic(topic, List.of("How does " + topic + " work?")),
+                new ResearchReport(topic, content, List.of(links))
+        );
+    }
+
+    @Test
+    void testRemovesDuplicateLinksAndParagraphs() {
+        String shared = "Goal oriented action planning searches for a sequence of actions whose effects reach the goal state.";
+        String compacted = new ResearchCompactor(10_000).compact(BRIEF, List.of(
+                research("Planning", shared + "\n\nPlanners replan when the world changes.",
+                        new InternetResource("https://www.example.com/goap/", "GOAP overview")),
+                research("Agents", "Agents expose actions.\n\n" + shared.replace("state.", "state!"),
+                        new InternetResource("https://example.com/goap", "GOAP again"),
+                        new InternetResource("https://example.com/agents", "Agents"))
+        ));
+
+        assertEquals(1, compacted.split("Goal oriented action planning", -1).length - 1);
+        assertTrue(compacted.contains("Planners replan"));
+        assertTrue(compacted.contains("Agents expose actions."));
+        assertTrue(compacted.contains("GOAP overview"));
+        assertFalse(compacted.contains("GOAP again"));
+        assertTrue(compacted.contains("https://example.com/agents"));
+    }
+
+    @Test
+    void testKeepsMostRelevantParagraphsWithinBudget() {
+        String relevant = "Agent frameworks plan actions toward goals using preconditions and effects.";
+        String filler = "The conference venue has excellent coffee and a pleasant garden outside.";
+        int budget = 60;
+        String compacted = new ResearchCompactor(budget).compact(BRIEF, List.of(
+                research("Frameworks", filler + "\n\n" + relevant + "\n\n" + filler.replace("coffee", "tea").replace("garden", "terrace view")),
+                research("History", "Early planners such as STRIPS introduced goals and actions.")
+        ));
+
+        assertTrue(compacted.contains(relevant));
+        assertTrue(compacted.contains("STRIPS"), "each topic keeps its best paragraph");
+        assertFalse(compacted.contains("coffee"));
+        assertTrue(ResearchCompactor.estimateTokens(compacted) <= budget + 2);
+        assertTrue(compacted.indexOf("# Research: Frameworks") < compacted.indexOf("# Research: History"));
+    }
+
+    @Test
+    void testZeroBudgetLeavesResearchUnchanged() {
+        List<CompletedResearch> researches = List.of(research("Planning", "Some content"));
+
+        assertEquals(
+                researches.stream().map(CompletedResearch::getResearchReport).toList().toString(),
+                new ResearchCompactor(0).compact(BRIEF, researches)
+        );
+    }
+}
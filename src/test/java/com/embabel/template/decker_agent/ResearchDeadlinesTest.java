@@ -0,0 +1,92 @@
+package com.embabel.template.decker_agent;
+
+import com.embabel.template.decker_agent.ResearchDeadlines.Outcome;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResearchDeadlinesTest {
+
+    private final ResearchDeadlines deadlines = new ResearchDeadlines(
+            Duration.ofMillis(100), Duration.ofMillis(400), PresentationMetrics.global());
+
+    @Test
+    void testUsesResearchFinishedBeforeTheSoftDeadline() {
+        var result = deadlines.research("fast", () -> "full", () -> fail("should not wrap up"));
+
+        assertEquals(new ResearchDeadlines.Result<>("full", Outcome.COMPLETED), result);
+    }
+
+    @Test
+    void testWrapsUpResearchPastTheSoftDeadline() {
+        var result = deadlines.research("slow", () -> sleep(2_000, "full"), () -> "wrapped up");
+
+        assertEquals(new ResearchDeadlines.Result<>("wrapped up", Outcome.WRAPPED_UP), result);
+        assertTrue(deadlines.summary().endsWith("over 1 topics (1 wrapped up)"), deadlines.summary());
+    }
+
+    @Test
+    void testCancelsResearchPastTheHardDeadline() throws InterruptedException {
+        CountDownLatch interrupted = new CountDownLatch(2);
+        long start = System.nanoTime();
+        var result = deadlines.research("stuck",
+                () -> sleepUntilInterrupted(interrupted),
+                () -> sleepUntilInterrupted(interrupted));
+
+        assertEquals(new ResearchDeadlines.Result<>(null, Outcome.TIMED_OUT), result);
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2), "returned at the hard deadline");
+        assertTrue(interrupted.await(1, TimeUnit.SECONDS), "both attempts were cancelled");
+    }
+
+    @Test
+    void testReportsResearchThatFailsBeforeTheSoftDeadline() {
+        var result = deadlines.research("broken", () -> {
+            throw new IllegalStateException("LLM unavailable");
+        }, () -> fail("should not wrap up"));
+
+        assertEquals(new ResearchDeadlines.Result<>(null, Outcome.FAILED), result);
+        assertTrue(deadlines.summary().endsWith("over 1 topics (1 failed)"), deadlines.summary());
+    }
+
+    @Test
+    void testUsesWrapUpWhenResearchFailsPastTheSoftDeadline() {
+        var result = deadlines.research("flaky", () -> {
+            sleep(200, "full");
+            throw new IllegalStateException("connection reset");
+        }, () -> sleep(150, "wrapped up"));
+
+        assertEquals(new ResearchDeadlines.Result<>("wrapped up", Outcome.WRAPPED_UP), result);
+    }
+
+    @Test
+    void testComputesNearestRankPercentiles() {
+        long[] sorted = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+
+        assertEquals(5, ResearchDeadlines.percentile(sorted, 50));
+        assertEquals(9, ResearchDeadlines.percentile(sorted, 90));
+        assertEquals(10, ResearchDeadlines.percentile(sorted, 99));
+        assertEquals(7, ResearchDeadlines.percentile(new long[]{7}, 50));
+    }
+
+    private static String sleep(long millis, String result) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return result;
+    }
+
+    private static String sleepUntilInterrupted(CountDownLatch interrupted) {
+        try {
+            Thread.sleep(60_000);
+        } catch (InterruptedException e) {
+            interrupted.countDown();
+        }
+        return "too late";
+    }
+}
@@ -0,0 +1,102 @@
+package com.embabel.template.decker_agent;
+
+import com.embabel.agent.domain.library.ResearchReport;
+import com.embabel.agent.domain.library.ResearchTopic;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResearchReportCacheTest {
+
+    private static final Instant WRITTEN = Instant.parse("2025-06-01T10:00:00Z");
+    private static final Duration TTL = Duration.ofDays(7);
+
+    @TempDir
+    Path directory;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    private final ResearchTopic topic = new ResearchTopic("Virtual threads", List.of("What are virtual threads?"));
+    private final ResearchReportCache.Context context = new ResearchReportCache.Context("gpt-4.1", "Java developers", "abc123");
+
+    private ResearchReportCache cache(Instant now, long maxBytes) {
+        return new ResearchReportCache(directory, TTL, maxBytes, objectMapper, Clock.fixed(now, ZoneOffset.UTC));
+    }
+
+    private static ResearchReport report(String content) {
+        return new ResearchReport("Virtual threads", content, List.of());
+    }
+
+    @Test
+    void testServesReportsUntilTheyExpire() {
+        cache(WRITTEN, 1_000_000).put(topic, context, report("Cheap threads managed by the JVM"));
+
+        ResearchReport cached = cache(WRITTEN.plus(TTL).minusSeconds(1), 1_000_000).get(topic, context);
+        assertNotNull(cached);
+        assertEquals("Cheap threads managed by the JVM", cached.getContent());
+
+        assertNull(cache(WRITTEN.plus(TTL).plusSeconds(1), 1_000_000).get(topic, context));
+        assertFalse(Files.exists(directory.resolve(ResearchReportCache.key(topic, context) + ".json")),
+                "expired entries are deleted");
+    }
+
+    @Test
+    void testDisabledWithZeroTtl() throws IOException {
+        var disabled = new ResearchReportCache(directory, Duration.ZERO, 1_000_000, objectMapper, Clock.systemUTC());
+
+        disabled.put(topic, context, report("Cheap threads managed by the JVM"));
+
+        assertFalse(disabled.isEnabled());
+        assertNull(disabled.get(topic, context));
+        try (var files = Files.list(directory)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void testKeyCoversTopicQuestionsModelAudienceAndProject() {
+        String key = ResearchReportCache.key(topic, context);
+
+        assertEquals(key, ResearchReportCache.key(
+                new ResearchTopic(" Virtual threads\n", List.of("What are virtual threads?  ")), context));
+        assertNotEquals(key, ResearchReportCache.key(
+                new ResearchTopic("Virtual threads", List.of("When are virtual threads pinned?")), context));
+        assertNotEquals(key, ResearchReportCache.key(
+                topic, new ResearchReportCache.Context("gpt-4.1-mini", "Java developers", "abc123")));
+        assertNotEquals(key, ResearchReportCache.key(
+                topic, new ResearchReportCache.Context("gpt-4.1", "Architects", "abc123")));
+        assertNotEquals(key, ResearchReportCache.key(
+                topic, new ResearchReportCache.Context("gpt-4.1", "Java developers", "def456")));
+        // Values are delimited, so moving text between them changes the key
+        assertNotEquals(ResearchReportCache.key(new ResearchTopic("ab", List.of("c")), context),
+                ResearchReportCache.key(new ResearchTopic("a", List.of("bc")), context));
+    }
+
+    @Test
+    void testEvictsLeastRecentlyUsedReports() throws IOException {
+        var unbounded = cache(WRITTEN, 1_000_000);
+        ResearchTopic other = new ResearchTopic("Structured concurrency", List.of("What does it solve?"));
+        unbounded.put(topic, context, report("Cheap threads managed by the JVM"));
+        Path older = directory.resolve(ResearchReportCache.key(topic, context) + ".json");
+        long entryBytes = Files.size(older);
+        Files.setLastModifiedTime(older, FileTime.from(WRITTEN.minusSeconds(60)));
+
+        // Room for one entry only
+        cache(WRITTEN, entryBytes * 3 / 2).put(other, context, report("Cheap threads managed by the JVM"));
+
+        assertFalse(Files.exists(older));
+        assertNotNull(unbounded.get(other, context));
+    }
+}
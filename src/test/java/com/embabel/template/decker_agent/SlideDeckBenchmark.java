@@ -0,0 +1,116 @@
+package com.embabel.template.decker_agent;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Text processing of synthetic decks, with a diagram expander that renders nothing
+ * so that only the deck handling is measured.
+ * Run with: mvn -P benchmark test-compile exec:exec -Djmh.includes=SlideDeckBenchmark
+ * Results are written as JSON to target/jmh-results.json, to compare between versions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SlideDeckBenchmark {
+
+    private static final DigraphExpander NO_OP_EXPANDER = (fileBase, dot) -> fileBase + ".svg";
+
+    @Param({"10", "100", "1000", "5000"})
+    public int slides;
+
+    /**
+     * Percentage of slides with a dot diagram
+     */
+    @Param({"0", "10", "50"})
+    public int diagramPercent;
+
+    private String text;
+    private SlideDeck parsed;
+    private int middleSlide;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        text = deck(slides, diagramPercent);
+        parsed = new SlideDeck(text);
+        parsed.slides();
+        middleSlide = slides / 2 + 1;
+    }
+
+    static String deck(int slides, int diagramPercent) {
+        StringBuilder deck = new StringBuilder("---\nmarp: true\ntheme: default\npaginate: true\n---\n");
+        int diagrams = 0;
+        for (int i = 1; i <= slides; i++) {
+            deck.append("# Slide ").append(i).append("\n\n")
+                    .append("- A point about the topic of slide ").append(i).append('\n')
+                    .append("- Another point, with `code` and a [link](https://example.com/").append(i).append(")\n");
+            // Spread diagrams evenly rather than bunching them at the start
+            if ((long) i * diagramPercent / 100 > diagrams) {
+                diagrams++;
+                deck.append("\n```dot\ndigraph d").append(i % 20).append(" {\n    node [shape=box];\n")
+                        .append("    subgraph cluster_stage { label=\"Stage {").append(i).append("}\"; a -> b; }\n")
+                        .append("    b -> c -> d").append(i).append(" [label=\"next\"];\n}\n```\n");
+            }
+            if (i < slides) {
+                deck.append("\n---\n\n");
+            }
+        }
+        return deck.append('\n').toString();
+    }
+
+    @Benchmark
+    public List<Slide> parseSlides() {
+        return new SlideDeck(text).slides();
+    }
+
+    @Benchmark
+    public String parseHeader() {
+        return new SlideDeck(text).header();
+    }
+
+    @Benchmark
+    public List<Slide> slides() {
+        return parsed.slides();
+    }
+
+    @Benchmark
+    public String header() {
+        return parsed.header();
+    }
+
+    @Benchmark
+    public SlideDeck replaceSlide() {
+        return parsed.replaceSlide(parsed.slide(middleSlide), "# Replaced\n\n- New content");
+    }
+
+    @Benchmark
+    public String replaceSlideAndRender() {
+        return replaceSlide().getDeck();
+    }
+
+    @Benchmark
+    public SlideDeck withHeader() {
+        return parsed.withHeader("marp: true\ntheme: gaia");
+    }
+
+    @Benchmark
+    public SlideDeck expandDigraphs() {
+        return parsed.expandDigraphs(NO_OP_EXPANDER, 1);
+    }
+}
@@ -0,0 +1,169 @@
+package com.embabel.template.decker_agent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class SlideDeckTest {
+
+    private static final String DECK = """
+            ---
+            marp: true
+            ---
+            # One
+            ---
+            # Two
+            ---
+            # Three
+            """;
+
+    @Test
+    void testParsesHeaderAndSlides() {
+        var deck = new SlideDeck(DECK);
+        assertEquals("marp: true", deck.header());
+        assertEquals(3, deck.slideCount());
+        assertEquals(new Slide(2, "# Two"), deck.slide(2));
+        assertNull(deck.slide(4));
+        assertEquals(DECK, deck.getDeck());
+    }
+
+    @Test
+    void testWithHeader() {
+        var deck = new SlideDeck(DECK).withHeader("  theme: gaia ");
+        assertEquals("---\ntheme: gaia\n---\n# One\n---\n# Two\n---\n# Three\n", deck.getDeck());
+        assertEquals("---\nmarp: true\n", new SlideDeck("---\nold\n").withHeader("marp: true").getDeck());
+    }
+
+    @Test
+    void testReplaceSlidesMatchesSequentialReplaceSlide() {
+        var deck = new SlideDeck(DECK);
+        var sequential = deck
+                .replaceSlide(new Slide(1, ""), "# Uno")
+                .replaceSlide(new Slide(3, ""), "# Tres");
+        var batch = deck.replaceSlides(Map.of(1, "# Uno", 3, "# Tres", 7, "ignored"));
+        assertEquals(sequential.getDeck(), batch.getDeck());
+        assertEquals("---\nmarp: true\n---\n# Uno\n---\n# Two\n---\n# Tres\n", batch.getDeck());
+        assertEquals(List.of(new Slide(1, "# Uno"), new Slide(2, "# Two"), new Slide(3, "# Tres")), batch.slides());
+    }
+
+    @Test
+    void testReplacementContainingSeparatorIsReparsed() {
+        var deck = new SlideDeck(DECK).replaceSlide(new Slide(2, ""), "# Two\n---\n# Two and a half");
+        assertEquals(4, deck.slideCount());
+        assertEquals("# Two and a half", deck.slide(3).content());
+    }
+
+    @Test
+    void testReplaceOutOfRangeReturnsSameDeck() {
+        var deck = new SlideDeck(DECK);
+        assertSame(deck, deck.replaceSlide(new Slide(9, ""), "nope"));
+        var empty = new SlideDeck("");
+        assertSame(empty, empty.replaceSlide(new Slide(1, ""), "nope"));
+    }
+
+    @Test
+    void testExpandDigraphsRendersIdenticalDiagramsOnce() {
+        var rendered = new ConcurrentLinkedQueue<String>();
+        DigraphExpander expander = (fileBase, dot) -> {
+            rendered.add(fileBase);
+            return fileBase + ".svg";
+        };
+        var deck = new SlideDeck("""
+                ---
+                marp: true
+                ---
+                dot digraph flow { a -> b }
+                ---
+                dot digraph again { a -> b }
+                ---
+                dot digraph flow { c -> d }
+                """);
+
+        var expanded = deck.expandDigraphs(expander, 2);
+
+        assertEquals(List.of("flow", "flow_2"), rendered.stream().sorted().toList());
+        assertEquals("""
+                ---
+                marp: true
+                ---
+
+                ![Diagram](./flow.svg)
+                ---
+
+                ![Diagram](./flow.svg)
+                ---
+
+                ![Diagram](./flow_2.svg)
+                """, expanded.getDeck());
+    }
+
+    @Test
+    void testDerivedVersionsShareUnchangedSlides() {
+        var deck = new SlideDeck(DECK);
+        var replaced = deck.replaceSlide(new Slide(2, ""), "\n# Deux\n");
+        assertEquals(1, replaced.version());
+        assertSame(deck.slide(1), replaced.slide(1));
+        assertSame(deck.slide(3), replaced.slide(3));
+        assertNotSame(deck.slide(2), replaced.slide(2));
+        assertEquals("---\nmarp: true\n---\n# One\n---\n\n# Deux\n\n---\n# Three\n", replaced.getDeck());
+        assertEquals(new Slide(2, "# Deux"), replaced.slide(2));
+        assertEquals(List.of(new SlideChange(2, "# Two", "# Deux")), replaced.changesSince(deck));
+        assertEquals(List.of(), replaced.withHeader("marp: true").changesSince(replaced));
+
+        var reparsed = replaced.replaceSlide(new Slide(1, ""), "# One\n---\n# One and a half");
+        assertSame(replaced.slide(1), reparsed.slide(1));
+        assertEquals(List.of(
+                new SlideChange(2, "# Deux", "# One and a half"),
+                new SlideChange(3, "# Three", "# Deux"),
+                new SlideChange(4, null, "# Three")), reparsed.changesSince(replaced));
+    }
+
+    @Test
+    void testParsedDeckRendersOriginalText() {
+        String text = "\n---\nmarp: true\n\n---\n\n# One\n\n---\n\n---\n# Two   \n\n";
+        var deck = new SlideDeck(text);
+        assertEquals(2, deck.slideCount());
+        assertEquals(text, deck.getDeck());
+        assertEquals("---\nmarp: true\n---\n# One\n---\n# Deux\n", deck.replaceSlide(new Slide(2, ""), "# Deux").getDeck());
+    }
+
+    @Test
+    void testDerivedDecksRenderInStandardLayout() {
+        var deck = new SlideDeck("\n---\nmarp: true\n\n---\n\n# One\n\n---\n# Two   \n\n");
+        assertEquals("---\ntheme: gaia\n---\n# One\n---\n# Two\n", deck.withHeader("theme: gaia").getDeck());
+        // Without a header the first part is not a slide, and the blank header renders as it always has
+        var headerless = new SlideDeck("# Ignored\n---\n# Two\n");
+        assertEquals("---\n\n---\n# Deux\n", headerless.replaceSlide(new Slide(1, ""), "# Deux").getDeck());
+    }
+
+    @Test
+    void testExpandDigraphsSharesSlidesWithoutDiagrams() {
+        DigraphExpander expander = (fileBase, dot) -> fileBase + ".svg";
+        var deck = new SlideDeck(DECK.replace("# Two", "dot digraph flow { a -> b }"));
+        var expanded = deck.expandDigraphs(expander, 1);
+        assertSame(deck.slide(1), expanded.slide(1));
+        assertSame(deck.slide(3), expanded.slide(3));
+        assertEquals(List.of(2), expanded.changesSince(deck).stream().map(SlideChange::number).toList());
+    }
+
+    @Test
+    void testExpandDigraphsKeepsSubgraphs() {
+        var dots = new ConcurrentLinkedQueue<String>();
+        DigraphExpander expander = (fileBase, dot) -> {
+            dots.add(dot);
+            return fileBase + ".svg";
+        };
+        String graph = "digraph nested {\n  subgraph cluster_x { a -> b }\n  b -> c\n}";
+        var expanded = new SlideDeck("---\nmarp: true\n---\n```dot\n" + graph + "\n```\n").expandDigraphs(expander, 1);
+
+        assertEquals(List.of("digraph " + graph.substring(graph.indexOf('{'))), List.copyOf(dots));
+        assertEquals("![Diagram](./nested.svg)", expanded.slide(1).content());
+    }
+}
@@ -0,0 +1,158 @@
+package com.embabel.template.decker_agent;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SlideIllustratorTest {
+
+    private static final String DECK = """
+            ---
+            marp: true
+            ---
+            # One
+            ---
+            # Two
+            ---
+            # Three
+            ---
+            # Four
+            """;
+
+    private final PresentationMakerProperties properties = new PresentationMakerProperties();
+    private LlmConcurrencyLimiter limiter = new LlmConcurrencyLimiter(4, PresentationMetrics.global());
+
+    SlideIllustratorTest() {
+        properties.setSlidesPerIllustrationCall(2);
+        properties.setIllustrationConcurrency(2);
+        properties.setIllustrationTimeoutPerSlide(Duration.ofSeconds(5));
+    }
+
+    /**
+     * Stands in for the LLM, illustrating each chunk of slides with the given function
+     */
+    private SlideIllustrator illustrator(Function<String, List<String>> illustrate) {
+        return new SlideIllustrator(new SlideIllustrator.Illustrator() {
+            @Override
+            public String generateText(String prompt) {
+                return illustrate.apply(prompt).get(0);
+            }
+
+            @Override
+            public <T> T createObject(String prompt, Class<T> outputClass) {
+                return outputClass.cast(new SlideIllustrator.IllustratedSlides(illustrate.apply(prompt)));
+            }
+        }, limiter, "Explain decks", properties);
+    }
+
+    private static List<String> illustrated(String prompt) {
+        return prompt.lines()
+                .filter(line -> line.startsWith("# "))
+                .map(line -> line + " ![image](https://example.com/image.png)")
+                .toList();
+    }
+
+    @Test
+    void testKeepsOriginalSlidesWhenTheLlmReturnsTheWrongNumber() {
+        SlideDeck deck = new SlideDeck(DECK);
+
+        SlideDeck result = illustrator(prompt -> prompt.contains("# One")
+                ? List.of("# One and Two merged")
+                : illustrated(prompt)).illustrate(deck);
+
+        assertEquals(List.of(
+                new Slide(1, "# One"),
+                new Slide(2, "# Two"),
+                new Slide(3, "# Three ![image](https://example.com/image.png)"),
+                new Slide(4, "# Four ![image](https://example.com/image.png)")), result.slides());
+    }
+
+    @Test
+    void testKeepsOriginalSlidesWhenIllustrationTimesOut() {
+        properties.setIllustrationTimeoutPerSlide(Duration.ofMillis(50));
+        SlideDeck deck = new SlideDeck(DECK);
+
+        long start = System.nanoTime();
+        SlideDeck result = illustrator(prompt -> {
+            if (prompt.contains("# Three")) {
+                // A call that ignores interruption must not hold up the step after it times out
+                long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+                while (System.nanoTime() < end) {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+                }
+            }
+            return illustrated(prompt);
+        }).illustrate(deck);
+
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2), "bounded by the timeout");
+        assertEquals(new Slide(1, "# One ![image](https://example.com/image.png)"), result.slide(1));
+        assertEquals(new Slide(3, "# Three"), result.slide(3));
+        assertEquals(new Slide(4, "# Four"), result.slide(4));
+    }
+
+    @Test
+    void testReassemblesChunksInSlideOrder() {
+        properties.setSlidesPerIllustrationCall(1);
+        properties.setIllustrationConcurrency(4);
+        SlideDeck deck = new SlideDeck(DECK);
+
+        // Earlier slides finish last
+        SlideDeck result = illustrator(prompt -> {
+            int delay = prompt.contains("# One") ? 150 : prompt.contains("# Two") ? 100 : prompt.contains("# Three") ? 50 : 0;
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(delay));
+            return illustrated(prompt);
+        }).illustrate(deck);
+
+        assertEquals("""
+                ---
+                marp: true
+                ---
+                # One ![image](https://example.com/image.png)
+                ---
+                # Two ![image](https://example.com/image.png)
+                ---
+                # Three ![image](https://example.com/image.png)
+                ---
+                # Four ![image](https://example.com/image.png)
+                """, result.getDeck());
+    }
+
+    @Test
+    void testHoldsTheLlmPermitUntilATimedOutCallReturns() throws InterruptedException {
+        limiter = new LlmConcurrencyLimiter(1, PresentationMetrics.global());
+        properties.setSlidesPerIllustrationCall(4);
+        properties.setIllustrationTimeoutPerSlide(Duration.ofMillis(25));
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch returned = new CountDownLatch(1);
+
+        SlideDeck result = illustrator(prompt -> {
+            // Ignores interruption, as an LLM client may
+            while (release.getCount() > 0) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    // keep waiting
+                }
+            }
+            returned.countDown();
+            return illustrated(prompt);
+        }).illustrate(new SlideDeck(DECK));
+
+        assertEquals(new SlideDeck(DECK).slides(), result.slides());
+        assertFalse(limiter.tryCall("probe", () -> "free").made(), "the call still running holds the permit");
+        release.countDown();
+        assertTrue(returned.await(1, TimeUnit.SECONDS));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (!limiter.tryCall("probe", () -> "free").made() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(new LlmConcurrencyLimiter.Attempt<>(true, "free"), limiter.tryCall("probe", () -> "free"));
+    }
+}
@@ -0,0 +1,106 @@
+package com.embabel.template.decker_agent;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ToolCallMemoTest {
+
+    @Test
+    void testConcurrentIdenticalCallsShareOneExecution() throws Exception {
+        ToolCallMemo memo = new ToolCallMemo(10);
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        List<Future<String>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> memo.call("readFile", List.of("README.md"), () -> {
+                    executions.incrementAndGet();
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return "contents";
+                })));
+            }
+            Thread.sleep(100);
+            release.countDown();
+            for (Future<String> result : results) {
+                assertEquals("contents", result.get());
+            }
+        }
+
+        assertEquals(1, executions.get());
+        assertEquals(7, memo.saved());
+    }
+
+    @Test
+    void testEvictsLeastRecentlyUsedAndDoesNotRememberFailures() {
+        ToolCallMemo memo = new ToolCallMemo(2);
+        AtomicInteger executions = new AtomicInteger();
+
+        memo.call("readFile", List.of("a"), executions::incrementAndGet);
+        memo.call("readFile", List.of("b"), executions::incrementAndGet);
+        memo.call("readFile", List.of("a"), executions::incrementAndGet);
+        memo.call("readFile", List.of("c"), executions::incrementAndGet);
+        assertEquals(3, executions.get());
+        memo.call("readFile", List.of("a"), executions::incrementAndGet);
+        assertEquals(3, executions.get(), "a was used more recently than b");
+        memo.call("readFile", List.of("b"), executions::incrementAndGet);
+        assertEquals(4, executions.get());
+
+        assertThrows(IllegalStateException.class, () -> memo.call("readFile", List.of("d"), () -> {
+            throw new IllegalStateException("no such file");
+        }));
+        assertEquals("found", memo.call("readFile", List.of("d"), () -> "found"));
+    }
+
+    @Test
+    void testUndeclaredCheckedFailureReachesConcurrentCaller() throws Exception {
+        ToolCallMemo memo = new ToolCallMemo(10);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(2)) {
+            Future<String> first = executor.submit(() -> memo.call("readFile", List.of("missing"), () -> {
+                started.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                // As Kotlin tools do, without declaring it
+                return ToolCallMemoTest.<RuntimeException, String>sneakyThrow(new IOException("no such file"));
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            Future<String> second = executor.submit(() -> memo.call("readFile", List.of("missing"), () -> "not run"));
+            Thread.sleep(100);
+            release.countDown();
+
+            ExecutionException firstFailure = assertThrows(ExecutionException.class, () -> first.get(2, TimeUnit.SECONDS));
+            assertInstanceOf(IOException.class, firstFailure.getCause());
+            ExecutionException secondFailure = assertThrows(ExecutionException.class, () -> second.get(2, TimeUnit.SECONDS));
+            assertInstanceOf(CompletionException.class, secondFailure.getCause());
+            assertInstanceOf(IOException.class, secondFailure.getCause().getCause());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E extends Throwable, T> T sneakyThrow(Throwable e) throws E {
+        throw (E) e;
+    }
+}
@@ -0,0 +1,67 @@
+package com.embabel.template.decker_agent;
+
+import com.embabel.agent.domain.library.ResearchTopic;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TopicDeduplicatorTest {
+
+    private static final double THRESHOLD = 0.5;
+
+    @Test
+    void testMergesNearDuplicateTopicsAndTheirQuestions() {
+        List<ResearchTopic> topics = List.of(
+                new ResearchTopic("Virtual threads in Java", List.of(
+                        "What are virtual threads?",
+                        "How do virtual threads improve server throughput?")),
+                new ResearchTopic("Structured concurrency", List.of(
+                        "What problems does structured concurrency solve?")),
+                new ResearchTopic("Java virtual threads", List.of(
+                        "What are Java virtual threads?",
+                        "How do virtual threads improve throughput?",
+                        "When should virtual threads be pinned to carrier threads?"))
+        );
+
+        var merged = TopicDeduplicator.merge(topics, THRESHOLD);
+
+        assertEquals(2, merged.topics().size());
+        assertEquals(1, merged.callsAvoided());
+        assertArrayEquals(new int[]{0, 1, 0}, merged.mergedIndex());
+        ResearchTopic virtualThreads = merged.topics().get(0);
+        assertEquals("Virtual threads in Java / Java virtual threads", virtualThreads.getTopic());
+        assertEquals(List.of(
+                "What are virtual threads?",
+                "How do virtual threads improve server throughput?",
+                "When should virtual threads be pinned to carrier threads?"), virtualThreads.getQuestions());
+        assertSame(topics.get(1), merged.topics().get(1), "topics not merged are unchanged");
+    }
+
+    @Test
+    void testKeepsDistinctTopicsOfTheSameTalkApart() {
+        List<ResearchTopic> topics = List.of(
+                new ResearchTopic("Goal oriented action planning", List.of(
+                        "How does an agent planner choose actions to reach a goal?")),
+                new ResearchTopic("Agent tool calling", List.of(
+                        "How do agents call tools during an action?")),
+                new ResearchTopic("Testing agents", List.of(
+                        "How can agent actions be unit tested?"))
+        );
+
+        var merged = TopicDeduplicator.merge(topics, THRESHOLD);
+
+        assertEquals(topics, merged.topics());
+        assertEquals(0, merged.callsAvoided());
+    }
+
+    @Test
+    void testNeverMergesAboveOne() {
+        ResearchTopic topic = new ResearchTopic("Virtual threads", List.of("What are virtual threads?"));
+
+        var merged = TopicDeduplicator.merge(List.of(topic, topic), 1.1);
+
+        assertEquals(List.of(topic, topic), merged.topics());
+    }
+}
@@ -0,0 +1,75 @@
+package com.embabel.template.decker_agent;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteBehindFilePersisterTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testWritesLatestContentAndLoadsPendingWrites() throws Exception {
+        WriteBehindFilePersister persister = new WriteBehindFilePersister(PresentationMetrics.global());
+
+        persister.saveFile(directory.toString(), "decks/deck.md", "# One");
+        persister.saveFile(directory.toString(), "decks/deck.md", "# Two");
+        assertEquals("# Two", persister.loadFile(directory.toString(), "decks/deck.md"));
+        persister.flush();
+
+        assertEquals("# Two", Files.readString(directory.resolve("decks/deck.md")));
+        try (var files = Files.list(directory.resolve("decks"))) {
+            assertEquals(1, files.count(), "no temporary files left behind");
+        }
+        assertNull(persister.loadFile(directory.toString(), "missing.md"));
+    }
+
+    @Test
+    void testSkipsUnchangedContent() throws Exception {
+        WriteBehindFilePersister persister = new WriteBehindFilePersister(PresentationMetrics.global());
+        Path file = directory.resolve("deck.md");
+        Files.writeString(file, "# Same");
+        FileTime old = FileTime.from(Instant.parse("2020-01-01T00:00:00Z"));
+        Files.setLastModifiedTime(file, old);
+
+        persister.saveFile(directory.toString(), "deck.md", "# Same");
+        persister.flush();
+        assertEquals(old, Files.getLastModifiedTime(file));
+
+        persister.saveFile(directory.toString(), "deck.md", "# Changed");
+        persister.flush();
+        assertEquals("# Changed", Files.readString(file));
+    }
+
+    @Test
+    void testReportsFailedWritesOnlyForTheFlushedFiles() throws Exception {
+        WriteBehindFilePersister persister = new WriteBehindFilePersister(PresentationMetrics.global());
+        // A file where the deck's directory should be, so its write fails
+        Files.writeString(directory.resolve("broken"), "not a directory");
+
+        persister.saveFile(directory.toString(), "broken/deck.md", "# Broken");
+        persister.saveFile(directory.toString(), "good/deck.md", "# Good");
+
+        persister.flush(directory.toString(), "good/deck.md");
+        assertEquals("# Good", Files.readString(directory.resolve("good/deck.md")));
+        UncheckedIOException failure = assertThrows(UncheckedIOException.class,
+                () -> persister.flush(directory.toString(), "good/deck.md", "broken/deck.md"));
+        assertEquals("Failed to write 1 files", failure.getMessage());
+        // Each failure is reported once
+        persister.flush(directory.toString(), "broken/deck.md");
+        persister.flush();
+
+        Files.delete(directory.resolve("broken"));
+        persister.saveFile(directory.toString(), "broken/deck.md", "# Fixed");
+        persister.flush(directory.toString(), "broken/deck.md");
+        assertEquals("# Fixed", Files.readString(directory.resolve("broken/deck.md")));
+    }
+}